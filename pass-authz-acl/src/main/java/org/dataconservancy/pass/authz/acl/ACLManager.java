@@ -18,26 +18,41 @@ package org.dataconservancy.pass.authz.acl;
 
 import static java.lang.String.format;
 import static java.util.Arrays.asList;
+import static java.util.Collections.emptyMap;
 import static java.util.Collections.emptySet;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 import static org.dataconservancy.pass.client.fedora.RepositoryCrawler.Ignore.IGNORE_ROOT;
-import static org.dataconservancy.pass.client.fedora.RepositoryCrawler.Skip.depth;
 import static org.dataconservancy.pass.client.util.ConfigUtil.getSystemProperty;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.function.BiConsumer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
 import org.dataconservancy.pass.client.fedora.FedoraConfig;
 import org.dataconservancy.pass.client.fedora.RepositoryCrawler;
+import org.dataconservancy.pass.client.fedora.RepositoryCrawler.State;
 import org.fcrepo.client.FcrepoClient;
-import org.fcrepo.client.FcrepoClient.FcrepoClientBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import okhttp3.OkHttpClient;
+
 /**
  * Creates or deletes, or modifies ACLs to reflect desired permissions.
  *
@@ -49,6 +64,24 @@ public class ACLManager {
 
     public static final String PROPERTY_ACL_BASE = "acl.base";
 
+    /** Whether each {@link Builder#perform()} is done in its own Fedora transaction */
+    public static final String PROPERTY_ACL_TRANSACTIONS = "acl.transactions";
+
+    /** Whether resources whose permissions are set to the same thing share one ACL */
+    public static final String PROPERTY_ACL_SHARED = "acl.shared";
+
+    /**
+     * Whether the authorizations of each ACL are remembered, so they need not be read before being updated. Off by
+     * default, since changes made to ACLs by anything else would not be noticed.
+     */
+    public static final String PROPERTY_ACL_CACHE_AUTHORIZATIONS = "acl.cache.authorizations";
+
+    /** Levels of pairtree containers that ACLs are put in under the acl base; 0 puts them in the acl base itself */
+    public static final String PROPERTY_ACL_PAIRTREE_LEVELS = "acl.pairtree.levels";
+
+    /** Maximum number of resources whose ACL location is remembered; 0 disables this */
+    public static final String PROPERTY_ACL_CACHE_SIZE = "acl.cache.size";
+
     public static final String URI_ACL_AGENT = "http://www.w3.org/ns/auth/acl#agent";
 
     public static final String URI_ACL_ACCESS_TO = "http://www.w3.org/ns/auth/acl#accessTo";
@@ -60,17 +93,42 @@ public class ACLManager {
                     "<> a acl:Authorization .\n" +
                     "<> acl:accessTo <%s> .\n";
 
+    /* Protects any resource linked to the ACL, since every Fedora resource is a fedora:Resource */
+    private static final String TEMPLATE_SHARED_AUTHORIZATION =
+            "@prefix acl: <http://www.w3.org/ns/auth/acl#> .\n\n" +
+                    "<> a acl:Authorization .\n" +
+                    "<> acl:accessToClass <http://fedora.info/definitions/v4/repository#Resource> .\n";
+
+    private static final ExecutorService WRITERS = Executors.newCachedThreadPool(r -> {
+        final Thread writer = new Thread(r, "acl-writer");
+        writer.setDaemon(true);
+        return writer;
+    });
+
     AclDriver driver;
 
     RepositoryCrawler crawler;
 
+    URI repositoryBase = URI.create(FedoraConfig.getBaseUrl());
+
+    boolean transactional = Boolean.valueOf(getSystemProperty(PROPERTY_ACL_TRANSACTIONS, "false"));
+
+    boolean sharing = Boolean.valueOf(getSystemProperty(PROPERTY_ACL_SHARED, "false"));
+
+    boolean rememberAuthorizations = Boolean.valueOf(getSystemProperty(PROPERTY_ACL_CACHE_AUTHORIZATIONS, "false"));
+
+    /* For Builder#performAsync(), created when first needed */
+    OkHttpClient http;
+
     public ACLManager() {
-        driver = new AclDriver(getAclBase(), getFcrepoClient());
+        driver = new AclDriver(getAclBase(), getFcrepoClient(), getAclCacheSize());
+        driver.pairtreeLevels = getAclPairtreeLevels();
         this.crawler = new RepositoryCrawler();
     }
 
     public ACLManager(FcrepoClient client, RepositoryCrawler crawler) {
-        driver = new AclDriver(getAclBase(), client);
+        driver = new AclDriver(getAclBase(), client, getAclCacheSize());
+        driver.pairtreeLevels = getAclPairtreeLevels();
         this.crawler = crawler;
     }
 
@@ -78,47 +136,394 @@ public class ACLManager {
         return URI.create(FedoraConfig.getBaseUrl() + getSystemProperty(PROPERTY_ACL_BASE, "acls"));
     }
 
+    static int getAclCacheSize() {
+        return Integer.parseInt(getSystemProperty(PROPERTY_ACL_CACHE_SIZE, "10000"));
+    }
+
+    static int getAclPairtreeLevels() {
+        return Integer.parseInt(getSystemProperty(PROPERTY_ACL_PAIRTREE_LEVELS, "0"));
+    }
+
+    /**
+     * Learn the ACL locations of as many resources as the ACL cache holds, by crawling the ACL container.
+     * <p>
+     * Permissions can then be updated without first looking up the ACL of each resource.
+     * </p>
+     *
+     * @return Number of resources whose ACL is known.
+     */
+    public int warmUp() {
+        return warmUp(getAclCacheSize());
+    }
+
+    /**
+     * Learn the ACL locations of resources by crawling the ACL container, stopping once enough are known.
+     * <p>
+     * Learning more locations than the ACL cache holds would only evict the ones learned first, so there is no point
+     * in crawling further than that.
+     * </p>
+     *
+     * @param limit Stop crawling once the ACL locations of this many resources are known.
+     * @return Number of resources whose ACL is known.
+     */
+    public int warmUp(int limit) {
+        LOG.info("Learning up to {} ACL locations from <{}>", limit, driver.acls);
+        final AtomicInteger count = new AtomicInteger();
+        try {
+            crawler.visit(driver.acls, acl -> {
+                if (count.addAndGet(driver.learnAcl(acl)) >= limit) {
+                    throw new WarmedUp();
+                }
+            }, this::isNotAcl, this::isAcl);
+        } catch (final WarmedUp e) {
+            LOG.info("Stopped learning ACL locations after reaching the limit of {}", limit);
+        }
+        LOG.info("Learned the ACL locations of {} resources", count.get());
+        return count.get();
+    }
+
+    /**
+     * Move every ACL to the container where it belongs in the configured layout, e.g. from directly in the acl base
+     * to pairtree containers.
+     * <p>
+     * Each moved ACL keeps its name, and the resources it protects are linked to it in its new location. This is
+     * meant to be run once after changing {@value #PROPERTY_ACL_PAIRTREE_LEVELS}, while nothing else is changing
+     * permissions.
+     * </p>
+     *
+     * @param threads Number of ACLs to move at once.
+     * @return Number of ACLs moved.
+     */
+    public int rehomeAcls(int threads) {
+        LOG.info("Moving ACLs in <{}> to {} levels of pairtree containers", driver.acls, driver.pairtreeLevels);
+
+        final ExecutorService movers = Executors.newFixedThreadPool(threads);
+        final Semaphore queued = new Semaphore(threads * 2);
+        final AtomicInteger moved = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+
+        crawler.visit(driver.acls, acl -> {
+            queued.acquireUninterruptibly();
+            movers.execute(() -> {
+                try {
+                    if (!driver.rehomeAcl(acl).equals(acl)) {
+                        moved.incrementAndGet();
+                    }
+                } catch (final RuntimeException e) {
+                    failed.incrementAndGet();
+                    LOG.warn("Could not move ACL <{}>", acl, e);
+                } finally {
+                    queued.release();
+                }
+            });
+        }, this::isNotAcl, this::isAcl);
+
+        movers.shutdown();
+        try {
+            movers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while moving ACLs", e);
+        }
+
+        LOG.info("Moved {} ACLs, {} could not be moved", moved.get(), failed.get());
+        return moved.get();
+    }
+
+    /* Thrown to stop a warm-up crawl once enough ACL locations are known */
+    @SuppressWarnings("serial")
+    private static class WarmedUp extends RuntimeException {
+
+        WarmedUp() {
+            super(null, null, false, false);
+        }
+    }
+
+    /* ACLs are the children of the acl base, or of its pairtree containers; their own children are not */
+    private boolean isAcl(State state) {
+        return state.depth > 0 && !driver.isPairtreeContainer(state.id);
+    }
+
+    private boolean isNotAcl(State state) {
+        return IGNORE_ROOT.test(state) || driver.isPairtreeContainer(state.id);
+    }
+
+    /**
+     * Forget what is known about the ACL of a resource, because it has been deleted.
+     *
+     * @param resource The deleted resource.
+     */
+    public void forget(URI resource) {
+        driver.forget(resource);
+    }
+
+    /**
+     * Perform permission changes together, in a single Fedora transaction.
+     * <p>
+     * Either all of the ACLs are created, authorized, and linked, or none are; and the repository commits once
+     * rather than once per request. If anything fails, the transaction is rolled back.
+     * </p>
+     *
+     * @param builders Permission changes, as from {@link #addPermissions(URI)} or {@link #setPermissions(URI)}
+     * @return URIs of the ACLs, in the same order as the builders.
+     */
+    public List<URI> performInTransaction(Builder... builders) {
+        final List<URI> acls = new ArrayList<>();
+
+        try (FedoraTransaction tx = FedoraTransaction.begin(driver.repo, repositoryBase)) {
+            final AclDriver txDriver = new AclDriver(driver.acls, tx.client());
+            txDriver.concurrent = false;
+            txDriver.pairtreeLevels = driver.pairtreeLevels;
+
+            for (final Builder builder : builders) {
+                acls.add(builder.perform(txDriver));
+            }
+
+            tx.commit();
+        }
+
+        for (int i = 0; i < builders.length; i++) {
+            driver.remember(builders[i].resource, acls.get(i));
+            driver.forgetAuthorizations(acls.get(i));
+        }
+
+        return acls;
+    }
+
     public Builder addPermissions(URI resource) {
         LOG.debug("Adding permissions to " + resource);
-        return new Builder(resource, (builder, acl) -> {
+        return new Builder(resource, false, (builder, driver, acl) -> {
 
-            for (final Permission permission : builder.allPermissions()) {
-                final URI authzResource = getAuthorizationResourceForPermission(acl, permission);
+            // What the authorizations will contain is not known without reading them
+            driver.forgetAuthorizations(acl.uri);
+
+            return writeEach(driver, builder.allPermissions(), permission -> {
+                final URI authzResource = getAuthorizationResourceForPermission(acl.uri, permission);
 
                 final Set<URI> roles = builder.getRolesForPermission(permission);
 
-                if (driver.exists(authzResource)) {
-                    driver.patchAuthzBody(authzResource, patchInsert(resource, permission, roles));
-                } else {
-                    driver.putAuthzBody(authzResource, getAclBody(resource, permission, roles));
+                // Create the authorization in one request, or add to it if someone else got there first
+                if (driver.createAuthzBody(authzResource, getAclBody(resource, permission, roles))) {
+                    return Outcome.REPLACED;
                 }
-            }
+                driver.patchAuthzBody(authzResource, patchInsert(resource, permission, roles));
+                return Outcome.PATCHED;
+            });
+        }, (builder, driver, acl) -> {
+
+            driver.driver.forgetAuthorizations(acl.uri);
+
+            return all(builder.allPermissions().stream().map(permission -> {
+                final URI authzResource = getAuthorizationResourceForPermission(acl.uri, permission);
+
+                final Set<URI> roles = builder.getRolesForPermission(permission);
+
+                return driver.createAuthzBody(authzResource, getAclBody(resource, permission, roles))
+                        .thenCompose(created -> created ? completedFuture(Outcome.REPLACED)
+                                : driver.patchAuthzBody(authzResource, patchInsert(resource, permission, roles))
+                                        .thenApply(patched -> Outcome.PATCHED));
+            }).collect(toList()));
         });
     }
 
     public Builder setPermissions(URI resource) {
         LOG.debug("Setting permissions of " + resource);
-        return new Builder(resource, (builder, acl) -> {
+        return new Builder(resource, true, (builder, driver, acl) -> {
 
-            for (final Permission permission : Permission.values()) {
-                final URI authzResource = getAuthorizationResourceForPermission(acl, permission);
+            // A new ACL is known to be empty, otherwise look at what it grants now, as remembered or read
+            final Map<URI, Authorization> current = acl.isNew ? emptyMap() : currentAuthorizations(driver, acl.uri);
+            driver.forgetAuthorizations(acl.uri);
+
+            Outcome outcome = writeEach(driver, asList(Permission.values()), permission -> {
+                final URI authzResource = getAuthorizationResourceForPermission(acl.uri, permission);
 
                 final Set<URI> roles = builder.getRolesForPermission(permission);
+                final Authorization existing = current.get(authzResource);
 
-                driver.putAuthzBody(authzResource, getAclBody(resource, permission, roles));
-            }
+                final Outcome change = changeNeeded(existing, resource, permission, roles);
+                if (change == Outcome.REPLACED) {
+                    driver.putAuthzBody(authzResource, getAclBody(resource, permission, roles));
+                } else if (change == Outcome.PATCHED) {
+                    driver.patchAuthzBody(authzResource, patchAgents(existing.agents, roles));
+                }
+                return change;
+            });
 
-            final Collection<URI> desiredAuthorizationResources = authzResourcesForAcl(acl);
-            crawler.visit(acl, authz -> {
+            final Collection<URI> desiredAuthorizationResources = authzResourcesForAcl(acl.uri);
+            for (final URI authz : current.keySet()) {
                 if (!desiredAuthorizationResources.contains(authz)) {
                     driver.deleteCompletely(authz);
+                    outcome = outcome.and(Outcome.REPLACED);
+                }
+            }
+
+            if (rememberAuthorizations) {
+                driver.rememberAuthorizations(acl.uri, granted(acl.uri, builder));
+            }
+            return outcome;
+        }, (builder, driver, acl) -> {
+
+            final Map<URI, Authorization> known = acl.isNew ? emptyMap() : knownAuthorizations(driver.driver,
+                    acl.uri);
+            final CompletableFuture<Map<URI, Authorization>> authorizations = known != null ? completedFuture(
+                    known) : driver.readAuthorizations(acl.uri);
+
+            return authorizations.thenCompose(current -> {
+                driver.driver.forgetAuthorizations(acl.uri);
+                final List<CompletableFuture<Outcome>> writes = new ArrayList<>();
+
+                for (final Permission permission : Permission.values()) {
+                    final URI authzResource = getAuthorizationResourceForPermission(acl.uri, permission);
+
+                    final Set<URI> roles = builder.getRolesForPermission(permission);
+                    final Authorization existing = current.get(authzResource);
+
+                    final Outcome change = changeNeeded(existing, resource, permission, roles);
+                    if (change == Outcome.REPLACED) {
+                        writes.add(driver.putAuthzBody(authzResource, getAclBody(resource, permission, roles))
+                                .thenApply(put -> change));
+                    } else if (change == Outcome.PATCHED) {
+                        writes.add(driver.patchAuthzBody(authzResource, patchAgents(existing.agents, roles))
+                                .thenApply(patched -> change));
+                    }
                 }
-            }, IGNORE_ROOT, depth(1));
+
+                final Collection<URI> desiredAuthorizationResources = authzResourcesForAcl(acl.uri);
+                for (final URI authz : current.keySet()) {
+                    if (!desiredAuthorizationResources.contains(authz)) {
+                        writes.add(driver.deleteCompletely(authz).thenApply(deleted -> Outcome.REPLACED));
+                    }
+                }
+
+                return all(writes).thenApply(outcome -> {
+                    if (rememberAuthorizations) {
+                        driver.driver.rememberAuthorizations(acl.uri, granted(acl.uri, builder));
+                    }
+                    return outcome;
+                });
+            });
         });
     }
 
+    private Map<URI, Authorization> currentAuthorizations(AclDriver driver, URI acl) {
+        final Map<URI, Authorization> known = knownAuthorizations(driver, acl);
+        return known != null ? known : driver.readAuthorizations(acl);
+    }
+
+    /* Remembered authorizations are never empty, since setting permissions writes one for each permission */
+    private Map<URI, Authorization> knownAuthorizations(AclDriver driver, URI acl) {
+        final Map<URI, Authorization> known = rememberAuthorizations ? driver.knownAuthorizations(acl) : null;
+        return known == null || known.isEmpty() ? null : known;
+    }
+
+    /*
+     * The authorizations in an ACL once its permissions are set as desired.
+     */
+    private static Map<URI, Authorization> granted(URI acl, Builder builder) {
+        final Map<URI, Authorization> granted = new HashMap<>();
+        for (final Permission permission : Permission.values()) {
+            granted.put(getAuthorizationResourceForPermission(acl, permission), Authorization.of(builder.resource,
+                    permission, builder.getRolesForPermission(permission)));
+        }
+        return granted;
+    }
+
+    /**
+     * Check the remembered authorizations of each ACL against the repository.
+     * <p>
+     * When remembering authorizations, permissions are set by comparing the desired authorizations against those
+     * remembered from the last time they were set, without reading them. If anything else changes an ACL, what is
+     * remembered is out of date until it is verified. Any remembered authorizations found to be out of date are
+     * replaced with what was read, so the next time permissions are set on that ACL, the change is corrected.
+     * </p>
+     *
+     * @return Number of ACLs whose remembered authorizations were out of date.
+     */
+    public int verifyAuthorizations() {
+        final List<URI> acls = driver.aclsWithKnownAuthorizations();
+        LOG.debug("Verifying the authorizations of {} ACLs", acls.size());
+
+        int stale = 0;
+        for (final URI acl : acls) {
+            try {
+                final Map<URI, Authorization> actual = driver.readAuthorizations(acl);
+                final Map<URI, Authorization> known = driver.knownAuthorizations(acl);
+                if (known != null && !known.equals(actual)) {
+                    LOG.info("Authorizations of ACL <{}> had changed, remembering them as they are now", acl);
+                    driver.rememberAuthorizations(acl, actual);
+                    stale++;
+                }
+            } catch (final RuntimeException e) {
+                LOG.warn("Could not verify the authorizations of ACL <{}>, forgetting them", acl, e);
+                driver.forgetAuthorizations(acl);
+            }
+        }
+
+        LOG.info("Verified the authorizations of {} ACLs, {} were out of date", acls.size(), stale);
+        return stale;
+    }
+
+    /*
+     * REPLACED if the authorization is missing or is for something else, PATCHED if only its roles differ.
+     */
+    private static Outcome changeNeeded(Authorization existing, URI resource, Permission permission,
+            Set<URI> roles) {
+        if (existing == null || !existing.isFor(resource, permission)) {
+            return Outcome.REPLACED;
+        } else if (!existing.agents.equals(roles)) {
+            return Outcome.PATCHED;
+        }
+        return Outcome.UNCHANGED;
+    }
+
+    /*
+     * Combined outcome of writes in flight, once they are all done.
+     */
+    private static CompletableFuture<Outcome> all(List<CompletableFuture<Outcome>> writes) {
+        return CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0]))
+                .thenApply(done -> writes.stream().map(CompletableFuture::join).reduce(Outcome.UNCHANGED,
+                        Outcome::and));
+    }
+
+    /*
+     * Each permission has its own authorization resource, so they are written at the same time; the first in the
+     * calling thread, the rest by writer threads. Within a transaction, they are written one after another.
+     */
+    private static Outcome writeEach(AclDriver driver, Collection<Permission> permissions,
+            Function<Permission, Outcome> write) {
+        final List<Permission> toWrite = new ArrayList<>(permissions);
+        if (toWrite.isEmpty()) {
+            return Outcome.UNCHANGED;
+        }
+
+        if (!driver.concurrent) {
+            return toWrite.stream().map(write).reduce(Outcome.UNCHANGED, Outcome::and);
+        }
+
+        final List<CompletableFuture<Outcome>> others = toWrite.subList(1, toWrite.size()).stream()
+                .map(permission -> CompletableFuture.supplyAsync(() -> write.apply(permission), WRITERS))
+                .collect(toList());
+
+        Outcome outcome = write.apply(toWrite.get(0));
+        for (final CompletableFuture<Outcome> other : others) {
+            try {
+                outcome = outcome.and(other.join());
+            } catch (final CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        return outcome;
+    }
+
     FcrepoClient getFcrepoClient() {
-        return new FcrepoClientBuilder().credentials(FedoraConfig.getUserName(), FedoraConfig.getPassword()).build();
+        return FedoraClientFactory.getFcrepoClient();
+    }
+
+    AsyncAclDriver getAsyncDriver() {
+        if (http == null) {
+            http = FedoraClientFactory.getHttpClient();
+        }
+        return new AsyncAclDriver(driver, http);
     }
 
     public URI getAuthorizationResource(URI resource, Permission permission) {
@@ -137,19 +542,65 @@ public class ACLManager {
         }
     }
 
+    /**
+     * Changes the authorizations in an ACL, using the given driver.
+     */
+    @FunctionalInterface
+    interface AclAction {
+
+        Outcome apply(Builder builder, AclDriver driver, Acl acl);
+    }
+
+    /**
+     * Changes the authorizations in an ACL without blocking, using the given driver.
+     */
+    @FunctionalInterface
+    interface AsyncAclAction {
+
+        CompletableFuture<Outcome> apply(Builder builder, AsyncAclDriver driver, Acl acl);
+    }
+
+    /**
+     * How a resource's permissions were changed.
+     */
+    public enum Outcome {
+
+        /** The permissions were already as desired, nothing was written */
+        UNCHANGED,
+
+        /** Roles were added to or removed from existing authorizations */
+        PATCHED,
+
+        /** Authorizations were created, replaced, or deleted */
+        REPLACED;
+
+        Outcome and(Outcome other) {
+            return other.compareTo(this) > 0 ? other : this;
+        }
+    }
+
     public class Builder {
 
         final URI resource;
 
+        /* Whether the desired permissions replace all that the resource has now */
+        final boolean replacesAll;
+
         final Set<URI> read = new HashSet<>();
 
         final Set<URI> write = new HashSet<>();
 
-        final BiConsumer<Builder, URI> action;
+        final AclAction action;
+
+        final AsyncAclAction asyncAction;
+
+        volatile Outcome outcome;
 
-        Builder(URI resource, BiConsumer<Builder, URI> aclAction) {
+        Builder(URI resource, boolean replacesAll, AclAction aclAction, AsyncAclAction asyncAclAction) {
             this.resource = resource;
+            this.replacesAll = replacesAll;
             this.action = aclAction;
+            this.asyncAction = asyncAclAction;
         }
 
         public Builder grantRead(Collection<URI> roles) {
@@ -170,12 +621,46 @@ public class ACLManager {
         }
 
         public URI perform() {
+            if (transactional) {
+                return performInTransaction(this).get(0);
+            }
+            return perform(driver);
+        }
+
+        /*
+         * The remembered location of the resource's ACL is out of date if something else has since moved, deleted,
+         * or relinked the ACL. If so, it is forgotten, and the ACL found again, once.
+         */
+        URI perform(AclDriver driver) {
+            final URI remembered = driver.knownAcl(resource);
+            try {
+                return performOnce(driver);
+            } catch (final RuntimeException e) {
+                if (remembered == null || !FedoraRequestException.isGone(e)) {
+                    throw e;
+                }
+                LOG.info("Remembered ACL <{}> of <{}> is gone, finding its ACL again", remembered, resource);
+                driver.forgetAcl(resource, remembered);
+                return performOnce(driver);
+            }
+        }
+
+        private URI performOnce(AclDriver driver) {
             try {
+                if (sharing && replacesAll) {
+                    return performShared(driver);
+                }
+
                 final Acl acl = driver.findOrCreateACL(resource);
-                action.accept(this, acl.uri);
+                if (driver.isShared(acl.uri)) {
+                    return copyOnWrite(driver, acl.uri);
+                }
+
+                outcome = action.apply(this, driver, acl);
                 if (acl.isNew) {
                     driver.linkAcl(acl.uri, resource);
                 }
+                LOG.debug("Permissions of <{}> {}", resource, outcome);
                 return acl.uri;
 
             } catch (final Exception e) {
@@ -183,6 +668,136 @@ public class ACLManager {
             }
         }
 
+        /*
+         * Link the resource to the shared ACL that grants exactly the desired permissions, creating it if need be.
+         * An ACL of the resource's own is no longer needed, so is deleted.
+         */
+        private URI performShared(AclDriver driver) throws Exception {
+            final URI shared = driver.sharedAcl(hash());
+            final URI current = driver.findAcl(resource);
+
+            if (shared.equals(current)) {
+                outcome = Outcome.UNCHANGED;
+                LOG.debug("Permissions of <{}> {}, shared ACL <{}>", resource, outcome, shared);
+                return shared;
+            }
+
+            final Map<URI, String> authorizations = new HashMap<>();
+            for (final Permission permission : allPermissions()) {
+                authorizations.put(getAuthorizationResourceForPermission(shared, permission),
+                        getSharedAclBody(permission, getRolesForPermission(permission)));
+            }
+            driver.ensureSharedAcl(shared, authorizations);
+
+            if (current == null) {
+                driver.linkAcl(shared, resource);
+            } else {
+                driver.relinkAcl(current, shared, resource);
+                if (!driver.isShared(current)) {
+                    driver.deleteCompletely(current);
+                }
+            }
+
+            outcome = Outcome.REPLACED;
+            LOG.debug("Permissions of <{}> {}, shared ACL <{}>", resource, outcome, shared);
+            return shared;
+        }
+
+        /*
+         * A shared ACL is never changed on behalf of one resource. Instead, the resource gets an ACL of its own,
+         * which also grants what the shared one did, unless the desired permissions replace them anyway.
+         */
+        private URI copyOnWrite(AclDriver driver, URI shared) {
+            if (!replacesAll) {
+                for (final Authorization authz : driver.readAuthorizations(shared).values()) {
+                    if (authz.modes.equals(Permission.Write.modes)) {
+                        grantWrite(authz.agents);
+                    } else if (authz.modes.equals(Permission.Read.modes)) {
+                        grantRead(authz.agents);
+                    }
+                }
+            }
+
+            final Acl own;
+            try {
+                own = driver.createAcl(resource);
+            } catch (final Exception e) {
+                throw new RuntimeException("Error communicating with repository", e);
+            }
+            outcome = action.apply(this, driver, own);
+            driver.relinkAcl(shared, own.uri, resource);
+
+            LOG.debug("Permissions of <{}> {}, copied from shared ACL <{}>", resource, outcome, shared);
+            return own.uri;
+        }
+
+        /*
+         * Hash of the desired permissions, which is the same for any resource given the same permissions.
+         */
+        String hash() {
+            final StringBuilder canonical = new StringBuilder();
+            for (final Permission permission : Permission.values()) {
+                getRolesForPermission(permission).stream().map(URI::toString).sorted().forEach(role -> canonical
+                        .append(permission).append(' ').append(role).append('\n'));
+            }
+
+            return AclDriver.sha256(canonical.toString());
+        }
+
+        /**
+         * Perform the permission changes without waiting for them.
+         * <p>
+         * Requests that do not depend on each other are in flight at the same time, and no thread waits for any of
+         * them; so many resources' permissions can be changed at once over a few shared connections. When
+         * transactions or shared ACLs are enabled, or the resource's ACL is shared, the changes are instead performed
+         * by a writer thread.
+         * </p>
+         *
+         * @return The URI of the ACL, once the changes are done.
+         */
+        public CompletableFuture<URI> performAsync() {
+            if (transactional || (sharing && replacesAll)) {
+                return CompletableFuture.supplyAsync(this::perform, WRITERS);
+            }
+            return performAsync(getAsyncDriver());
+        }
+
+        CompletableFuture<URI> performAsync(AsyncAclDriver driver) {
+            final URI remembered = driver.driver.knownAcl(resource);
+            return performOnceAsync(driver).handle((acl, e) -> {
+                if (e == null) {
+                    return completedFuture(acl);
+                }
+                if (remembered == null || !FedoraRequestException.isGone(e)) {
+                    final CompletableFuture<URI> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(e);
+                    return failed;
+                }
+                LOG.info("Remembered ACL <{}> of <{}> is gone, finding its ACL again", remembered, resource);
+                driver.driver.forgetAcl(resource, remembered);
+                return performOnceAsync(driver);
+            }).thenCompose(Function.identity());
+        }
+
+        private CompletableFuture<URI> performOnceAsync(AsyncAclDriver driver) {
+            return driver.findOrCreateACL(resource).thenCompose(acl -> driver.driver.isShared(acl.uri)
+                    ? CompletableFuture.supplyAsync(() -> perform(driver.driver), WRITERS)
+                    : asyncAction.apply(this, driver, acl).thenCompose(changed -> {
+                        outcome = changed;
+                        LOG.debug("Permissions of <{}> {}", resource, outcome);
+                        return acl.isNew ? driver.linkAcl(acl.uri, resource) : completedFuture(null);
+                    }).thenApply(linked -> acl.uri));
+        }
+
+        /**
+         * How the permissions were changed by {@link #perform()} or {@link #performAsync()}.
+         *
+         * @return The outcome, or null if not yet performed.
+         */
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
         Set<URI> getRolesForPermission(Permission p) {
             switch (p) {
                 case Read:
@@ -209,7 +824,15 @@ public class ACLManager {
     }
 
     private static String getAclBody(URI resource, Permission permission, Collection<URI> roles) {
-        final StringBuilder auth = new StringBuilder(format(TEMPLATE_AUTHORIZATION, resource));
+        return authorizationBody(format(TEMPLATE_AUTHORIZATION, resource), permission, roles);
+    }
+
+    private static String getSharedAclBody(Permission permission, Collection<URI> roles) {
+        return authorizationBody(TEMPLATE_SHARED_AUTHORIZATION, permission, roles);
+    }
+
+    private static String authorizationBody(String template, Permission permission, Collection<URI> roles) {
+        final StringBuilder auth = new StringBuilder(template);
 
         for (final URI role : roles) {
             auth.append(format("<> acl:agent <%s> .\n", role));
@@ -234,6 +857,23 @@ public class ACLManager {
         return patch.toString();
     }
 
+    private static String patchAgents(Set<URI> currentRoles, Set<URI> roles) {
+        final StringBuilder patch = new StringBuilder(
+                "PREFIX acl: <http://www.w3.org/ns/auth/acl#>\n\nDELETE {\n");
+
+        currentRoles.stream().filter(not(roles::contains))
+                .forEach(role -> patch.append(format("<> <%s> <%s> .\n", URI_ACL_AGENT, role)));
+
+        patch.append("} INSERT {\n");
+
+        roles.stream().filter(not(currentRoles::contains))
+                .forEach(role -> patch.append(format("<> <%s> <%s> .\n", URI_ACL_AGENT, role)));
+
+        patch.append("} WHERE {}");
+
+        return patch.toString();
+    }
+
     private static URI getAuthorizationResourceForPermission(URI acl, Permission permission) {
         if (acl.toString().endsWith("/")) {
             return URI.create(acl.toString() + permission.toString());
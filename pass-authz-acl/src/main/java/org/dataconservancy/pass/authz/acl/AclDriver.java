@@ -22,19 +22,31 @@ import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static org.apache.commons.io.IOUtils.toInputStream;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigInteger;
 import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import org.apache.commons.io.IOUtils;
-import org.apache.jena.rdf.model.Model;
-import org.apache.jena.rdf.model.ModelFactory;
-import org.apache.jena.rdf.model.RDFNode;
+import org.apache.http.HttpHeaders;
 import org.fcrepo.client.FcrepoClient;
 import org.fcrepo.client.FcrepoOperationFailedException;
 import org.fcrepo.client.FcrepoResponse;
+import org.fcrepo.client.PutBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,20 +67,98 @@ public class AclDriver {
 
     URI PREDICATE_ACCESS_CONTROL = URI.create("http://www.w3.org/ns/auth/acl#accessControl");
 
+    URI PREDICATE_ACCESS_TO = URI.create("http://www.w3.org/ns/auth/acl#accessTo");
+
+    URI PREDICATE_AGENT = URI.create("http://www.w3.org/ns/auth/acl#agent");
+
+    URI PREDICATE_MODE = URI.create("http://www.w3.org/ns/auth/acl#mode");
+
+    URI PREDICATE_CONTAINS = URI.create("http://www.w3.org/ns/ldp#contains");
+
     static final String TEMPLATE_ADD_ACL_TRIPLE =
             "INSERT {<> <http://www.w3.org/ns/auth/acl#accessControl> <%s>} WHERE {}";
 
+    static final String TEMPLATE_REPLACE_ACL_TRIPLE =
+            "DELETE {<> <http://www.w3.org/ns/auth/acl#accessControl> <%s>} " +
+                    "INSERT {<> <http://www.w3.org/ns/auth/acl#accessControl> <%s>} WHERE {}";
+
+    /* Shared ACLs are in this container, under the acl base */
+    static final String SHARED = "shared";
+
     final FcrepoClient repo;
 
     final URI acls;
 
+    /* Whether authorizations may be written concurrently */
+    boolean concurrent = true;
+
+    /* Levels of pairtree containers between the acl base and each ACL; 0 puts ACLs directly in the acl base */
+    int pairtreeLevels = 0;
+
+    /* Pairtree containers known to exist */
+    private final Set<URI> containers = ConcurrentHashMap.newKeySet();
+
+    private static final Pattern PAIRTREE_SEGMENT = Pattern.compile("[0-9a-f]{2}");
+
+    /* Resource to ACL. Entries change only when a resource is relinked, and go away when deleted or evicted */
+    private final Map<URI, URI> aclLocations;
+
+    /* ACL to the authorizations it contains, as last written or read */
+    private final Map<URI, Map<URI, Authorization>> aclAuthorizations;
+
+    /* Shared ACLs known to exist, with all of their authorizations */
+    private final Set<URI> sharedAcls = ConcurrentHashMap.newKeySet();
+
     AclDriver(final URI aclBase, final FcrepoClient repo) {
+        this(aclBase, repo, 0);
+    }
+
+    AclDriver(final URI aclBase, final FcrepoClient repo, int cacheSize) {
         this.repo = repo;
         this.acls = aclBase;
+        this.aclLocations = cacheSize > 0 ? lru(cacheSize) : null;
+        this.aclAuthorizations = cacheSize > 0 ? lru(cacheSize) : null;
+    }
+
+    private static <K, V> Map<K, V> lru(int size) {
+        return Collections.synchronizedMap(new LinkedHashMap<K, V>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > size;
+            }
+        });
     }
 
     Acl findOrCreateACL(URI resource) throws FcrepoOperationFailedException, IOException {
 
+        final URI acl = findAcl(resource);
+        if (acl != null) {
+            return new Acl(acl, false);
+        }
+
+        LOG.debug("No ACL, on <{}> creating one", resource);
+        return createAcl(resource);
+    }
+
+    /**
+     * Find the ACL of a resource, if it has one.
+     *
+     * @param resource The resource.
+     * @return The ACL, or null if there is none.
+     * @throws FcrepoOperationFailedException if the resource cannot be read.
+     * @throws IOException if the resource cannot be read.
+     */
+    URI findAcl(URI resource) throws FcrepoOperationFailedException, IOException {
+
+        final URI known = knownAcl(resource);
+        if (known != null) {
+            LOG.debug("Found cached ACL <{}> for <{}>", known, resource);
+            return known;
+        }
+
         LOG.debug("Finding ACL for <{}>", resource);
         try (FcrepoResponse response = repo.get(resource)
                 .accept("application/n-triples")
@@ -77,36 +167,138 @@ public class AclDriver {
             onErrorThrow(response, "Error looking for ACL");
 
             final List<URI> acls;
-            final Model model = ModelFactory.createDefaultModel();
             try (InputStream body = response.getBody()) {
-                model.read(body, "", "NTriples");
-                acls = model.listStatements(null,
-                        model.createProperty(PREDICATE_ACCESS_CONTROL.toString()),
-                        (RDFNode) null)
-                        .mapWith(s -> URI.create(s.getObject().asResource().toString()))
-                        .toList();
+                acls = findObjects(body, PREDICATE_ACCESS_CONTROL);
             }
 
             if (acls.size() == 1) {
                 LOG.debug("Found existing ACL <{}>", acls.get(0));
-                return new Acl(acls.get(0), false);
+                remember(resource, acls.get(0));
+                return acls.get(0);
             } else if (acls.isEmpty()) {
-                LOG.debug("No ACL, on <{}> creating one", resource);
+                return null;
+            } else {
+                throw moreThanOneAcl(resource, acls);
+            }
+        }
+    }
+
+    static RuntimeException moreThanOneAcl(URI resource, List<URI> acls) {
+        return new RuntimeException(format("More than one acl for resource <%s>: {%s}", resource,
+                String.join(",", acls.stream().map(URI::toString).collect(Collectors.toList()))));
+    }
+
+    /**
+     * Scans N-Triples for the IRI objects of a given predicate.
+     *
+     * @param ntriples N-Triples content.
+     * @param predicate The predicate.
+     * @return IRI objects of all triples with the given predicate.
+     * @throws IOException if the content cannot be read.
+     */
+    static List<URI> findObjects(InputStream ntriples, URI predicate) throws IOException {
+        final List<URI> objects = new ArrayList<>(1);
+        scan(ntriples, asList(predicate), (s, p, o) -> objects.add(o));
+        return objects;
+    }
+
+    /**
+     * Scans N-Triples for triples with any of the given predicates, and an IRI object.
+     * <p>
+     * N-Triples has exactly one triple per line, so lines can be matched against the predicates without parsing the
+     * document into a model. Only lines that mention one of the predicates are examined any further.
+     * </p>
+     *
+     * @param ntriples N-Triples content.
+     * @param predicates The predicates.
+     * @param triples Receives each matching triple. The subject is an IRI, or a blank node label like {@code _:b0}.
+     * @throws IOException if the content cannot be read.
+     */
+    static void scan(InputStream ntriples, List<URI> predicates, TripleConsumer triples) throws IOException {
+        final String[] terms = predicates.stream().map(p -> "<" + p + ">").toArray(String[]::new);
+
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(ntriples, UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            final int predicate = mentioned(line, terms);
+            if (predicate < 0) {
+                continue;
+            }
 
-                return createAcl(resource);
+            // The predicate follows the subject, which is either <iri> or _:blank
+            int pos = skipWhitespace(line, 0);
+            if (pos >= line.length() || line.charAt(pos) == '#') {
+                continue;
+            }
+            final String subject;
+            if (line.charAt(pos) == '<') {
+                final int end = line.indexOf('>', pos);
+                if (end < 0) {
+                    continue;
+                }
+                subject = line.substring(pos + 1, end);
+                pos = end + 1;
             } else {
-                throw new RuntimeException(format("More than one acl for resource <%s>: {%s}", resource,
-                        String.join(",", acls.stream().map(URI::toString).collect(Collectors.toList()))));
+                final int end = endOfToken(line, pos);
+                subject = line.substring(pos, end);
+                pos = end;
+            }
+            pos = skipWhitespace(line, pos);
+
+            for (int i = predicate; i < terms.length; i++) {
+                if (line.startsWith(terms[i], pos)) {
+                    final int start = skipWhitespace(line, pos + terms[i].length());
+                    final int end = line.indexOf('>', start);
+                    if (start < line.length() && line.charAt(start) == '<' && end > start) {
+                        triples.accept(subject, predicates.get(i), URI.create(line.substring(start + 1, end)));
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Receives triples found by {@link AclDriver#scan(InputStream, List, TripleConsumer)}.
+     */
+    @FunctionalInterface
+    interface TripleConsumer {
+
+        void accept(String subject, URI predicate, URI object);
+    }
+
+    private static int mentioned(String line, String[] terms) {
+        for (int i = 0; i < terms.length; i++) {
+            if (line.indexOf(terms[i]) >= 0) {
+                return i;
             }
         }
+        return -1;
+    }
+
+    private static int skipWhitespace(String line, int pos) {
+        while (pos < line.length() && (line.charAt(pos) == ' ' || line.charAt(pos) == '\t')) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int endOfToken(String line, int pos) {
+        while (pos < line.length() && line.charAt(pos) != ' ' && line.charAt(pos) != '\t') {
+            pos++;
+        }
+        return pos;
     }
 
     Acl createAcl(URI resource) throws IOException, FcrepoOperationFailedException {
+        final URI container = aclContainerFor(resource);
+        ensureContainer(container);
+
         final URI acl;
-        try (FcrepoResponse response = repo.post(acls)
+        try (FcrepoResponse response = repo.post(container)
                 .body(this.getClass().getResourceAsStream("/acl.ttl"), "text/turtle")
                 .perform()) {
-            onErrorThrow(response, "Error creating acl by POSTing to " + acls);
+            onErrorThrow(response, "Error creating acl by POSTing to " + container);
             acl = response.getLocation();
         }
 
@@ -123,6 +315,413 @@ public class AclDriver {
                 .body(toInputStream(format(TEMPLATE_ADD_ACL_TRIPLE, acl), UTF_8)).perform()) {
             onErrorThrow(response, "Error linking to acl <%s> from <%s>", acl, resource);
         }
+
+        remember(resource, acl);
+    }
+
+    /**
+     * The container in which the ACL of a resource belongs.
+     * <p>
+     * With pairtree levels, this is a container under the acl base named by successive pairs of hex digits of the
+     * SHA-256 hash of the resource URI, e.g. {@code acls/3f/a9}, so that no container has more than 256 children
+     * apart from ACLs, and ACLs are spread evenly among the containers at the lowest level.
+     * </p>
+     *
+     * @param resource The protected resource.
+     * @return The container of its ACL.
+     */
+    URI aclContainerFor(URI resource) {
+        if (pairtreeLevels <= 0) {
+            return acls;
+        }
+
+        final String hash = sha256(resource.toString());
+        final StringBuilder path = new StringBuilder(root());
+        for (int level = 0; level < pairtreeLevels; level++) {
+            path.append('/').append(hash, 2 * level, 2 * level + 2);
+        }
+        return URI.create(path.toString());
+    }
+
+    /**
+     * Whether a resource is one of the pairtree containers that ACLs are put in.
+     *
+     * @param uri URI of the resource.
+     * @return true if it is a pairtree container.
+     */
+    boolean isPairtreeContainer(URI uri) {
+        final String path = uri.toString().replaceFirst("/$", "");
+        if (pairtreeLevels <= 0 || !path.startsWith(root() + "/")) {
+            return false;
+        }
+
+        final String[] segments = path.substring(root().length() + 1).split("/");
+        if (segments.length > pairtreeLevels) {
+            return false;
+        }
+        for (final String segment : segments) {
+            if (!PAIRTREE_SEGMENT.matcher(segment).matches()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Make sure a pairtree container exists, creating it and any containers above it if need be.
+     * <p>
+     * Containers are created with conditional PUTs, so concurrent writers creating the same one do not conflict.
+     * Once a container is known to exist, this makes no requests.
+     * </p>
+     *
+     * @param container The container.
+     */
+    void ensureContainer(URI container) {
+        if (!needsContainer(container)) {
+            return;
+        }
+
+        ensureContainer(parentOf(container));
+
+        LOG.debug("PUTting container <{}> unless it exists", container);
+        try (FcrepoResponse response = new ConditionalPutBuilder(container, repo).ifNoneMatch("*").perform()) {
+            if (response.getStatusCode() == 412 || response.getStatusCode() == 409) {
+                consume(response);
+            } else {
+                onErrorThrow(response, "Error creating container <%s>", container);
+            }
+        } catch (FcrepoOperationFailedException | IOException e) {
+            throw new RuntimeException("Error conecting to the repository", e);
+        }
+
+        knownContainer(container);
+    }
+
+    boolean needsContainer(URI container) {
+        return !container.equals(acls) && !container.toString().equals(root()) && !containers.contains(container);
+    }
+
+    void knownContainer(URI container) {
+        containers.add(container);
+    }
+
+    static URI parentOf(URI uri) {
+        final String path = uri.toString().replaceFirst("/$", "");
+        return URI.create(path.substring(0, path.lastIndexOf('/')));
+    }
+
+    /* The acl base, without any trailing slash */
+    private String root() {
+        return acls.toString().replaceFirst("/$", "");
+    }
+
+    /**
+     * Move an ACL to the container where it belongs, and link the resources it protects to it there.
+     * <p>
+     * The ACL keeps its name, and its authorizations move with it. Shared ACLs, and ACLs that protect nothing,
+     * are left where they are.
+     * </p>
+     *
+     * @param acl The ACL.
+     * @return Where the ACL is now.
+     */
+    URI rehomeAcl(URI acl) {
+        if (isShared(acl)) {
+            return acl;
+        }
+
+        final List<URI> resources = protectedBy(acl);
+        if (resources.isEmpty()) {
+            LOG.debug("ACL <{}> protects nothing, leaving it where it is", acl);
+            return acl;
+        }
+
+        final URI container = aclContainerFor(resources.get(0));
+        final String path = acl.toString().replaceFirst("/$", "");
+        final URI destination = URI.create(container.toString().replaceFirst("/$", "") + path.substring(path
+                .lastIndexOf('/')));
+        if (destination.toString().equals(path)) {
+            return acl;
+        }
+
+        ensureContainer(container);
+
+        LOG.debug("Moving ACL <{}> to <{}>", acl, destination);
+        try (FcrepoResponse response = repo.move(acl, destination).perform()) {
+            onErrorThrow(response, "Error moving ACL <%s> to <%s>", acl, destination);
+        } catch (FcrepoOperationFailedException | IOException e) {
+            throw new RuntimeException("Error conecting to the repository", e);
+        }
+
+        forget(acl);
+        for (final URI resource : resources) {
+            relinkAcl(acl, destination, resource);
+        }
+
+        try (FcrepoResponse response = repo.delete(tombstoneFor(acl)).perform()) {
+            consume(response);
+        } catch (FcrepoOperationFailedException | IOException e) {
+            LOG.warn("Could not delete tombstone of moved ACL <{}>", acl, e);
+        }
+
+        return destination;
+    }
+
+    /**
+     * SHA-256 hash of a string, as hex.
+     *
+     * @param value The string.
+     * @return 64 hex digits.
+     */
+    static String sha256(String value) {
+        try {
+            return format("%064x", new BigInteger(1, MessageDigest.getInstance("SHA-256").digest(value.getBytes(
+                    UTF_8))));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new RuntimeException("No SHA-256", e);
+        }
+    }
+
+    /**
+     * Link a resource to a different ACL.
+     *
+     * @param from The ACL the resource is linked to now.
+     * @param to The ACL to link it to instead.
+     * @param resource The resource.
+     */
+    void relinkAcl(URI from, URI to, URI resource) {
+        final String patch = format(TEMPLATE_REPLACE_ACL_TRIPLE, from, to);
+        LOG.debug("Re-linking <{}> to <{}> via PATCH:\n{}", resource, to, patch);
+
+        try (FcrepoResponse response = repo.patch(resource).body(toInputStream(patch, UTF_8)).perform()) {
+            onErrorThrow(response, "Error linking to acl <%s> from <%s>", to, resource);
+        } catch (FcrepoOperationFailedException | IOException e) {
+            throw new RuntimeException("Error conecting to the repository", e);
+        }
+
+        remember(resource, to);
+    }
+
+    /**
+     * URI of the shared ACL with the given content hash.
+     *
+     * @param hash Hash of the permissions the ACL grants.
+     * @return URI of the shared ACL, which may not exist yet.
+     */
+    URI sharedAcl(String hash) {
+        return URI.create(acls.toString().replaceFirst("/$", "") + "/" + SHARED + "/" + hash);
+    }
+
+    /**
+     * Whether an ACL is a shared ACL, which must not be changed on behalf of any one resource.
+     *
+     * @param acl The ACL.
+     * @return true if shared.
+     */
+    boolean isShared(URI acl) {
+        return acl.toString().startsWith(sharedAcl("").toString());
+    }
+
+    /**
+     * Make sure a shared ACL exists, with its authorizations.
+     * <p>
+     * A shared ACL's URI is determined by what it grants, so if it, or any of its authorizations, already exists,
+     * it is already as it should be. Creation is by conditional PUTs, so concurrent writers creating the same
+     * shared ACL do not conflict.
+     * </p>
+     *
+     * @param acl URI of the shared ACL.
+     * @param authorizations Turtle body of each authorization, by URI.
+     */
+    void ensureSharedAcl(URI acl, Map<URI, String> authorizations) {
+        if (sharedAcls.contains(acl)) {
+            return;
+        }
+
+        LOG.debug("PUTting shared ACL <{}> unless it exists", acl);
+        try (FcrepoResponse response = new ConditionalPutBuilder(acl, repo)
+                .ifNoneMatch("*")
+                .body(this.getClass().getResourceAsStream("/acl.ttl"), "text/turtle")
+                .perform()) {
+            if (response.getStatusCode() == 412) {
+                consume(response);
+            } else {
+                onErrorThrow(response, "Error creating shared acl <%s>", acl);
+            }
+        } catch (FcrepoOperationFailedException | IOException e) {
+            throw new RuntimeException("Error conecting to the repository", e);
+        }
+
+        authorizations.forEach(this::createAuthzBody);
+        sharedAcls.add(acl);
+    }
+
+    /**
+     * Read the authorizations in an ACL, as they are now.
+     * <p>
+     * The authorizations are embedded in the representation of the ACL, so this is a single request.
+     * </p>
+     *
+     * @param acl The ACL.
+     * @return Every resource contained in the ACL, with its agents, modes, and protected resources.
+     */
+    Map<URI, Authorization> readAuthorizations(URI acl) {
+        try (FcrepoResponse response = repo.get(acl)
+                .accept("application/n-triples")
+                .preferRepresentation(asList(PREFER_CONTAINMENT, PREFER_EMBED), emptyList()).perform()) {
+
+            onErrorThrow(response, "Error reading ACL <%s>", acl);
+
+            try (InputStream body = response.getBody()) {
+                return authorizations(body, acl);
+            }
+        } catch (FcrepoOperationFailedException | IOException e) {
+            throw new RuntimeException("Error conecting to the repository", e);
+        }
+    }
+
+    /**
+     * Find the authorizations in the representation of an ACL that includes containment and embedded resources.
+     *
+     * @param ntriples N-Triples representation of the ACL.
+     * @param acl The ACL.
+     * @return Every resource contained in the ACL, with its agents, modes, and protected resources.
+     * @throws IOException if the content cannot be read.
+     */
+    Map<URI, Authorization> authorizations(InputStream ntriples, URI acl) throws IOException {
+        final Map<URI, Authorization> contained = new HashMap<>();
+        final Map<String, Authorization> described = new HashMap<>();
+
+        scan(ntriples, asList(PREDICATE_CONTAINS, PREDICATE_AGENT, PREDICATE_MODE, PREDICATE_ACCESS_TO),
+                (s, p, o) -> {
+                    if (p.equals(PREDICATE_CONTAINS)) {
+                        if (s.equals(acl.toString())) {
+                            contained.put(o, described.computeIfAbsent(o.toString(), k -> new Authorization()));
+                        }
+                    } else {
+                        described.computeIfAbsent(s, k -> new Authorization()).add(p, o);
+                    }
+                });
+
+        return contained;
+    }
+
+    /**
+     * Learn which resources an existing ACL protects, from the acl:accessTo of its authorizations.
+     *
+     * @param acl The ACL.
+     * @return Number of resources protected by the ACL.
+     */
+    int learnAcl(URI acl) {
+        final List<URI> resources = protectedBy(acl);
+        resources.forEach(resource -> remember(resource, acl));
+        return resources.size();
+    }
+
+    /**
+     * Read which resources an ACL protects, from the acl:accessTo of its authorizations.
+     *
+     * @param acl The ACL.
+     * @return The protected resources, in order.
+     */
+    List<URI> protectedBy(URI acl) {
+        try (FcrepoResponse response = repo.get(acl)
+                .accept("application/n-triples")
+                .preferRepresentation(asList(PREFER_EMBED), asList(PREFER_SERVER_MANAGED)).perform()) {
+
+            onErrorThrow(response, "Error reading ACL <%s>", acl);
+
+            try (InputStream body = response.getBody()) {
+                return findObjects(body, PREDICATE_ACCESS_TO).stream().distinct().sorted().collect(Collectors
+                        .toList());
+            }
+        } catch (FcrepoOperationFailedException | IOException e) {
+            throw new RuntimeException("Error conecting to the repository", e);
+        }
+    }
+
+    /**
+     * Forget the ACL of a resource that has been deleted.
+     * <p>
+     * If the deleted resource is itself an ACL, every resource it protects is forgotten as well.
+     * </p>
+     *
+     * @param uri URI of the deleted resource.
+     */
+    void forget(URI uri) {
+        if (aclLocations != null) {
+            synchronized (aclLocations) {
+                aclLocations.remove(uri);
+                aclLocations.values().removeIf(uri::equals);
+            }
+        }
+        forgetAuthorizations(uri);
+    }
+
+    /**
+     * The authorizations of an ACL, as last written or read, if remembered.
+     *
+     * @param acl The ACL.
+     * @return Every resource contained in the ACL, or null if not known.
+     */
+    Map<URI, Authorization> knownAuthorizations(URI acl) {
+        return aclAuthorizations != null ? aclAuthorizations.get(acl) : null;
+    }
+
+    void rememberAuthorizations(URI acl, Map<URI, Authorization> authorizations) {
+        if (aclAuthorizations != null) {
+            aclAuthorizations.put(acl, Collections.unmodifiableMap(new HashMap<>(authorizations)));
+        }
+    }
+
+    void forgetAuthorizations(URI acl) {
+        if (aclAuthorizations != null) {
+            aclAuthorizations.remove(acl);
+        }
+    }
+
+    /**
+     * ACLs whose authorizations are remembered.
+     *
+     * @return A snapshot of the ACLs.
+     */
+    List<URI> aclsWithKnownAuthorizations() {
+        if (aclAuthorizations == null) {
+            return emptyList();
+        }
+        synchronized (aclAuthorizations) {
+            return new ArrayList<>(aclAuthorizations.keySet());
+        }
+    }
+
+    /**
+     * The ACL of a resource, if remembered.
+     *
+     * @param resource The resource.
+     * @return The ACL, or null if not known.
+     */
+    URI knownAcl(URI resource) {
+        return aclLocations != null ? aclLocations.get(resource) : null;
+    }
+
+    /**
+     * Forget that a resource's ACL is where it was remembered to be, e.g. because it has been found not to exist
+     * there any more.
+     *
+     * @param resource The resource.
+     * @param acl Where its ACL was remembered to be.
+     */
+    void forgetAcl(URI resource, URI acl) {
+        if (aclLocations != null) {
+            aclLocations.remove(resource, acl);
+        }
+        forgetAuthorizations(acl);
+    }
+
+    void remember(URI resource, URI acl) {
+        if (aclLocations != null) {
+            aclLocations.put(resource, acl);
+        }
     }
 
     void patchAuthzBody(URI authz, String body) {
@@ -152,14 +751,33 @@ public class AclDriver {
         }
     }
 
-    boolean exists(URI acl) {
-        try (FcrepoResponse response = repo.head(acl)
+    /**
+     * Create an authorization, unless it already exists.
+     * <p>
+     * This is a single conditional PUT, so there is no window between checking for the authorization and creating
+     * it in which a concurrent writer could create it first.
+     * </p>
+     *
+     * @param authz URI of the authorization.
+     * @param body Turtle body of the authorization.
+     * @return true if it was created, false if it already existed and was left as is.
+     */
+    boolean createAuthzBody(URI authz, String body) {
+
+        LOG.debug("PUTting authz to <{}> unless it exists, with body\n{}", authz, body);
+        try (FcrepoResponse response = new ConditionalPutBuilder(authz, repo)
+                .ifNoneMatch("*")
+                .body(IOUtils.toInputStream(body, UTF_8), "text/turtle")
+                .preferLenient()
                 .perform()) {
 
-            if (response.getStatusCode() == 404) {
+            if (response.getStatusCode() == 412) {
+                LOG.debug("Authz <{}> already exists", authz);
+                consume(response);
                 return false;
             }
 
+            onErrorThrow(response, "Error creating authorization at <%s>", authz);
             return true;
 
         } catch (FcrepoOperationFailedException | IOException e) {
@@ -167,18 +785,34 @@ public class AclDriver {
         }
     }
 
+    /**
+     * PUT that can be made conditional on the resource not existing.
+     */
+    static class ConditionalPutBuilder extends PutBuilder {
+
+        ConditionalPutBuilder(URI uri, FcrepoClient client) {
+            super(uri, client);
+        }
+
+        ConditionalPutBuilder ifNoneMatch(String etag) {
+            request.setHeader(HttpHeaders.IF_NONE_MATCH, etag);
+            return this;
+        }
+    }
+
     static void onErrorThrow(FcrepoResponse response, String message, Object... params) throws IOException {
         if (response.getStatusCode() > 299) {
             try (InputStream in = response.getBody()) {
-                throw new RuntimeException(
+                throw new FedoraRequestException(
                         format(message, params) + "; " +
                                 response.getStatusCode() + ": " +
-                                IOUtils.toString(in, UTF_8));
+                                IOUtils.toString(in, UTF_8), response.getStatusCode());
             }
         }
     }
 
     void deleteCompletely(URI uri) {
+        forgetAuthorizations(uri);
 
         try (FcrepoResponse response = repo.delete(uri).perform()) {
             if (response.getStatusCode() == 404) {
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.acl;
+
+import static java.lang.String.format;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.dataconservancy.pass.authz.acl.AclDriver.TEMPLATE_ADD_ACL_TRIPLE;
+import static org.dataconservancy.pass.authz.acl.AclDriver.findObjects;
+import static org.dataconservancy.pass.authz.acl.AclDriver.moreThanOneAcl;
+import static org.dataconservancy.pass.authz.acl.AclDriver.tombstoneFor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Non-blocking counterpart of {@link AclDriver}.
+ * <p>
+ * Each operation sends its requests without waiting, and returns a future that completes when Fedora has answered.
+ * No thread is tied up while a request is in flight, so any number of resources' ACLs can be updated at once, their
+ * requests sharing the HTTP client's pool of keep-alive connections. Responses are handled by the HTTP client's
+ * threads, as are the stages that follow them; so nothing chained onto these futures should block.
+ * </p>
+ * <p>
+ * ACL locations are looked up in, and remembered by, the given {@link AclDriver}.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+public class AsyncAclDriver {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncAclDriver.class);
+
+    static final MediaType TURTLE = MediaType.get("text/turtle");
+
+    static final MediaType SPARQL_UPDATE = MediaType.get("application/sparql-update");
+
+    static final String PREFER_LENIENT = "handling=lenient; received=\"minimal\"";
+
+    final AclDriver driver;
+
+    final OkHttpClient http;
+
+    AsyncAclDriver(AclDriver driver, OkHttpClient http) {
+        this.driver = driver;
+        this.http = http;
+    }
+
+    CompletableFuture<Acl> findOrCreateACL(URI resource) {
+
+        final URI known = driver.knownAcl(resource);
+        if (known != null) {
+            LOG.debug("Found cached ACL <{}> for <{}>", known, resource);
+            return completedFuture(new Acl(known, false));
+        }
+
+        LOG.debug("Finding ACL for <{}>", resource);
+        return send(get(resource, emptyList(), asList(driver.PREFER_CONTAINMENT, driver.PREFER_SERVER_MANAGED)),
+                response -> {
+                    onErrorThrow(response, "Error looking for ACL");
+                    try (InputStream body = response.body().byteStream()) {
+                        return findObjects(body, driver.PREDICATE_ACCESS_CONTROL);
+                    }
+                }).thenCompose(acls -> {
+                    if (acls.size() == 1) {
+                        LOG.debug("Found existing ACL <{}>", acls.get(0));
+                        driver.remember(resource, acls.get(0));
+                        return completedFuture(new Acl(acls.get(0), false));
+                    } else if (acls.isEmpty()) {
+                        LOG.debug("No ACL, on <{}> creating one", resource);
+                        return createAcl(resource);
+                    } else {
+                        throw moreThanOneAcl(resource, acls);
+                    }
+                });
+    }
+
+    CompletableFuture<Acl> createAcl(URI resource) {
+        final byte[] acl;
+        try (InputStream in = this.getClass().getResourceAsStream("/acl.ttl")) {
+            acl = IOUtils.toByteArray(in);
+        } catch (final IOException e) {
+            throw new RuntimeException("Could not read ACL template", e);
+        }
+
+        final URI container = driver.aclContainerFor(resource);
+        return ensureContainer(container).thenCompose(ensured -> send(new Request.Builder().url(container
+                .toString()).post(RequestBody.create(acl, TURTLE)).build(), response -> {
+                    onErrorThrow(response, "Error creating acl by POSTing to " + container);
+                    LOG.debug("Created ACL at <{}>", response.header("Location"));
+                    return new Acl(URI.create(response.header("Location")), true);
+                }));
+    }
+
+    /**
+     * Make sure a pairtree container exists, creating it and any containers above it if need be.
+     *
+     * @param container The container.
+     * @return Completes once the container exists.
+     */
+    CompletableFuture<Void> ensureContainer(URI container) {
+        if (!driver.needsContainer(container)) {
+            return completedFuture(null);
+        }
+
+        return ensureContainer(AclDriver.parentOf(container)).thenCompose(parent -> send(new Request.Builder()
+                .url(container.toString()).put(RequestBody.create(new byte[0], TURTLE))
+                .header("If-None-Match", "*").build(), response -> {
+                    if (response.code() != 412 && response.code() != 409) {
+                        onErrorThrow(response, "Error creating container <%s>", container);
+                    }
+                    driver.knownContainer(container);
+                    return null;
+                }));
+    }
+
+    CompletableFuture<Void> linkAcl(URI acl, URI resource) {
+        LOG.debug("Linking ACL <{}> to <{}> via PATCH:\n{}", acl, resource, format(TEMPLATE_ADD_ACL_TRIPLE, acl));
+
+        return send(new Request.Builder().url(resource.toString())
+                .patch(RequestBody.create(format(TEMPLATE_ADD_ACL_TRIPLE, acl), SPARQL_UPDATE)).build(),
+                response -> {
+                    onErrorThrow(response, "Error linking to acl <%s> from <%s>", acl, resource);
+                    driver.remember(resource, acl);
+                    return null;
+                });
+    }
+
+    /**
+     * Read the authorizations in an ACL, as they are now.
+     *
+     * @param acl The ACL.
+     * @return Every resource contained in the ACL, with its agents, modes, and protected resources.
+     */
+    CompletableFuture<Map<URI, Authorization>> readAuthorizations(URI acl) {
+        return send(get(acl, asList(driver.PREFER_CONTAINMENT, driver.PREFER_EMBED), emptyList()), response -> {
+            onErrorThrow(response, "Error reading ACL <%s>", acl);
+            try (InputStream body = response.body().byteStream()) {
+                return driver.authorizations(body, acl);
+            }
+        });
+    }
+
+    CompletableFuture<Void> patchAuthzBody(URI authz, String body) {
+        LOG.debug("PATCHing authz to <{}> with body\n{}", authz, body);
+        return send(new Request.Builder().url(authz.toString()).patch(RequestBody.create(body, SPARQL_UPDATE))
+                .build(), response -> {
+                    onErrorThrow(response, "Error updating authorization at <%s>", authz);
+                    return null;
+                });
+    }
+
+    CompletableFuture<Void> putAuthzBody(URI authz, String body) {
+        LOG.debug("PUTting authz to <{}> with body\n{}", authz, body);
+        return send(new Request.Builder().url(authz.toString()).put(RequestBody.create(body, TURTLE))
+                .header("Prefer", PREFER_LENIENT).build(), response -> {
+                    onErrorThrow(response, "Error updating authorization at <%s>", authz);
+                    return null;
+                });
+    }
+
+    /**
+     * Create an authorization with a conditional PUT, unless it already exists.
+     *
+     * @param authz URI of the authorization.
+     * @param body Turtle body of the authorization.
+     * @return true if it was created, false if it already existed and was left as is.
+     */
+    CompletableFuture<Boolean> createAuthzBody(URI authz, String body) {
+        LOG.debug("PUTting authz to <{}> unless it exists, with body\n{}", authz, body);
+        return send(new Request.Builder().url(authz.toString()).put(RequestBody.create(body, TURTLE))
+                .header("If-None-Match", "*")
+                .header("Prefer", PREFER_LENIENT).build(), response -> {
+                    if (response.code() == 412) {
+                        LOG.debug("Authz <{}> already exists", authz);
+                        return false;
+                    }
+                    onErrorThrow(response, "Error creating authorization at <%s>", authz);
+                    return true;
+                });
+    }
+
+    CompletableFuture<Void> deleteCompletely(URI uri) {
+        return send(new Request.Builder().url(uri.toString()).delete().build(), response -> {
+            onErrorThrow(response, "Could not delete resource %s", uri);
+            return null;
+        }).thenCompose(deleted -> send(new Request.Builder().url(tombstoneFor(uri).toString()).delete().build(),
+                response -> {
+                    onErrorThrow(response, "Could not delete tombstone %s", uri);
+                    return null;
+                }));
+    }
+
+    private Request get(URI uri, List<URI> include, List<URI> omit) {
+        final StringBuilder prefer = new StringBuilder("return=representation");
+        if (!include.isEmpty()) {
+            prefer.append("; include=\"").append(join(include)).append("\"");
+        }
+        if (!omit.isEmpty()) {
+            prefer.append("; omit=\"").append(join(omit)).append("\"");
+        }
+
+        return new Request.Builder().url(uri.toString())
+                .header("Accept", "application/n-triples")
+                .header("Prefer", prefer.toString())
+                .build();
+    }
+
+    private static String join(List<URI> uris) {
+        return uris.stream().map(URI::toString).collect(Collectors.joining(" "));
+    }
+
+    /*
+     * Send a request without waiting for it. The response is handled, and closed, in the HTTP client's thread as
+     * soon as it arrives, so the connection goes back to the pool right away.
+     */
+    private <T> CompletableFuture<T> send(Request request, ResponseHandler<T> handler) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        http.newCall(request).enqueue(new Callback() {
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                result.completeExceptionally(new RuntimeException("Error conecting to the repository", e));
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (Response r = response) {
+                    result.complete(handler.handle(r));
+                } catch (final IOException e) {
+                    result.completeExceptionally(new RuntimeException("Error conecting to the repository", e));
+                } catch (final RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Handles the response to a request.
+     */
+    @FunctionalInterface
+    interface ResponseHandler<T> {
+
+        T handle(Response response) throws IOException;
+    }
+
+    static void onErrorThrow(Response response, String message, Object... params) throws IOException {
+        if (response.code() > 299) {
+            throw new FedoraRequestException(format(message, params) + "; " + response.code() + ": " + response
+                    .body().string(), response.code());
+        }
+    }
+}
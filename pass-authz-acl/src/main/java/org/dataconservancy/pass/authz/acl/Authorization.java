@@ -0,0 +1,101 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.acl;
+
+import static org.dataconservancy.pass.authz.acl.ACLManager.URI_ACL_ACCESS_TO;
+import static org.dataconservancy.pass.authz.acl.ACLManager.URI_ACL_AGENT;
+import static org.dataconservancy.pass.authz.acl.ACLManager.URI_ACL_MODE;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The agents, modes, and protected resources of an authorization, as read from the repository.
+ *
+ * @author apb@jhu.edu
+ */
+class Authorization {
+
+    final Set<URI> agents = new HashSet<>();
+
+    final Set<URI> modes = new HashSet<>();
+
+    final Set<URI> accessTo = new HashSet<>();
+
+    /**
+     * An authorization granting a permission on one resource.
+     *
+     * @param resource The protected resource.
+     * @param permission The permission.
+     * @param agents The agents granted the permission.
+     * @return The authorization.
+     */
+    static Authorization of(URI resource, Permission permission, Collection<URI> agents) {
+        final Authorization authz = new Authorization();
+        authz.accessTo.add(resource);
+        authz.modes.addAll(permission.modes);
+        authz.agents.addAll(agents);
+        return authz;
+    }
+
+    void add(URI predicate, URI object) {
+        switch (predicate.toString()) {
+            case URI_ACL_AGENT:
+                agents.add(object);
+                break;
+            case URI_ACL_MODE:
+                modes.add(object);
+                break;
+            case URI_ACL_ACCESS_TO:
+                accessTo.add(object);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Whether this authorization grants the given permission to the given resource, and nothing else.
+     *
+     * @param resource The protected resource.
+     * @param permission The permission.
+     * @return true if it does.
+     */
+    boolean isFor(URI resource, Permission permission) {
+        return accessTo.size() == 1 && accessTo.contains(resource) && modes.equals(permission.modes);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Authorization)) {
+            return false;
+        }
+        final Authorization other = (Authorization) o;
+        return agents.equals(other.agents) && modes.equals(other.modes) && accessTo.equals(other.accessTo);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(agents, modes, accessTo);
+    }
+}
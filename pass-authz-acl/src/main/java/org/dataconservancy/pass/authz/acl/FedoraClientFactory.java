@@ -0,0 +1,359 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.acl;
+
+import static org.dataconservancy.pass.client.util.ConfigUtil.getSystemProperty;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.management.ObjectName;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.AuthCache;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.impl.client.BasicAuthCache;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.dataconservancy.pass.authz.LatencyHistogram;
+import org.dataconservancy.pass.client.fedora.FedoraConfig;
+import org.fcrepo.client.FcrepoClient;
+import org.fcrepo.client.FcrepoOperationFailedException;
+import org.fcrepo.client.FcrepoResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Credentials;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+
+/**
+ * Provides the Fedora client shared by everything in the process that talks to Fedora.
+ * <p>
+ * The client keeps a pool of keep-alive connections, so that a run of many requests does not pay for TCP (and TLS)
+ * setup on each one, and credentials are sent up front rather than in response to a challenge. Pool usage is
+ * published via JMX as {@code org.dataconservancy.pass.authz:type=FedoraClientPool}, and the latency of each HTTP
+ * method in a {@link LatencyHistogram} named {@code fedora-<method>}, e.g. {@code fedora-GET}.
+ * </p>
+ * <p>
+ * Non-blocking requests, as made by {@link AsyncAclDriver}, go through a shared {@link OkHttpClient} with the same
+ * limits, credentials, and latency histograms. Its connections are pooled separately, and are not counted in JMX.
+ * </p>
+ * <p>
+ * Both clients identify themselves with the {@link #USER_AGENT} user agent, which Fedora includes in the messages
+ * it sends about the changes they make, so that a listener can recognize changes made by its own ACL writes.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+public class FedoraClientFactory {
+
+    static final Logger LOG = LoggerFactory.getLogger(FedoraClientFactory.class);
+
+    /** Maximum number of pooled connections */
+    public static final String PROPERTY_MAX_CONNECTIONS = "fedora.http.connections";
+
+    /** Maximum number of pooled connections to any one host */
+    public static final String PROPERTY_MAX_CONNECTIONS_PER_ROUTE = "fedora.http.connections.route";
+
+    /** Longest time an idle connection is kept, in milliseconds */
+    public static final String PROPERTY_KEEPALIVE = "fedora.http.keepalive.ms";
+
+    /** Connect timeout, in milliseconds */
+    public static final String PROPERTY_CONNECT_TIMEOUT = "fedora.http.connect.timeout.ms";
+
+    /** Timeout waiting for data, in milliseconds */
+    public static final String PROPERTY_SOCKET_TIMEOUT = "fedora.http.socket.timeout.ms";
+
+    /** User agent of every request made by the shared clients */
+    public static final String USER_AGENT = "pass-authz-acl";
+
+    private static FcrepoClient shared;
+
+    private static OkHttpClient sharedAsync;
+
+    private FedoraClientFactory() {
+    }
+
+    /**
+     * Get the shared Fedora client, creating it if necessary.
+     *
+     * @return the client.
+     */
+    public static synchronized FcrepoClient getFcrepoClient() {
+        if (shared == null) {
+            shared = new PooledFcrepoClient(URI.create(FedoraConfig.getBaseUrl()), FedoraConfig.getUserName(),
+                    FedoraConfig.getPassword(), new PoolingHttpClientConnectionManager());
+            LOG.info("Created Fedora client with at most {} connections", ((PooledFcrepoClient) shared).pool
+                    .getMaxTotal());
+        }
+        return shared;
+    }
+
+    /**
+     * Get the shared client for non-blocking requests to Fedora, creating it if necessary.
+     *
+     * @return the client.
+     */
+    public static synchronized OkHttpClient getHttpClient() {
+        if (sharedAsync == null) {
+            sharedAsync = newHttpClient(URI.create(FedoraConfig.getBaseUrl()), FedoraConfig.getUserName(),
+                    FedoraConfig.getPassword());
+            LOG.info("Created non-blocking Fedora client with at most {} concurrent requests", sharedAsync
+                    .dispatcher().getMaxRequests());
+        }
+        return sharedAsync;
+    }
+
+    /**
+     * Create a client for non-blocking requests.
+     * <p>
+     * Requests are sent by the client's own daemon threads, up to the configured number of connections at a time;
+     * any more wait in the client's queue rather than in a caller's thread.
+     * </p>
+     *
+     * @param baseUrl Fedora base URL, requests to which get credentials.
+     * @param username Fedora user name, or null.
+     * @param password Fedora password.
+     * @return the client.
+     */
+    static OkHttpClient newHttpClient(URI baseUrl, String username, String password) {
+        final int maxConnections = Integer.parseInt(getSystemProperty(PROPERTY_MAX_CONNECTIONS, "100"));
+        final int maxPerRoute = Integer.parseInt(getSystemProperty(PROPERTY_MAX_CONNECTIONS_PER_ROUTE, "50"));
+        final long keepAlive = Long.parseLong(getSystemProperty(PROPERTY_KEEPALIVE, "30000"));
+        final long socketTimeout = Long.parseLong(getSystemProperty(PROPERTY_SOCKET_TIMEOUT, "60000"));
+
+        final ExecutorService senders = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), r -> {
+                    final Thread sender = new Thread(r, "fedora-async");
+                    sender.setDaemon(true);
+                    return sender;
+                });
+
+        final Dispatcher dispatcher = new Dispatcher(senders);
+        dispatcher.setMaxRequests(maxConnections);
+        dispatcher.setMaxRequestsPerHost(maxPerRoute);
+
+        // Only Fedora gets the credentials, and it gets them without having to ask
+        final HttpUrl fedora = HttpUrl.get(baseUrl.toString());
+        final String credentials = username != null && !username.isEmpty() ? Credentials.basic(username, password)
+                : null;
+
+        return new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(maxPerRoute, keepAlive, TimeUnit.MILLISECONDS))
+                .connectTimeout(Long.parseLong(getSystemProperty(PROPERTY_CONNECT_TIMEOUT, "10000")),
+                        TimeUnit.MILLISECONDS)
+                .readTimeout(socketTimeout, TimeUnit.MILLISECONDS)
+                .writeTimeout(socketTimeout, TimeUnit.MILLISECONDS)
+                .addInterceptor(chain -> {
+                    Request request = chain.request().newBuilder().header("User-Agent", USER_AGENT).build();
+                    if (credentials != null && request.url().host().equals(fedora.host()) &&
+                            request.url().port() == fedora.port() &&
+                            request.url().scheme().equals(fedora.scheme())) {
+                        request = request.newBuilder().header("Authorization", credentials).build();
+                    }
+
+                    final long start = System.nanoTime();
+                    try {
+                        return chain.proceed(request);
+                    } finally {
+                        LatencyHistogram.named("fedora-" + request.method()).record(System.nanoTime() - start);
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Fedora client that executes requests with a pooled HTTP client.
+     */
+    static class PooledFcrepoClient extends FcrepoClient {
+
+        final PoolingHttpClientConnectionManager pool;
+
+        final CloseableHttpClient http;
+
+        final CredentialsProvider credentials = new BasicCredentialsProvider();
+
+        final AuthCache preemptive = new BasicAuthCache();
+
+        PooledFcrepoClient(URI baseUrl, String username, String password, PoolingHttpClientConnectionManager pool) {
+            super(null, null, null, false);
+            this.pool = pool;
+
+            pool.setMaxTotal(Integer.parseInt(getSystemProperty(PROPERTY_MAX_CONNECTIONS, "100")));
+            pool.setDefaultMaxPerRoute(Integer.parseInt(getSystemProperty(PROPERTY_MAX_CONNECTIONS_PER_ROUTE,
+                    "50")));
+            pool.setValidateAfterInactivity(2000);
+
+            final long keepAlive = Long.parseLong(getSystemProperty(PROPERTY_KEEPALIVE, "30000"));
+
+            http = HttpClients.custom()
+                    .setConnectionManager(pool)
+                    .setUserAgent(USER_AGENT)
+                    .setKeepAliveStrategy((response, context) -> {
+                        final long offered = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(
+                                response, context);
+                        return offered > 0 ? Math.min(offered, keepAlive) : keepAlive;
+                    })
+                    .evictExpiredConnections()
+                    .evictIdleConnections(keepAlive, TimeUnit.MILLISECONDS)
+                    .setDefaultRequestConfig(RequestConfig.custom()
+                            .setConnectTimeout(Integer.parseInt(getSystemProperty(PROPERTY_CONNECT_TIMEOUT,
+                                    "10000")))
+                            .setSocketTimeout(Integer.parseInt(getSystemProperty(PROPERTY_SOCKET_TIMEOUT,
+                                    "60000")))
+                            .build())
+                    .build();
+
+            // Only Fedora gets the credentials, and it gets them without having to ask
+            if (username != null && !username.isEmpty()) {
+                final HttpHost fedora = new HttpHost(baseUrl.getHost(), baseUrl.getPort(), baseUrl.getScheme());
+                credentials.setCredentials(new AuthScope(fedora), new UsernamePasswordCredentials(username,
+                        password));
+                preemptive.put(fedora, new BasicScheme());
+            }
+
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new Pool(pool), new ObjectName(
+                        "org.dataconservancy.pass.authz:type=FedoraClientPool"));
+            } catch (final Exception e) {
+                LOG.debug("Could not register Fedora client pool with JMX", e);
+            }
+        }
+
+        @Override
+        public FcrepoResponse executeRequest(URI url, HttpRequestBase request)
+                throws FcrepoOperationFailedException {
+            final HttpClientContext context = HttpClientContext.create();
+            context.setCredentialsProvider(credentials);
+            context.setAuthCache(preemptive);
+
+            final long start = System.nanoTime();
+            final CloseableHttpResponse response;
+            try {
+                response = http.execute(request, context);
+            } catch (final IOException e) {
+                throw new FcrepoOperationFailedException(url, -1, e.getMessage());
+            } finally {
+                LatencyHistogram.named("fedora-" + request.getMethod()).record(System.nanoTime() - start);
+            }
+
+            final Map<String, List<String>> headers = new LinkedHashMap<>();
+            for (final Header header : response.getAllHeaders()) {
+                headers.computeIfAbsent(header.getName(), h -> new ArrayList<>()).add(header.getValue());
+            }
+
+            // Closing the body returns the connection to the pool
+            final HttpEntity entity = response.getEntity();
+            try {
+                return new FcrepoResponse(url, response.getStatusLine().getStatusCode(), headers,
+                        entity == null ? null : entity.getContent());
+            } catch (final IOException e) {
+                try {
+                    response.close();
+                } catch (final IOException x) {
+                    e.addSuppressed(x);
+                }
+                throw new FcrepoOperationFailedException(url, -1, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * JMX view of the connection pool.
+     */
+    public interface PoolMBean {
+
+        /**
+         * @return number of connections in use.
+         */
+        int getLeased();
+
+        /**
+         * @return number of idle connections.
+         */
+        int getAvailable();
+
+        /**
+         * @return number of requests waiting for a connection.
+         */
+        int getPending();
+
+        /**
+         * @return maximum number of connections.
+         */
+        int getMax();
+    }
+
+    static class Pool implements PoolMBean {
+
+        final PoolingHttpClientConnectionManager pool;
+
+        Pool(PoolingHttpClientConnectionManager pool) {
+            this.pool = pool;
+        }
+
+        private PoolStats stats() {
+            return pool.getTotalStats();
+        }
+
+        @Override
+        public int getLeased() {
+            return stats().getLeased();
+        }
+
+        @Override
+        public int getAvailable() {
+            return stats().getAvailable();
+        }
+
+        @Override
+        public int getPending() {
+            return stats().getPending();
+        }
+
+        @Override
+        public int getMax() {
+            return stats().getMax();
+        }
+    }
+}
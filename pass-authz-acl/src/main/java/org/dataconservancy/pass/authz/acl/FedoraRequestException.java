@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.acl;
+
+/**
+ * A request to Fedora that failed with an error status.
+ *
+ * @author apb@jhu.edu
+ */
+public class FedoraRequestException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    FedoraRequestException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * The HTTP status of the response.
+     *
+     * @return Status code.
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Whether a failure was caused by a resource not existing (any more).
+     *
+     * @param e The failure.
+     * @return true if it, or any of its causes, is a 404 or 410 from Fedora.
+     */
+    static boolean isGone(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof FedoraRequestException) {
+                final int status = ((FedoraRequestException) cause).statusCode;
+                return status == 404 || status == 410;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.acl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.fcrepo.client.FcrepoClient;
+import org.fcrepo.client.FcrepoOperationFailedException;
+import org.fcrepo.client.FcrepoResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A Fedora transaction, as started by a POST to {@code fcr:tx}.
+ * <p>
+ * Requests made through {@link #client()} are sent to the transaction's URIs, and the transaction's URIs in
+ * responses are translated back, so code using the client need not know it is in a transaction. Unless committed,
+ * the transaction is rolled back when closed.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+class FedoraTransaction implements AutoCloseable {
+
+    static final Logger LOG = LoggerFactory.getLogger(FedoraTransaction.class);
+
+    private final FcrepoClient repo;
+
+    private final String base;
+
+    private final String txBase;
+
+    private final FcrepoClient client;
+
+    private boolean done;
+
+    private FedoraTransaction(FcrepoClient repo, String base, String txBase) {
+        this.repo = repo;
+        this.base = base;
+        this.txBase = txBase;
+        this.client = new TransactionClient();
+    }
+
+    /**
+     * Start a transaction.
+     *
+     * @param repo Client for the repository.
+     * @param repositoryBase Base URI of the repository, e.g. {@code http://localhost:8080/fcrepo/rest/}
+     * @return The transaction.
+     */
+    static FedoraTransaction begin(FcrepoClient repo, URI repositoryBase) {
+        final String base = withSlash(repositoryBase.toString());
+
+        try (FcrepoResponse response = repo.post(URI.create(base + "fcr:tx")).perform()) {
+            AclDriver.onErrorThrow(response, "Could not start a transaction at <%s>", base);
+
+            final FedoraTransaction tx = new FedoraTransaction(repo, base, withSlash(response.getLocation()
+                    .toString()));
+            LOG.debug("Started transaction <{}>", tx.txBase);
+            return tx;
+        } catch (final IOException | FcrepoOperationFailedException e) {
+            throw new RuntimeException("Error conecting to the repository", e);
+        }
+    }
+
+    /**
+     * Client that makes all requests within this transaction.
+     *
+     * @return the client.
+     */
+    FcrepoClient client() {
+        return client;
+    }
+
+    void commit() {
+        end("fcr:commit");
+    }
+
+    void rollback() {
+        end("fcr:rollback");
+    }
+
+    @Override
+    public void close() {
+        if (!done) {
+            rollback();
+        }
+    }
+
+    private void end(String action) {
+        done = true;
+        LOG.debug("Ending transaction <{}> with {}", txBase, action);
+        try (FcrepoResponse response = repo.post(URI.create(txBase + "fcr:tx/" + action)).perform()) {
+            AclDriver.onErrorThrow(response, "Could not %s transaction <%s>", action, txBase);
+        } catch (final IOException | FcrepoOperationFailedException e) {
+            throw new RuntimeException("Error conecting to the repository", e);
+        }
+    }
+
+    URI toTransaction(URI uri) {
+        final String u = uri.toString();
+        return u.startsWith(base) ? URI.create(txBase + u.substring(base.length())) : uri;
+    }
+
+    String fromTransaction(String text) {
+        // The transaction URI itself may appear without its trailing slash
+        return text == null ? null : text.replace(txBase.substring(0, txBase.length() - 1),
+                base.substring(0, base.length() - 1));
+    }
+
+    private static String withSlash(String uri) {
+        return uri.endsWith("/") ? uri : uri + "/";
+    }
+
+    /**
+     * Sends requests to the transaction, and translates the transaction out of the responses.
+     */
+    private class TransactionClient extends FcrepoClient {
+
+        TransactionClient() {
+            super(null, null, null, false);
+        }
+
+        @Override
+        public FcrepoResponse executeRequest(URI uri, HttpRequestBase request)
+                throws FcrepoOperationFailedException {
+            final URI txUri = toTransaction(uri);
+            request.setURI(txUri);
+
+            final FcrepoResponse response = repo.executeRequest(txUri, request);
+
+            final Map<String, List<String>> headers = new HashMap<>();
+            response.getHeaders().forEach((name, values) -> {
+                final List<String> translated = new ArrayList<>();
+                values.forEach(value -> translated.add(fromTransaction(value)));
+                headers.put(name, translated);
+            });
+
+            final InputStream body;
+            try (InputStream original = response.getBody()) {
+                body = original == null ? null : new ByteArrayInputStream(fromTransaction(IOUtils.toString(
+                        original, UTF_8)).getBytes(UTF_8));
+            } catch (final IOException e) {
+                throw new RuntimeException("Error reading response from <" + txUri + ">", e);
+            }
+
+            return new FcrepoResponse(uri, response.getStatusCode(), headers, body);
+        }
+    }
+}
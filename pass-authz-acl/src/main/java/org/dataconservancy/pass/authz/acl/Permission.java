@@ -16,16 +16,26 @@
 
 package org.dataconservancy.pass.authz.acl;
 
+import static java.util.stream.Collectors.toSet;
+
+import java.net.URI;
+import java.util.Set;
+import java.util.stream.Stream;
+
 /**
  * @author apb@jhu.edu
  */
 public enum Permission {
-    Read("<> acl:mode acl:Read .\n"),
-    Write("<> acl:mode acl:Read .\n <> acl:mode acl:Write . \n");
+    Read("<> acl:mode acl:Read .\n", "http://www.w3.org/ns/auth/acl#Read"),
+    Write("<> acl:mode acl:Read .\n <> acl:mode acl:Write . \n",
+            "http://www.w3.org/ns/auth/acl#Read", "http://www.w3.org/ns/auth/acl#Write");
 
     final String rdf;
 
-    private Permission(final String rdf) {
+    final Set<URI> modes;
+
+    private Permission(final String rdf, String... modes) {
         this.rdf = rdf;
+        this.modes = Stream.of(modes).map(URI::create).collect(toSet());
     }
 }
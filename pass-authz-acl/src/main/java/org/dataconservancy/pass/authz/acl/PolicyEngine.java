@@ -21,6 +21,7 @@ import static java.util.Optional.ofNullable;
 import java.net.URI;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CompletionException;
 
 import org.dataconservancy.pass.client.PassClient;
 import org.dataconservancy.pass.model.Submission;
@@ -43,6 +44,8 @@ public class PolicyEngine {
 
     private URI grantAdminRole;
 
+    private boolean async = false;
+
     Logger LOG = LoggerFactory.getLogger(PolicyEngine.class);
 
     public PolicyEngine(PassClient client, ACLManager manager) {
@@ -65,6 +68,25 @@ public class PolicyEngine {
         this.grantAdminRole = adminRole;
     }
 
+    /**
+     * Set whether ACLs are written with {@link ACLManager.Builder#performAsync()}.
+     * <p>
+     * Each update still returns only once its ACL is written, but the independent requests it makes (e.g. the
+     * authorization of each permission) are in flight at once, rather than made one after another.
+     * </p>
+     *
+     * @param async true to write ACLs asynchronously.
+     */
+    public void setAsync(boolean async) {
+        LOG.info("Writing ACLs {}", async ? "asynchronously" : "synchronously");
+        this.async = async;
+    }
+
+    // A deleted resource no longer has an ACL worth remembering
+    public void resourceDeleted(URI uri) {
+        acls.forget(uri);
+    }
+
     // Grant write on submissions to the user and backend
     public void updateSubmission(URI uri) {
         final Submission submission = client.readResource(uri, Submission.class);
@@ -99,10 +121,9 @@ public class PolicyEngine {
 
         LOG.debug("Granting read of submission {} to {}", authReaders);
         LOG.debug("Granting write on submission {} to {}", uri, authWriters);
-        acls.setPermissions(uri)
+        perform(acls.setPermissions(uri)
                 .grantRead(authReaders)
-                .grantWrite(authWriters)
-                .perform();
+                .grantWrite(authWriters));
     }
 
     public void updateSubmissionEvent(URI eventUri) {
@@ -122,9 +143,25 @@ public class PolicyEngine {
         }
 
         LOG.debug("Making submissionEvent {} immutable, but granting read to {}", eventUri, authReaders);
-        acls.setPermissions(eventUri)
-                .grantRead(authReaders)
-                .perform();
+        perform(acls.setPermissions(eventUri)
+                .grantRead(authReaders));
+    }
+
+    private void perform(ACLManager.Builder builder) {
+        if (!async) {
+            builder.perform();
+            return;
+        }
+
+        try {
+            builder.performAsync().join();
+        } catch (final CompletionException e) {
+            // Fail just as perform() would
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
     }
 
 }
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.acl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singleton;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Map;
+
+import org.apache.http.client.methods.HttpRequestBase;
+import org.fcrepo.client.FcrepoClient;
+import org.fcrepo.client.FcrepoResponse;
+import org.fcrepo.client.GetBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ * @author apb@jhu.edu
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class AclDriverTest {
+
+    static final URI ACCESS_CONTROL = URI.create("http://www.w3.org/ns/auth/acl#accessControl");
+
+    static final URI RESOURCE = URI.create("http://example.org/fcrepo/rest/submissions/1");
+
+    static final URI ACL = URI.create("http://example.org/fcrepo/rest/acls/1");
+
+    @Mock
+    FcrepoClient repo;
+
+    @Mock
+    GetBuilder get;
+
+    AclDriver toTest;
+
+    @Before
+    public void setUp() throws Exception {
+        toTest = new AclDriver(URI.create("http://example.org/fcrepo/rest/acls"), repo);
+    }
+
+    @Test
+    public void findObjectsTest() throws Exception {
+        final String ntriples =
+                "# A comment mentioning <http://www.w3.org/ns/auth/acl#accessControl>\n" +
+                        "<" + RESOURCE + "> <http://purl.org/dc/terms/title> " +
+                        "\"Title <http://www.w3.org/ns/auth/acl#accessControl> <http://example.org/not>\" .\n" +
+                        "<" + RESOURCE + "> <http://www.w3.org/ns/auth/acl#accessControl> <" + ACL + "> .\n" +
+                        "_:b0 <http://example.org/rel> <" + RESOURCE + "> .\n" +
+                        "<" + RESOURCE + "> <http://example.org/rel> <http://www.w3.org/ns/auth/acl#accessControl> .\n";
+
+        assertEquals(asList(ACL), AclDriver.findObjects(stream(ntriples), ACCESS_CONTROL));
+    }
+
+    @Test
+    public void findObjectsBlankSubjectTest() throws Exception {
+        final String ntriples = "_:b0\t<http://www.w3.org/ns/auth/acl#accessControl>\t<" + ACL + "> .\n";
+
+        assertEquals(asList(ACL), AclDriver.findObjects(stream(ntriples), ACCESS_CONTROL));
+    }
+
+    @Test
+    public void findExistingAclTest() throws Exception {
+        respondWith("<" + RESOURCE + "> <http://purl.org/dc/terms/title> \"Title\" .\n" +
+                "<" + RESOURCE + "> <http://www.w3.org/ns/auth/acl#accessControl> <" + ACL + "> .\n");
+
+        final Acl acl = toTest.findOrCreateACL(RESOURCE);
+
+        assertEquals(ACL, acl.uri);
+        assertFalse(acl.isNew);
+        verify(repo, never()).post(any());
+    }
+
+    @Test
+    public void multipleAclsTest() throws Exception {
+        respondWith("<" + RESOURCE + "> <http://www.w3.org/ns/auth/acl#accessControl> <" + ACL + "> .\n" +
+                "<" + RESOURCE + "> <http://www.w3.org/ns/auth/acl#accessControl> <" + ACL + "/other> .\n");
+
+        try {
+            toTest.findOrCreateACL(RESOURCE);
+            fail("Should have failed on multiple ACLs");
+        } catch (final RuntimeException e) {
+            assertTrue(e.getMessage().contains("More than one acl"));
+        }
+    }
+
+    @Test
+    public void cachedAclTest() throws Exception {
+        toTest = new AclDriver(URI.create("http://example.org/fcrepo/rest/acls"), repo, 10);
+        respondWith("<" + RESOURCE + "> <http://www.w3.org/ns/auth/acl#accessControl> <" + ACL + "> .\n");
+
+        assertEquals(ACL, toTest.findOrCreateACL(RESOURCE).uri);
+        assertEquals(ACL, toTest.findOrCreateACL(RESOURCE).uri);
+        verify(repo, times(1)).get(RESOURCE);
+
+        toTest.forget(RESOURCE);
+        respondWith("<" + RESOURCE + "> <http://www.w3.org/ns/auth/acl#accessControl> <" + ACL + "> .\n");
+
+        assertEquals(ACL, toTest.findOrCreateACL(RESOURCE).uri);
+        verify(repo, times(2)).get(RESOURCE);
+    }
+
+    @Test
+    public void learnAclTest() throws Exception {
+        toTest = new AclDriver(URI.create("http://example.org/fcrepo/rest/acls"), repo, 10);
+
+        when(repo.get(ACL)).thenReturn(get);
+        when(get.accept(any())).thenReturn(get);
+        when(get.preferRepresentation(any(), any())).thenReturn(get);
+        when(get.perform()).thenReturn(new FcrepoResponse(ACL, 200, emptyMap(), stream(
+                "<" + ACL + "> <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> " +
+                        "<http://www.w3.org/ns/auth/acl#Acl> .\n" +
+                        "<" + ACL + "/Read> <http://www.w3.org/ns/auth/acl#accessTo> <" + RESOURCE + "> .\n" +
+                        "<" + ACL + "/Write> <http://www.w3.org/ns/auth/acl#accessTo> <" + RESOURCE + "> .\n")));
+
+        assertEquals(1, toTest.learnAcl(ACL));
+
+        final Acl acl = toTest.findOrCreateACL(RESOURCE);
+        assertEquals(ACL, acl.uri);
+        assertFalse(acl.isNew);
+        verify(repo, never()).get(RESOURCE);
+
+        // Deleting the ACL itself forgets the resources it protects
+        toTest.forget(ACL);
+        respondWith("<" + RESOURCE + "> <http://www.w3.org/ns/auth/acl#accessControl> <" + ACL + "> .\n");
+        toTest.findOrCreateACL(RESOURCE);
+        verify(repo, times(1)).get(RESOURCE);
+    }
+
+    @Test
+    public void readAuthorizationsTest() throws Exception {
+        final URI read = URI.create(ACL + "/Read");
+        final URI other = URI.create(ACL + "/other");
+        final URI role = URI.create("http://example.org/roles#submitter");
+
+        when(repo.get(ACL)).thenReturn(get);
+        when(get.accept(any())).thenReturn(get);
+        when(get.preferRepresentation(any(), any())).thenReturn(get);
+        when(get.perform()).thenReturn(new FcrepoResponse(ACL, 200, emptyMap(), stream(
+                "<" + read + "> <http://www.w3.org/ns/auth/acl#agent> <" + role + "> .\n" +
+                        "<" + ACL + "> <http://www.w3.org/ns/ldp#contains> <" + read + "> .\n" +
+                        "<" + ACL + "> <http://www.w3.org/ns/ldp#contains> <" + other + "> .\n" +
+                        "<" + read + "> <http://www.w3.org/ns/auth/acl#mode> " +
+                        "<http://www.w3.org/ns/auth/acl#Read> .\n" +
+                        "<" + read + "> <http://www.w3.org/ns/auth/acl#accessTo> <" + RESOURCE + "> .\n")));
+
+        final Map<URI, Authorization> authorizations = toTest.readAuthorizations(ACL);
+
+        assertEquals(2, authorizations.size());
+        assertTrue(authorizations.get(read).isFor(RESOURCE, Permission.Read));
+        assertFalse(authorizations.get(read).isFor(RESOURCE, Permission.Write));
+        assertEquals(singleton(role), authorizations.get(read).agents);
+        assertTrue(authorizations.get(other).agents.isEmpty());
+    }
+
+    @Test
+    public void createAuthzTest() throws Exception {
+        final URI authz = URI.create(ACL + "/Read");
+        final ArgumentCaptor<HttpRequestBase> request = ArgumentCaptor.forClass(HttpRequestBase.class);
+
+        when(repo.executeRequest(eq(authz), request.capture())).thenReturn(
+                new FcrepoResponse(authz, 201, emptyMap(), stream("")));
+
+        assertTrue(toTest.createAuthzBody(authz, "<> a <http://www.w3.org/ns/auth/acl#Authorization> ."));
+        assertEquals("PUT", request.getValue().getMethod());
+        assertEquals("*", request.getValue().getFirstHeader("If-None-Match").getValue());
+    }
+
+    @Test
+    public void createExistingAuthzTest() throws Exception {
+        final URI authz = URI.create(ACL + "/Read");
+
+        when(repo.executeRequest(eq(authz), any())).thenReturn(
+                new FcrepoResponse(authz, 412, emptyMap(), stream("")));
+
+        assertFalse(toTest.createAuthzBody(authz, "<> a <http://www.w3.org/ns/auth/acl#Authorization> ."));
+    }
+
+    private void respondWith(String ntriples) throws Exception {
+        when(repo.get(RESOURCE)).thenReturn(get);
+        when(get.accept(any())).thenReturn(get);
+        when(get.preferRepresentation(any(), any())).thenReturn(get);
+        when(get.perform()).thenReturn(new FcrepoResponse(RESOURCE, 200, emptyMap(), stream(ntriples)));
+    }
+
+    private static InputStream stream(String ntriples) {
+        return new ByteArrayInputStream(ntriples.getBytes(UTF_8));
+    }
+}
@@ -16,20 +16,25 @@
 
 package org.dataconservancy.pass.authz.acl;
 
+import static java.lang.String.format;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Arrays.asList;
 import static org.dataconservancy.pass.authz.acl.ACLManager.URI_ACL_ACCESS_TO;
 import static org.dataconservancy.pass.authz.acl.ACLManager.URI_ACL_AGENT;
 import static org.dataconservancy.pass.authz.acl.ACLManager.URI_ACL_MODE;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
 
 import org.apache.commons.io.IOUtils;
@@ -98,8 +103,8 @@ public class AclManagerTest {
     public void addPermissionsEverythingExistsTest() throws Exception {
 
         when(driver.findOrCreateACL(eq(resource))).thenReturn(new Acl(aclContainer, false));
-        when(driver.exists(authUri(aclContainer, Permission.Read))).thenReturn(true);
-        when(driver.exists(authUri(aclContainer, Permission.Write))).thenReturn(true);
+        when(driver.createAuthzBody(eq(readAuthAcl), any())).thenReturn(false);
+        when(driver.createAuthzBody(eq(writeAuthAcl), any())).thenReturn(false);
 
         toTest.addPermissions(resource)
                 .grantRead(asList(readRole1, readrole2))
@@ -166,18 +171,23 @@ public class AclManagerTest {
     public void addPermissionsNoPriorAuthTest() throws Exception {
 
         when(driver.findOrCreateACL(eq(resource))).thenReturn(new Acl(aclContainer, true));
-        when(driver.exists(authUri(aclContainer, Permission.Read))).thenReturn(false);
-        when(driver.exists(authUri(aclContainer, Permission.Write))).thenReturn(false);
+        when(driver.createAuthzBody(eq(readAuthAcl), any())).thenReturn(true);
+        when(driver.createAuthzBody(eq(writeAuthAcl), any())).thenReturn(true);
 
-        toTest.addPermissions(resource)
+        final ACLManager.Builder builder = toTest.addPermissions(resource)
                 .grantRead(asList(readRole1, readrole2))
                 .grantWrite(asList(writeRole1, writerole2))
-                .grantAppend(asList(appendRole1, appendrole2)).perform();
+                .grantAppend(asList(appendRole1, appendrole2));
+        builder.perform();
 
         verify(driver, times(1)).linkAcl(aclContainer, resource);
+        verify(driver, never()).patchAuthzBody(any(), any());
+        assertEquals(ACLManager.Outcome.REPLACED, builder.getOutcome());
 
-        assertReadAclIsCorrect();
-        assertWriteAclIsCorrect();
+        verify(driver).createAuthzBody(eq(readAuthAcl), requestBodyCaptor.capture());
+        assertReadAclIsCorrect(requestBodyCaptor.getValue());
+        verify(driver).createAuthzBody(eq(writeAuthAcl), requestBodyCaptor.capture());
+        assertWriteAclIsCorrect(requestBodyCaptor.getValue());
     }
 
     @Test
@@ -217,10 +227,10 @@ public class AclManagerTest {
 
         when(driver.findOrCreateACL(eq(resource))).thenReturn(new Acl(aclContainer, false));
 
-        when(crawler.visit(eq(aclContainer), any(), any(), any())).thenAnswer(i -> {
-            asList(readAuthAcl, writeAuthAcl, UNEXPECTED_AUTHX).forEach(i.getArgument(1));
-            return 3;
-        });
+        final Map<URI, Authorization> current = new HashMap<>();
+        asList(readAuthAcl, writeAuthAcl, UNEXPECTED_AUTHX).forEach(authz -> current.put(authz,
+                new Authorization()));
+        when(driver.readAuthorizations(aclContainer)).thenReturn(current);
 
         toTest.setPermissions(resource)
                 .grantRead(asList(readRole1, readrole2))
@@ -234,17 +244,127 @@ public class AclManagerTest {
         verify(driver, times(0)).deleteCompletely(eq(writeAuthAcl));
     }
 
+    @Test
+    public void setPermissionsUnchangedTest() throws Exception {
+
+        when(driver.findOrCreateACL(eq(resource))).thenReturn(new Acl(aclContainer, false));
+
+        final Map<URI, Authorization> current = new HashMap<>();
+        current.put(readAuthAcl, authorization(Permission.Read, readRole1, readrole2));
+        current.put(writeAuthAcl, authorization(Permission.Write, writeRole1, writerole2, appendRole1,
+                appendrole2));
+        when(driver.readAuthorizations(aclContainer)).thenReturn(current);
+
+        final ACLManager.Builder builder = toTest.setPermissions(resource)
+                .grantRead(asList(readRole1, readrole2))
+                .grantWrite(asList(writeRole1, writerole2))
+                .grantAppend(asList(appendRole1, appendrole2));
+        builder.perform();
+
+        assertEquals(ACLManager.Outcome.UNCHANGED, builder.getOutcome());
+        verify(driver, never()).putAuthzBody(any(), any());
+        verify(driver, never()).patchAuthzBody(any(), any());
+        verify(driver, never()).deleteCompletely(any());
+    }
+
+    @Test
+    public void setPermissionsPatchedTest() throws Exception {
+
+        when(driver.findOrCreateACL(eq(resource))).thenReturn(new Acl(aclContainer, false));
+
+        final Map<URI, Authorization> current = new HashMap<>();
+        current.put(readAuthAcl, authorization(Permission.Read, readRole1, readrole2));
+        current.put(writeAuthAcl, authorization(Permission.Write, writeRole1, appendRole1));
+        when(driver.readAuthorizations(aclContainer)).thenReturn(current);
+
+        final ACLManager.Builder builder = toTest.setPermissions(resource)
+                .grantRead(asList(readRole1, readrole2))
+                .grantWrite(asList(writeRole1, writerole2));
+        builder.perform();
+
+        assertEquals(ACLManager.Outcome.PATCHED, builder.getOutcome());
+        verify(driver, never()).putAuthzBody(any(), any());
+        verify(driver, times(1)).patchAuthzBody(eq(writeAuthAcl), requestBodyCaptor.capture());
+
+        final Model writeAuthModel = ModelFactory.createDefaultModel();
+        UpdateAction.parseExecute(format("INSERT DATA { <> <%s> <%s> . <> <%s> <%s> }", URI_ACL_AGENT, writeRole1,
+                URI_ACL_AGENT, appendRole1), DatasetFactory.create(writeAuthModel));
+        UpdateAction.parseExecute(requestBodyCaptor.getValue(), DatasetFactory.create(writeAuthModel));
+
+        asList(writeRole1, writerole2).forEach(role -> assertTrue(writeAuthModel.contains(null,
+                writeAuthModel.createProperty(URI_ACL_AGENT),
+                writeAuthModel.createResource(role.toString()))));
+        assertFalse(writeAuthModel.contains(null,
+                writeAuthModel.createProperty(URI_ACL_AGENT),
+                writeAuthModel.createResource(appendRole1.toString())));
+    }
+
+    @Test
+    public void setPermissionsReplacedTest() throws Exception {
+
+        when(driver.findOrCreateACL(eq(resource))).thenReturn(new Acl(aclContainer, false));
+
+        // The Write authorization protects some other resource
+        final Map<URI, Authorization> current = new HashMap<>();
+        current.put(readAuthAcl, authorization(Permission.Read, readRole1, readrole2));
+        current.put(writeAuthAcl, authorization(Permission.Write, writeRole1, writerole2));
+        current.get(writeAuthAcl).accessTo.clear();
+        current.get(writeAuthAcl).accessTo.add(randomUri());
+        when(driver.readAuthorizations(aclContainer)).thenReturn(current);
+
+        final ACLManager.Builder builder = toTest.setPermissions(resource)
+                .grantRead(asList(readRole1, readrole2))
+                .grantWrite(asList(writeRole1, writerole2));
+        builder.perform();
+
+        assertEquals(ACLManager.Outcome.REPLACED, builder.getOutcome());
+        verify(driver, never()).putAuthzBody(eq(readAuthAcl), any());
+        verify(driver, times(1)).putAuthzBody(eq(writeAuthAcl), any());
+    }
+
+    @Test
+    public void warmUpTest() throws Exception {
+        final URI otherAcl = randomUri();
+
+        when(crawler.visit(eq(driver.acls), any(), any(), any())).thenAnswer(i -> {
+            asList(aclContainer, otherAcl).forEach(i.getArgument(1));
+            return 2;
+        });
+        when(driver.learnAcl(aclContainer)).thenReturn(1);
+        when(driver.learnAcl(otherAcl)).thenReturn(1);
+
+        assertEquals(2, toTest.warmUp());
+    }
+
+    @Test
+    public void warmUpLimitTest() throws Exception {
+        final URI otherAcl = randomUri();
+
+        when(crawler.visit(eq(driver.acls), any(), any(), any())).thenAnswer(i -> {
+            asList(aclContainer, otherAcl).forEach(i.getArgument(1));
+            return 2;
+        });
+        when(driver.learnAcl(aclContainer)).thenReturn(1);
+
+        assertEquals(1, toTest.warmUp(1));
+        verify(driver, never()).learnAcl(otherAcl);
+    }
+
     private void assertReadAclIsCorrect() {
 
         verify(driver).putAuthzBody(eq(readAuthAcl), requestBodyCaptor.capture());
+        assertReadAclIsCorrect(requestBodyCaptor.getValue());
+    }
+
+    private void assertReadAclIsCorrect(String body) {
 
         final Model readAuthModel = ModelFactory.createDefaultModel();
-        readAuthModel.read(IOUtils.toInputStream(requestBodyCaptor.getValue(), UTF_8), null, "TTL");
+        readAuthModel.read(IOUtils.toInputStream(body, UTF_8), null, "TTL");
 
         // Make sure the Read roles have read permissions
         asList(readRole1, readrole2).stream().map(URI::toString)
                 .forEach(uri -> {
-                    assertTrue(uri + "\n" + requestBodyCaptor.getValue(), readAuthModel.contains(
+                    assertTrue(uri + "\n" + body, readAuthModel.contains(
                             null,
                             readAuthModel.createProperty(URI_ACL_AGENT),
                             readAuthModel.createProperty(uri)));
@@ -265,14 +385,18 @@ public class AclManagerTest {
     private void assertWriteAclIsCorrect() {
         // Now, let's look at the Write authorization
         verify(driver).putAuthzBody(eq(writeAuthAcl), requestBodyCaptor.capture());
+        assertWriteAclIsCorrect(requestBodyCaptor.getValue());
+    }
+
+    private void assertWriteAclIsCorrect(String body) {
 
         final Model writeAuthModel = ModelFactory.createDefaultModel();
-        writeAuthModel.read(IOUtils.toInputStream(requestBodyCaptor.getValue(), UTF_8), null, "TTL");
+        writeAuthModel.read(IOUtils.toInputStream(body, UTF_8), null, "TTL");
 
         // Make sure the append and write roles have read and write permissions
         asList(appendRole1, appendrole2, writeRole1, writerole2).stream().map(URI::toString)
                 .forEach(uri -> {
-                    assertTrue(uri + "\n" + requestBodyCaptor.getValue(), writeAuthModel.contains(
+                    assertTrue(uri + "\n" + body, writeAuthModel.contains(
                             null,
                             writeAuthModel.createProperty(URI_ACL_AGENT),
                             writeAuthModel.createProperty(uri)));
@@ -291,6 +415,14 @@ public class AclManagerTest {
                 writeAuthModel.createResource(resource.toString())));
     }
 
+    private Authorization authorization(Permission permission, URI... roles) {
+        final Authorization authz = new Authorization();
+        authz.accessTo.add(resource);
+        authz.modes.addAll(permission.modes);
+        authz.agents.addAll(asList(roles));
+        return authz;
+    }
+
     private URI randomUri() {
         return URI.create("http://example.org/random/" + UUID.randomUUID().toString() + "/");
     }
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.acl;
+
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.dataconservancy.pass.client.fedora.RepositoryCrawler;
+import org.fcrepo.client.FcrepoClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * Performs permission changes without blocking, against a stand-in for Fedora.
+ *
+ * @author apb@jhu.edu
+ */
+public class AsyncAclDriverTest {
+
+    static final URI ROLE = URI.create("http://example.org/roles#submitter");
+
+    static final URI ADMIN = URI.create("http://example.org/roles#admin");
+
+    FedoraStandIn fedora;
+
+    ACLManager toTest;
+
+    @Before
+    public void setUp() throws Exception {
+        fedora = new FedoraStandIn();
+
+        toTest = new ACLManager(Mockito.mock(FcrepoClient.class), Mockito.mock(RepositoryCrawler.class));
+        toTest.driver = new AclDriver(URI.create(fedora.base + "acls"), toTest.driver.repo, 100);
+        toTest.http = new OkHttpClient();
+
+        // An existing submission, with an ACL that has only a Read authorization
+        fedora.respond("GET /rest/submissions/1", 200,
+                "<{base}submissions/1> <http://purl.org/dc/terms/title> \"A title\" .\n" +
+                        "<{base}submissions/1> <http://www.w3.org/ns/auth/acl#accessControl> <{base}acls/1> .\n");
+        fedora.respond("GET /rest/acls/1", 200,
+                "<{base}acls/1> <http://www.w3.org/ns/ldp#contains> <{base}acls/1/Read> .\n" +
+                        "<{base}acls/1/Read> <http://www.w3.org/ns/auth/acl#accessTo> <{base}submissions/1> .\n" +
+                        "<{base}acls/1/Read> <http://www.w3.org/ns/auth/acl#mode> " +
+                        "<http://www.w3.org/ns/auth/acl#Read> .\n" +
+                        "<{base}acls/1/Read> <http://www.w3.org/ns/auth/acl#agent> <" + ROLE + "> .\n");
+        fedora.respond("PUT /rest/acls/1/Write", 201, "");
+
+        // A new submission, without an ACL
+        fedora.respond("GET /rest/submissions/2", 200,
+                "<{base}submissions/2> <http://purl.org/dc/terms/title> \"Another title\" .\n");
+        fedora.respond("POST /rest/acls", 201, "", "{base}acls/2");
+        fedora.respond("PATCH /rest/submissions/2", 204, "");
+    }
+
+    @After
+    public void tearDown() {
+        fedora.close();
+    }
+
+    @Test
+    public void setPermissionsTest() throws Exception {
+        final ACLManager.Builder builder = toTest.setPermissions(URI.create(fedora.base + "submissions/1"))
+                .grantRead(asList(ROLE))
+                .grantWrite(asList(ADMIN));
+
+        assertEquals(URI.create(fedora.base + "acls/1"), builder.performAsync().get(10, TimeUnit.SECONDS));
+        assertEquals(ACLManager.Outcome.REPLACED, builder.getOutcome());
+        assertEquals(asList(
+                "GET /rest/submissions/1",
+                "GET /rest/acls/1",
+                "PUT /rest/acls/1/Write"), fedora.requests);
+        assertTrue(fedora.requestHeaders.get("GET /rest/acls/1").getFirst("Prefer").contains(
+                "include=\"http://www.w3.org/ns/ldp#PreferContainment " +
+                        "http://fedora.info/definitions/v4/repository#EmbedResources\""));
+        assertTrue(fedora.requestBodies.get("PUT /rest/acls/1/Write").contains("<" + ADMIN + ">"));
+
+        // The ACL location is now known
+        fedora.requests.clear();
+        assertEquals(URI.create(fedora.base + "acls/1"), toTest.getAclResource(URI.create(fedora.base +
+                "submissions/1")));
+        assertTrue(fedora.requests.isEmpty());
+    }
+
+    @Test
+    public void addPermissionsToNewAclTest() throws Exception {
+        // Someone else created the authorization after the ACL was created
+        fedora.respond("PUT /rest/acls/2/Read", 412, "");
+        fedora.respond("PATCH /rest/acls/2/Read", 204, "");
+
+        final ACLManager.Builder builder = toTest.addPermissions(URI.create(fedora.base + "submissions/2"))
+                .grantRead(asList(ROLE));
+
+        assertEquals(URI.create(fedora.base + "acls/2"), builder.performAsync().get(10, TimeUnit.SECONDS));
+        assertEquals(ACLManager.Outcome.PATCHED, builder.getOutcome());
+        assertEquals(asList(
+                "GET /rest/submissions/2",
+                "POST /rest/acls",
+                "PUT /rest/acls/2/Read",
+                "PATCH /rest/acls/2/Read",
+                "PATCH /rest/submissions/2"), fedora.requests);
+        assertEquals("*", fedora.requestHeaders.get("PUT /rest/acls/2/Read").getFirst("If-None-Match"));
+        assertTrue(fedora.requestBodies.get("PATCH /rest/submissions/2").contains("<" + fedora.base +
+                "acls/2>"));
+    }
+
+    @Test
+    public void manyResourcesTest() throws Exception {
+        final List<CompletableFuture<URI>> updates = IntStream.range(0, 20).mapToObj(i -> {
+            final URI resource = URI.create(fedora.base + "submissions/many/" + i);
+            toTest.driver.remember(resource, URI.create(fedora.base + "acls/many/" + i));
+            fedora.respond("PUT /rest/acls/many/" + i + "/Read", 201, "");
+            return toTest.addPermissions(resource).grantRead(asList(ROLE)).performAsync();
+        }).collect(toList());
+
+        for (int i = 0; i < updates.size(); i++) {
+            assertEquals(URI.create(fedora.base + "acls/many/" + i), updates.get(i).get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(20, fedora.requests.size());
+    }
+
+    @Test
+    public void failureTest() throws Exception {
+        fedora.respond("PUT /rest/acls/1/Write", 500, "Oops");
+
+        final CompletableFuture<URI> update = toTest.setPermissions(URI.create(fedora.base + "submissions/1"))
+                .grantRead(asList(ROLE))
+                .grantWrite(asList(ADMIN)).performAsync();
+
+        try {
+            update.get(10, TimeUnit.SECONDS);
+            fail("Should have failed to write the authorization");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause().getMessage().contains("500: Oops"));
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.acl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.management.ObjectName;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.dataconservancy.pass.authz.LatencyHistogram;
+import org.dataconservancy.pass.authz.acl.FedoraClientFactory.PooledFcrepoClient;
+import org.fcrepo.client.FcrepoResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * @author apb@jhu.edu
+ */
+public class FedoraClientFactoryTest {
+
+    HttpServer fedora;
+
+    URI base;
+
+    final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+
+    final List<String> authorizations = new CopyOnWriteArrayList<>();
+
+    final List<String> userAgents = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        fedora = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        fedora.createContext("/rest/", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            authorizations.add(String.valueOf(exchange.getRequestHeaders().getFirst("Authorization")));
+            userAgents.add(String.valueOf(exchange.getRequestHeaders().getFirst("User-Agent")));
+
+            final byte[] body = "<> a <http://example.org/Thing> .\n".getBytes(UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        fedora.start();
+
+        base = URI.create("http://localhost:" + fedora.getAddress().getPort() + "/rest/");
+    }
+
+    @After
+    public void tearDown() {
+        fedora.stop(0);
+    }
+
+    @Test
+    public void pooledConnectionsTest() throws Exception {
+        final PoolingHttpClientConnectionManager pool = new PoolingHttpClientConnectionManager();
+        final PooledFcrepoClient client = new PooledFcrepoClient(base, "fedoraAdmin", "secret", pool);
+        final long before = LatencyHistogram.named("fedora-GET").getCount();
+
+        for (int i = 0; i < 5; i++) {
+            try (FcrepoResponse response = client.get(URI.create(base + "resource/" + i)).perform();
+                    InputStream body = response.getBody()) {
+                assertEquals(200, response.getStatusCode());
+                IOUtils.toString(body, UTF_8);
+            }
+        }
+
+        // Every request used the same connection, and sent credentials without being challenged
+        assertEquals(1, clientPorts.size());
+        assertEquals(5, authorizations.size());
+        authorizations.forEach(authz -> assertEquals("Basic " + Base64.getEncoder().encodeToString(
+                "fedoraAdmin:secret".getBytes(UTF_8)), authz));
+
+        final FedoraClientFactory.Pool stats = new FedoraClientFactory.Pool(pool);
+        assertEquals(0, stats.getLeased());
+        assertEquals(1, stats.getAvailable());
+        assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(
+                "org.dataconservancy.pass.authz:type=FedoraClientPool")));
+        assertEquals(before + 5, LatencyHistogram.named("fedora-GET").getCount());
+    }
+
+    @Test
+    public void noCredentialsForOtherHostsTest() throws Exception {
+        final PooledFcrepoClient client = new PooledFcrepoClient(URI.create("http://fedora.example.org/rest/"),
+                "fedoraAdmin", "secret", new PoolingHttpClientConnectionManager());
+
+        try (FcrepoResponse response = client.get(URI.create(base + "resource")).perform()) {
+            assertEquals(200, response.getStatusCode());
+        }
+
+        assertEquals("null", authorizations.get(0));
+    }
+
+    @Test
+    public void userAgentTest() throws Exception {
+        final PooledFcrepoClient client = new PooledFcrepoClient(base, "fedoraAdmin", "secret",
+                new PoolingHttpClientConnectionManager());
+
+        try (FcrepoResponse response = client.get(URI.create(base + "resource")).perform()) {
+            assertEquals(200, response.getStatusCode());
+        }
+
+        try (Response response = FedoraClientFactory.newHttpClient(base, "fedoraAdmin", "secret").newCall(
+                new Request.Builder().url(base + "resource").build()).execute()) {
+            assertEquals(200, response.code());
+        }
+
+        assertEquals(asList(FedoraClientFactory.USER_AGENT, FedoraClientFactory.USER_AGENT), userAgents);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.acl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Stands in for Fedora in tests, giving canned responses to requests and remembering what was asked of it.
+ * <p>
+ * Anything not given a response is 404. In response bodies, {@code {base}} is replaced by the base URI.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+class FedoraStandIn implements AutoCloseable {
+
+    final HttpServer server;
+
+    /** Base URI of the repository, with trailing slash */
+    final String base;
+
+    /** "METHOD path" of each request received */
+    final List<String> requests = new CopyOnWriteArrayList<>();
+
+    /** Headers of the most recent request of each "METHOD path" */
+    final Map<String, Headers> requestHeaders = new ConcurrentHashMap<>();
+
+    /** Bodies of the most recent request of each "METHOD path" */
+    final Map<String, String> requestBodies = new ConcurrentHashMap<>();
+
+    private final Map<String, Response> responses = new ConcurrentHashMap<>();
+
+    private final ExecutorService handlers = Executors.newCachedThreadPool();
+
+    FedoraStandIn() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/rest/", this::handle);
+        server.setExecutor(handlers);
+        server.start();
+        base = "http://localhost:" + server.getAddress().getPort() + "/rest/";
+    }
+
+    /**
+     * Respond to a request.
+     *
+     * @param request "METHOD path", e.g. {@code GET /rest/submissions/1}.
+     * @param status Status code.
+     * @param body Response body.
+     */
+    void respond(String request, int status, String body) {
+        respond(request, status, body, null);
+    }
+
+    /**
+     * Respond to a request.
+     *
+     * @param request "METHOD path", e.g. {@code POST /rest/acls}.
+     * @param status Status code.
+     * @param body Response body.
+     * @param location Location header, or null.
+     */
+    void respond(String request, int status, String body, String location) {
+        responses.put(request, new Response(status, body, location));
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        final String request = exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath();
+        requestHeaders.put(request, exchange.getRequestHeaders());
+
+        try (InputStream in = exchange.getRequestBody()) {
+            final ByteArrayOutputStream received = new ByteArrayOutputStream();
+            final byte[] buf = new byte[4096];
+            for (int read = in.read(buf); read != -1; read = in.read(buf)) {
+                received.write(buf, 0, read);
+            }
+            requestBodies.put(request, new String(received.toByteArray(), UTF_8));
+        }
+        requests.add(request);
+
+        final Response response = responses.getOrDefault(request, new Response(404, "Not found", null));
+
+        final byte[] body = response.body.replace("{base}", base).getBytes(UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/n-triples");
+        // A request following another on a kept-alive connection was now and then read without its first byte (e.g.
+        // "OST"), and so answered 404; giving each request its own connection avoids that
+        exchange.getResponseHeaders().add("Connection", "close");
+        if (response.location != null) {
+            exchange.getResponseHeaders().add("Location", response.location.replace("{base}", base));
+        }
+        exchange.sendResponseHeaders(response.status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            if (body.length > 0) {
+                out.write(body);
+            }
+        }
+    }
+
+    static class Response {
+
+        final int status;
+
+        final String body;
+
+        final String location;
+
+        Response(int status, String body, String location) {
+            this.status = status;
+            this.body = body;
+            this.location = location;
+        }
+    }
+}
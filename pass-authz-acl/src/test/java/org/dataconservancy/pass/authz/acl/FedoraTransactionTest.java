@@ -0,0 +1,145 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.acl;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.URI;
+import java.util.List;
+
+import org.dataconservancy.pass.client.fedora.RepositoryCrawler;
+import org.fcrepo.client.FcrepoClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Runs permission changes in a transaction, against a stand-in for Fedora that only answers requests made within a
+ * transaction.
+ *
+ * @author apb@jhu.edu
+ */
+public class FedoraTransactionTest {
+
+    static final String TX = "tx:8a7d6ca4";
+
+    static final URI ROLE = URI.create("http://example.org/roles#submitter");
+
+    static final URI ADMIN = URI.create("http://example.org/roles#admin");
+
+    FedoraStandIn fedora;
+
+    String base;
+
+    List<String> requests;
+
+    ACLManager toTest;
+
+    @Before
+    public void setUp() throws Exception {
+        fedora = new FedoraStandIn();
+        base = fedora.base;
+        requests = fedora.requests;
+
+        final FcrepoClient client = FcrepoClient.client().build();
+        toTest = new ACLManager(client, Mockito.mock(RepositoryCrawler.class));
+        toTest.driver = new AclDriver(URI.create(base + "acls"), client, 10);
+        toTest.repositoryBase = URI.create(base);
+
+        fedora.respond("POST /rest/fcr:tx", 201, "", "{base}" + TX);
+
+        // An existing submission, with an ACL that has only a Read authorization
+        respond("GET submissions/1", 200, "<{tx}submissions/1> <http://purl.org/dc/terms/title> \"A title\" .\n" +
+                "<{tx}submissions/1> <http://www.w3.org/ns/auth/acl#accessControl> <{tx}acls/1> .\n");
+        respond("GET acls/1", 200, "<{tx}acls/1> <http://www.w3.org/ns/ldp#contains> <{tx}acls/1/Read> .\n" +
+                "<{tx}acls/1/Read> <http://www.w3.org/ns/auth/acl#accessTo> <{tx}submissions/1> .\n" +
+                "<{tx}acls/1/Read> <http://www.w3.org/ns/auth/acl#mode> <http://www.w3.org/ns/auth/acl#Read> .\n" +
+                "<{tx}acls/1/Read> <http://www.w3.org/ns/auth/acl#agent> <" + ROLE + "> .\n");
+        respond("PUT acls/1/Write", 201, "");
+        respond("POST fcr:tx/fcr:commit", 204, "");
+        respond("POST fcr:tx/fcr:rollback", 204, "");
+    }
+
+    @After
+    public void tearDown() {
+        fedora.close();
+    }
+
+    @Test
+    public void commitTest() throws Exception {
+        final ACLManager.Builder builder = toTest.setPermissions(URI.create(base + "submissions/1"))
+                .grantRead(asList(ROLE))
+                .grantWrite(asList(ADMIN));
+
+        final List<URI> acls = toTest.performInTransaction(builder);
+
+        assertEquals(asList(URI.create(base + "acls/1")), acls);
+        assertEquals(ACLManager.Outcome.REPLACED, builder.getOutcome());
+        assertEquals(asList(
+                "POST /rest/fcr:tx",
+                "GET /rest/" + TX + "/submissions/1",
+                "GET /rest/" + TX + "/acls/1",
+                "PUT /rest/" + TX + "/acls/1/Write",
+                "POST /rest/" + TX + "/fcr:tx/fcr:commit"), requests);
+    }
+
+    @Test
+    public void rollbackTest() throws Exception {
+        respond("PUT acls/1/Write", 500, "Oops");
+
+        try {
+            toTest.performInTransaction(toTest.setPermissions(URI.create(base + "submissions/1"))
+                    .grantRead(asList(ROLE)).grantWrite(asList(ADMIN)));
+            fail("Should have failed to write the authorization");
+        } catch (final RuntimeException e) {
+            // expected
+        }
+
+        assertEquals("POST /rest/" + TX + "/fcr:tx/fcr:rollback", requests.get(requests.size() - 1));
+        assertFalse(requests.contains("POST /rest/" + TX + "/fcr:tx/fcr:commit"));
+    }
+
+    @Test
+    public void transactionalPerformTest() throws Exception {
+        toTest.transactional = true;
+
+        final URI acl = toTest.setPermissions(URI.create(base + "submissions/1"))
+                .grantRead(asList(ROLE))
+                .grantWrite(asList(ADMIN)).perform();
+
+        assertEquals(URI.create(base + "acls/1"), acl);
+        assertTrue(requests.contains("POST /rest/" + TX + "/fcr:tx/fcr:commit"));
+
+        // What was committed is now known, without looking it up
+        requests.clear();
+        toTest.transactional = false;
+        fedora.respond("GET /rest/submissions/1", 500, "");
+        assertEquals(acl, toTest.getAclResource(URI.create(base + "submissions/1")));
+        assertTrue(requests.isEmpty());
+    }
+
+    /* Respond to a request within the transaction. Bodies may contain {tx} */
+    private void respond(String request, int status, String body) {
+        final String[] parts = request.split(" ");
+        fedora.respond(parts[0] + " /rest/" + TX + "/" + parts[1], status, body.replace("{tx}", "{base}" + TX + "/"));
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.acl;
+
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.dataconservancy.pass.client.fedora.RepositoryCrawler;
+import org.fcrepo.client.FcrepoClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * Sets permissions without reading ACLs whose authorizations are remembered, against a stand-in for Fedora.
+ *
+ * @author apb@jhu.edu
+ */
+public class KnownAuthorizationsTest {
+
+    static final URI ROLE = URI.create("http://example.org/roles#submitter");
+
+    static final URI ADMIN = URI.create("http://example.org/roles#admin");
+
+    static final URI OTHER = URI.create("http://example.org/roles#other");
+
+    FedoraStandIn fedora;
+
+    ACLManager toTest;
+
+    URI submission;
+
+    @Before
+    public void setUp() throws Exception {
+        fedora = new FedoraStandIn();
+
+        final FcrepoClient client = FcrepoClient.client().build();
+        toTest = new ACLManager(client, Mockito.mock(RepositoryCrawler.class));
+        toTest.driver = new AclDriver(URI.create(fedora.base + "acls"), client, 10);
+        toTest.http = new OkHttpClient();
+        toTest.rememberAuthorizations = true;
+
+        submission = URI.create(fedora.base + "submissions/1");
+
+        // An existing submission, with an ACL that has only a Read authorization
+        fedora.respond("GET /rest/submissions/1", 200,
+                "<{base}submissions/1> <http://www.w3.org/ns/auth/acl#accessControl> <{base}acls/1> .\n");
+        respondWithAcl(ROLE);
+        fedora.respond("PUT /rest/acls/1/Write", 201, "");
+        fedora.respond("PATCH /rest/acls/1/Read", 204, "");
+    }
+
+    @After
+    public void tearDown() {
+        fedora.close();
+    }
+
+    @Test
+    public void unchangedWithoutReadingTest() throws Exception {
+        toTest.setPermissions(submission).grantRead(asList(ROLE)).grantWrite(asList(ADMIN)).perform();
+        assertEquals(asList("GET /rest/submissions/1", "GET /rest/acls/1", "PUT /rest/acls/1/Write"),
+                fedora.requests);
+
+        fedora.requests.clear();
+        final ACLManager.Builder again = toTest.setPermissions(submission).grantRead(asList(ROLE))
+                .grantWrite(asList(ADMIN));
+        again.perform();
+
+        assertEquals(ACLManager.Outcome.UNCHANGED, again.getOutcome());
+        assertTrue(fedora.requests.isEmpty());
+    }
+
+    @Test
+    public void unchangedWithoutReadingAsyncTest() throws Exception {
+        toTest.setPermissions(submission).grantRead(asList(ROLE)).grantWrite(asList(ADMIN)).performAsync()
+                .get(10, TimeUnit.SECONDS);
+
+        fedora.requests.clear();
+        final ACLManager.Builder again = toTest.setPermissions(submission).grantRead(asList(ROLE))
+                .grantWrite(asList(ADMIN));
+        again.performAsync().get(10, TimeUnit.SECONDS);
+
+        assertEquals(ACLManager.Outcome.UNCHANGED, again.getOutcome());
+        assertTrue(fedora.requests.isEmpty());
+    }
+
+    @Test
+    public void addPermissionsForgetsTest() throws Exception {
+        toTest.setPermissions(submission).grantRead(asList(ROLE)).grantWrite(asList(ADMIN)).perform();
+
+        fedora.respond("PUT /rest/acls/1/Read", 412, "");
+        toTest.addPermissions(submission).grantRead(asList(OTHER)).perform();
+
+        // What the ACL grants now must be read again
+        fedora.requests.clear();
+        toTest.setPermissions(submission).grantRead(asList(ROLE)).grantWrite(asList(ADMIN)).perform();
+        assertTrue(fedora.requests.contains("GET /rest/acls/1"));
+    }
+
+    @Test
+    public void verifyTest() throws Exception {
+        toTest.setPermissions(submission).grantRead(asList(ROLE)).grantWrite(asList(ADMIN)).perform();
+
+        // As written, with the Write authorization now there too
+        fedora.respond("GET /rest/acls/1", 200, aclWith(ROLE) +
+                "<{base}acls/1> <http://www.w3.org/ns/ldp#contains> <{base}acls/1/Write> .\n" +
+                "<{base}acls/1/Write> <http://www.w3.org/ns/auth/acl#accessTo> <{base}submissions/1> .\n" +
+                "<{base}acls/1/Write> <http://www.w3.org/ns/auth/acl#mode> <http://www.w3.org/ns/auth/acl#Read> .\n" +
+                "<{base}acls/1/Write> <http://www.w3.org/ns/auth/acl#mode> " +
+                "<http://www.w3.org/ns/auth/acl#Write> .\n" +
+                "<{base}acls/1/Write> <http://www.w3.org/ns/auth/acl#agent> <" + ADMIN + "> .\n");
+        assertEquals(0, toTest.verifyAuthorizations());
+
+        // Something else changes who can read
+        fedora.respond("GET /rest/acls/1", 200, aclWith(OTHER));
+        assertEquals(1, toTest.verifyAuthorizations());
+
+        // Setting permissions again corrects it, without reading the ACL
+        fedora.requests.clear();
+        final ACLManager.Builder again = toTest.setPermissions(submission).grantRead(asList(ROLE))
+                .grantWrite(asList(ADMIN));
+        again.perform();
+
+        assertEquals(ACLManager.Outcome.REPLACED, again.getOutcome());
+        assertEquals(asList("PATCH /rest/acls/1/Read", "PUT /rest/acls/1/Write"), fedora.requests.stream()
+                .sorted().collect(toList()));
+        assertTrue(fedora.requestBodies.get("PATCH /rest/acls/1/Read").contains("<" + OTHER + ">"));
+    }
+
+    @Test
+    public void otherWritersCorrectedByDefaultTest() throws Exception {
+        toTest.rememberAuthorizations = new ACLManager(FcrepoClient.client().build(), Mockito.mock(
+                RepositoryCrawler.class)).rememberAuthorizations;
+        assertFalse(toTest.rememberAuthorizations);
+
+        toTest.setPermissions(submission).grantRead(asList(ROLE)).grantWrite(asList(ADMIN)).perform();
+
+        // Something else changes who can read
+        fedora.respond("GET /rest/acls/1", 200, aclWith(OTHER));
+
+        // Setting permissions again reads the ACL, and corrects it
+        fedora.requests.clear();
+        final ACLManager.Builder again = toTest.setPermissions(submission).grantRead(asList(ROLE))
+                .grantWrite(asList(ADMIN));
+        again.perform();
+
+        assertEquals(ACLManager.Outcome.REPLACED, again.getOutcome());
+        assertTrue(fedora.requests.contains("GET /rest/acls/1"));
+        assertTrue(fedora.requests.contains("PATCH /rest/acls/1/Read"));
+    }
+
+    private void respondWithAcl(URI reader) {
+        fedora.respond("GET /rest/acls/1", 200, aclWith(reader));
+    }
+
+    private static String aclWith(URI reader) {
+        return "<{base}acls/1> <http://www.w3.org/ns/ldp#contains> <{base}acls/1/Read> .\n" +
+                "<{base}acls/1/Read> <http://www.w3.org/ns/auth/acl#accessTo> <{base}submissions/1> .\n" +
+                "<{base}acls/1/Read> <http://www.w3.org/ns/auth/acl#mode> <http://www.w3.org/ns/auth/acl#Read> .\n" +
+                "<{base}acls/1/Read> <http://www.w3.org/ns/auth/acl#agent> <" + reader + "> .\n";
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.acl;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.dataconservancy.pass.client.fedora.RepositoryCrawler;
+import org.fcrepo.client.FcrepoClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * Sets permissions of a resource whose remembered ACL has since been moved by something else, against a stand-in
+ * for Fedora.
+ *
+ * @author apb@jhu.edu
+ */
+public class MovedAclTest {
+
+    static final URI ROLE = URI.create("http://example.org/roles#submitter");
+
+    FedoraStandIn fedora;
+
+    ACLManager toTest;
+
+    URI submission;
+
+    @Before
+    public void setUp() throws Exception {
+        fedora = new FedoraStandIn();
+
+        final FcrepoClient client = FcrepoClient.client().build();
+        toTest = new ACLManager(client, Mockito.mock(RepositoryCrawler.class));
+        toTest.driver = new AclDriver(URI.create(fedora.base + "acls"), client, 10);
+        toTest.http = new OkHttpClient();
+        toTest.rememberAuthorizations = false;
+
+        submission = URI.create(fedora.base + "submissions/1");
+
+        // Permissions are set once, so the ACL's location is remembered
+        fedora.respond("GET /rest/submissions/1", 200,
+                "<{base}submissions/1> <http://www.w3.org/ns/auth/acl#accessControl> <{base}acls/1> .\n");
+        fedora.respond("GET /rest/acls/1", 200, aclWith("acls/1"));
+        toTest.setPermissions(submission).grantRead(asList(ROLE)).perform();
+
+        // Then something else moves the ACL, leaving a tombstone
+        fedora.respond("GET /rest/acls/1", 410, "Gone");
+        fedora.respond("GET /rest/submissions/1", 200,
+                "<{base}submissions/1> <http://www.w3.org/ns/auth/acl#accessControl> <{base}acls/2> .\n");
+        fedora.respond("GET /rest/acls/2", 200, aclWith("acls/2"));
+        fedora.requests.clear();
+    }
+
+    @After
+    public void tearDown() {
+        fedora.close();
+    }
+
+    @Test
+    public void movedAclTest() {
+        final URI acl = toTest.setPermissions(submission).grantRead(asList(ROLE)).perform();
+
+        assertEquals(URI.create(fedora.base + "acls/2"), acl);
+        assertEquals(asList("GET /rest/acls/1", "GET /rest/submissions/1", "GET /rest/acls/2"), fedora.requests);
+
+        // The new location is remembered
+        fedora.requests.clear();
+        toTest.setPermissions(submission).grantRead(asList(ROLE)).perform();
+        assertEquals(asList("GET /rest/acls/2"), fedora.requests);
+    }
+
+    @Test
+    public void movedAclAsyncTest() throws Exception {
+        final URI acl = toTest.setPermissions(submission).grantRead(asList(ROLE)).performAsync().get(10,
+                TimeUnit.SECONDS);
+
+        assertEquals(URI.create(fedora.base + "acls/2"), acl);
+        assertTrue(fedora.requests.contains("GET /rest/submissions/1"));
+    }
+
+    @Test
+    public void goneTest() {
+        assertTrue(FedoraRequestException.isGone(new RuntimeException(new FedoraRequestException("Gone", 410))));
+        assertTrue(FedoraRequestException.isGone(new FedoraRequestException("Not found", 404)));
+        assertFalse(FedoraRequestException.isGone(new FedoraRequestException("Conflict", 409)));
+        assertFalse(FedoraRequestException.isGone(new RuntimeException("Other")));
+    }
+
+    private static String aclWith(String acl) {
+        return "<{base}" + acl + "> <http://www.w3.org/ns/ldp#contains> <{base}" + acl + "/Read> .\n" +
+                "<{base}" + acl + "/Read> <http://www.w3.org/ns/auth/acl#accessTo> <{base}submissions/1> .\n" +
+                "<{base}" + acl + "/Read> <http://www.w3.org/ns/auth/acl#mode> " +
+                "<http://www.w3.org/ns/auth/acl#Read> .\n" +
+                "<{base}" + acl + "/Read> <http://www.w3.org/ns/auth/acl#agent> <" + ROLE + "> .\n" +
+                "<{base}" + acl + "> <http://www.w3.org/ns/ldp#contains> <{base}" + acl + "/Write> .\n" +
+                "<{base}" + acl + "/Write> <http://www.w3.org/ns/auth/acl#accessTo> <{base}submissions/1> .\n" +
+                "<{base}" + acl + "/Write> <http://www.w3.org/ns/auth/acl#mode> " +
+                "<http://www.w3.org/ns/auth/acl#Read> .\n" +
+                "<{base}" + acl + "/Write> <http://www.w3.org/ns/auth/acl#mode> " +
+                "<http://www.w3.org/ns/auth/acl#Write> .\n";
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.acl;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.fcrepo.client.FcrepoClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * Puts ACLs in pairtree containers, against a stand-in for Fedora.
+ *
+ * @author apb@jhu.edu
+ */
+public class PairtreeAclTest {
+
+    FedoraStandIn fedora;
+
+    AclDriver toTest;
+
+    URI resource;
+
+    /* Path of the resource's ACL container, relative to the base */
+    String container;
+
+    @Before
+    public void setUp() throws Exception {
+        fedora = new FedoraStandIn();
+
+        toTest = new AclDriver(URI.create(fedora.base + "acls"), FcrepoClient.client().build(), 10);
+        toTest.pairtreeLevels = 2;
+
+        resource = URI.create(fedora.base + "submissions/1");
+        container = toTest.aclContainerFor(resource).toString().substring(fedora.base.length());
+
+        fedora.respond("PUT /rest/" + container.substring(0, 7), 201, "");
+        fedora.respond("PUT /rest/" + container, 201, "");
+        fedora.respond("POST /rest/" + container, 201, "", "{base}" + container + "/1");
+        fedora.respond("PATCH /rest/submissions/1", 204, "");
+    }
+
+    @After
+    public void tearDown() {
+        fedora.close();
+    }
+
+    @Test
+    public void layoutTest() {
+        final String hash = AclDriver.sha256(resource.toString());
+
+        assertEquals("acls/" + hash.substring(0, 2) + "/" + hash.substring(2, 4), container);
+        assertTrue(toTest.isPairtreeContainer(URI.create(fedora.base + "acls/" + hash.substring(0, 2))));
+        assertTrue(toTest.isPairtreeContainer(URI.create(fedora.base + container)));
+        assertFalse(toTest.isPairtreeContainer(URI.create(fedora.base + container + "/1")));
+        assertFalse(toTest.isPairtreeContainer(URI.create(fedora.base + "acls/shared")));
+        assertFalse(toTest.isPairtreeContainer(URI.create(fedora.base + "acls")));
+
+        toTest.pairtreeLevels = 0;
+        assertEquals(URI.create(fedora.base + "acls"), toTest.aclContainerFor(resource));
+        assertFalse(toTest.isPairtreeContainer(URI.create(fedora.base + container)));
+    }
+
+    @Test
+    public void createAclTest() throws Exception {
+        assertEquals(URI.create(fedora.base + container + "/1"), toTest.createAcl(resource).uri);
+        assertEquals(asList(
+                "PUT /rest/" + container.substring(0, 7),
+                "PUT /rest/" + container,
+                "POST /rest/" + container), fedora.requests);
+        assertEquals("*", fedora.requestHeaders.get("PUT /rest/" + container).getFirst("If-None-Match"));
+
+        // The containers are known to exist now
+        fedora.requests.clear();
+        toTest.createAcl(resource);
+        assertEquals(asList("POST /rest/" + container), fedora.requests);
+    }
+
+    @Test
+    public void existingContainerTest() throws Exception {
+        fedora.respond("PUT /rest/" + container.substring(0, 7), 412, "");
+
+        assertEquals(URI.create(fedora.base + container + "/1"), toTest.createAcl(resource).uri);
+    }
+
+    @Test
+    public void createAclAsyncTest() throws Exception {
+        final AsyncAclDriver async = new AsyncAclDriver(toTest, new OkHttpClient());
+
+        assertEquals(URI.create(fedora.base + container + "/1"), async.createAcl(resource).get(10,
+                TimeUnit.SECONDS).uri);
+        assertEquals(asList(
+                "PUT /rest/" + container.substring(0, 7),
+                "PUT /rest/" + container,
+                "POST /rest/" + container), fedora.requests);
+    }
+
+    @Test
+    public void rehomeAclTest() throws Exception {
+        fedora.respond("GET /rest/acls/flat", 200,
+                "<{base}acls/flat/Read> <http://www.w3.org/ns/auth/acl#accessTo> <{base}submissions/1> .\n");
+        fedora.respond("MOVE /rest/acls/flat", 201, "");
+        fedora.respond("DELETE /rest/acls/flat/fcr:tombstone", 204, "");
+
+        final URI moved = toTest.rehomeAcl(URI.create(fedora.base + "acls/flat"));
+
+        assertEquals(URI.create(fedora.base + container + "/flat"), moved);
+        assertEquals(fedora.base + container + "/flat", fedora.requestHeaders.get("MOVE /rest/acls/flat")
+                .getFirst("Destination"));
+        assertTrue(fedora.requestBodies.get("PATCH /rest/submissions/1").contains(
+                "INSERT {<> <http://www.w3.org/ns/auth/acl#accessControl> <" + moved + ">}"));
+        assertTrue(fedora.requests.contains("DELETE /rest/acls/flat/fcr:tombstone"));
+        assertEquals(moved, toTest.knownAcl(resource));
+
+        // Once moved, it is where it belongs
+        fedora.respond("GET /rest/" + container + "/flat", 200,
+                "<{base}" + container + "/flat/Read> <http://www.w3.org/ns/auth/acl#accessTo> " +
+                        "<{base}submissions/1> .\n");
+        fedora.requests.clear();
+        assertEquals(moved, toTest.rehomeAcl(moved));
+        assertEquals(asList("GET /rest/" + container + "/flat"), fedora.requests);
+    }
+}
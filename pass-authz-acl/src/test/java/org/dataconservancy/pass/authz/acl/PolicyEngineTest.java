@@ -17,14 +17,18 @@
 package org.dataconservancy.pass.authz.acl;
 
 import static java.util.Arrays.asList;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.net.URI;
+import java.util.concurrent.CompletableFuture;
 
 import org.dataconservancy.pass.client.PassClient;
 import org.dataconservancy.pass.model.Submission;
@@ -286,4 +290,35 @@ public class PolicyEngineTest {
 
         verify(builder, times(1)).perform();
     }
+
+    // Written asynchronously, but only done once the ACL is
+    @Test
+    public void asyncTest() {
+        final URI RESOURCE_URI = URI.create("http://example.org/resource");
+        when(builder.performAsync()).thenReturn(CompletableFuture.completedFuture(RESOURCE_URI));
+
+        toTest.setAsync(true);
+        toTest.updateSubmissionEvent(RESOURCE_URI);
+
+        verify(builder, times(1)).performAsync();
+        verify(builder, never()).perform();
+    }
+
+    // Fails with the same exception as perform() would
+    @Test
+    public void asyncFailureTest() {
+        final URI RESOURCE_URI = URI.create("http://example.org/resource");
+        final FedoraRequestException failure = new FedoraRequestException("Error", 500);
+        final CompletableFuture<URI> failed = new CompletableFuture<>();
+        failed.completeExceptionally(failure);
+        when(builder.performAsync()).thenReturn(failed);
+
+        toTest.setAsync(true);
+        try {
+            toTest.updateSubmissionEvent(RESOURCE_URI);
+            fail("Expected the update to fail");
+        } catch (final FedoraRequestException e) {
+            assertSame(failure, e);
+        }
+    }
 }
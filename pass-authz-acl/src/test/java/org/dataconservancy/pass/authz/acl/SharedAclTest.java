@@ -0,0 +1,162 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.acl;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+
+import org.dataconservancy.pass.client.fedora.RepositoryCrawler;
+import org.fcrepo.client.FcrepoClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Shares ACLs between resources with the same permissions, against a stand-in for Fedora.
+ *
+ * @author apb@jhu.edu
+ */
+public class SharedAclTest {
+
+    static final URI ROLE = URI.create("http://example.org/roles#submitter");
+
+    static final URI ADMIN = URI.create("http://example.org/roles#admin");
+
+    FedoraStandIn fedora;
+
+    ACLManager toTest;
+
+    /* Path of the shared ACL, relative to the base */
+    String shared;
+
+    @Before
+    public void setUp() throws Exception {
+        fedora = new FedoraStandIn();
+
+        final FcrepoClient client = FcrepoClient.client().build();
+        toTest = new ACLManager(client, Mockito.mock(RepositoryCrawler.class));
+        toTest.driver = new AclDriver(URI.create(fedora.base + "acls"), client, 10);
+        toTest.sharing = true;
+
+        shared = "acls/shared/" + toTest.setPermissions(URI.create(fedora.base + "events/1"))
+                .grantRead(asList(ROLE)).hash();
+
+        fedora.respond("PUT /rest/" + shared, 201, "");
+        fedora.respond("PUT /rest/" + shared + "/Read", 201, "");
+
+        for (final String event : asList("events/1", "events/2")) {
+            fedora.respond("GET /rest/" + event, 200, "<{base}" + event + "> <http://purl.org/dc/terms/title> " +
+                    "\"An event\" .\n");
+            fedora.respond("PATCH /rest/" + event, 204, "");
+        }
+    }
+
+    @After
+    public void tearDown() {
+        fedora.close();
+    }
+
+    @Test
+    public void hashTest() {
+        final URI resource = URI.create(fedora.base + "events/1");
+
+        assertEquals(toTest.setPermissions(resource).grantRead(asList(ROLE, ADMIN)).hash(),
+                toTest.setPermissions(URI.create(fedora.base + "other")).grantRead(asList(ADMIN, ROLE)).hash());
+        assertNotEquals(toTest.setPermissions(resource).grantRead(asList(ROLE, ADMIN)).hash(),
+                toTest.setPermissions(resource).grantRead(asList(ROLE)).grantWrite(asList(ADMIN)).hash());
+    }
+
+    @Test
+    public void sharedAclTest() throws Exception {
+        final ACLManager.Builder first = toTest.setPermissions(URI.create(fedora.base + "events/1"))
+                .grantRead(asList(ROLE));
+
+        assertEquals(URI.create(fedora.base + shared), first.perform());
+        assertEquals(ACLManager.Outcome.REPLACED, first.getOutcome());
+        assertEquals("*", fedora.requestHeaders.get("PUT /rest/" + shared + "/Read").getFirst("If-None-Match"));
+
+        final String authz = fedora.requestBodies.get("PUT /rest/" + shared + "/Read");
+        assertTrue(authz.contains("acl:accessToClass <http://fedora.info/definitions/v4/repository#Resource>"));
+        assertTrue(authz.contains("<" + ROLE + ">"));
+        assertFalse(authz.contains("acl:accessTo "));
+
+        // The second resource is linked to the same ACL, which is not written again
+        fedora.requests.clear();
+        final ACLManager.Builder second = toTest.setPermissions(URI.create(fedora.base + "events/2"))
+                .grantRead(asList(ROLE));
+
+        assertEquals(first.perform(), second.perform());
+        assertEquals(ACLManager.Outcome.REPLACED, second.getOutcome());
+        assertEquals(asList("GET /rest/events/2", "PATCH /rest/events/2"), fedora.requests);
+
+        // Setting the same permissions again changes nothing
+        fedora.requests.clear();
+        second.perform();
+        assertEquals(ACLManager.Outcome.UNCHANGED, second.getOutcome());
+        assertTrue(fedora.requests.isEmpty());
+    }
+
+    @Test
+    public void replacePrivateAclTest() throws Exception {
+        fedora.respond("GET /rest/events/1", 200,
+                "<{base}events/1> <http://www.w3.org/ns/auth/acl#accessControl> <{base}acls/1> .\n");
+        fedora.respond("DELETE /rest/acls/1", 204, "");
+        fedora.respond("DELETE /rest/acls/1/fcr:tombstone", 204, "");
+
+        toTest.setPermissions(URI.create(fedora.base + "events/1")).grantRead(asList(ROLE)).perform();
+
+        final String patch = fedora.requestBodies.get("PATCH /rest/events/1");
+        assertTrue(patch.contains("DELETE {<> <http://www.w3.org/ns/auth/acl#accessControl> <" + fedora.base +
+                "acls/1>}"));
+        assertTrue(patch.contains(shared + ">}"));
+        assertTrue(fedora.requests.contains("DELETE /rest/acls/1"));
+        assertTrue(fedora.requests.contains("DELETE /rest/acls/1/fcr:tombstone"));
+    }
+
+    @Test
+    public void copyOnWriteTest() throws Exception {
+        toTest.sharing = false;
+        fedora.respond("GET /rest/events/1", 200,
+                "<{base}events/1> <http://www.w3.org/ns/auth/acl#accessControl> <{base}" + shared + "> .\n");
+        fedora.respond("GET /rest/" + shared, 200,
+                "<{base}" + shared + "> <http://www.w3.org/ns/ldp#contains> <{base}" + shared + "/Read> .\n" +
+                        "<{base}" + shared + "/Read> <http://www.w3.org/ns/auth/acl#mode> " +
+                        "<http://www.w3.org/ns/auth/acl#Read> .\n" +
+                        "<{base}" + shared + "/Read> <http://www.w3.org/ns/auth/acl#agent> <" + ROLE + "> .\n");
+        fedora.respond("POST /rest/acls", 201, "", "{base}acls/3");
+        fedora.respond("PUT /rest/acls/3/Read", 201, "");
+
+        final ACLManager.Builder builder = toTest.addPermissions(URI.create(fedora.base + "events/1"))
+                .grantRead(asList(ADMIN));
+
+        assertEquals(URI.create(fedora.base + "acls/3"), builder.perform());
+
+        // The resource's own ACL grants what the shared one did, and more; the shared ACL is left alone
+        final String authz = fedora.requestBodies.get("PUT /rest/acls/3/Read");
+        assertTrue(authz.contains("<" + ROLE + ">"));
+        assertTrue(authz.contains("<" + ADMIN + ">"));
+        assertTrue(fedora.requestBodies.get("PATCH /rest/events/1").contains("INSERT {<> " +
+                "<http://www.w3.org/ns/auth/acl#accessControl> <" + fedora.base + "acls/3>}"));
+        assertFalse(fedora.requests.stream().anyMatch(r -> !r.startsWith("GET") && r.contains("/shared/")));
+    }
+}
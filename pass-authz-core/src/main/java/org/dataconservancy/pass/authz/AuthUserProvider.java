@@ -17,6 +17,7 @@
 
 package org.dataconservancy.pass.authz;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 import javax.servlet.http.HttpServletRequest;
 
@@ -57,4 +58,40 @@ public interface AuthUserProvider {
      */
     public AuthUser getUser(HttpServletRequest request, Function<AuthUser, AuthUser> filterWhenDone,
             boolean allowCached);
+
+    /**
+     * Get the authenticated user without blocking the calling thread on a lookup.
+     * <p>
+     * The request is inspected on the calling thread, so the request need not remain usable once this method
+     * returns. The function and any backend lookups may run on a different thread, and the returned future completes
+     * when the AuthUser is available. The default implementation simply performs a blocking
+     * {@link #getUser(HttpServletRequest, Function, boolean)}.
+     * </p>
+     *
+     * @param request HTTP request
+     * @param filterWhenDone Function to be applied to the authUser.
+     * @param allowCached If true, then the implementation may return a cached result, as in
+     *        {@link #getUser(HttpServletRequest, Function, boolean)}
+     * @return Future containing the AuthUser.
+     */
+    public default CompletableFuture<AuthUser> getUserAsync(HttpServletRequest request,
+            Function<AuthUser, AuthUser> filterWhenDone, boolean allowCached) {
+        final CompletableFuture<AuthUser> result = new CompletableFuture<>();
+        try {
+            result.complete(getUser(request, filterWhenDone, allowCached));
+        } catch (final Exception e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Get the authenticated principal from the current http request, without looking up any other information.
+     *
+     * @param request the current http request.
+     * @return the principal, or null if there is none, or if the implementation cannot determine it cheaply.
+     */
+    public default String getPrincipal(HttpServletRequest request) {
+        return null;
+    }
 }
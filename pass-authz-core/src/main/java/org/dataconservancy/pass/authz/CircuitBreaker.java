@@ -0,0 +1,310 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz;
+
+import static java.util.Optional.ofNullable;
+import static org.dataconservancy.pass.authz.ConfigUtil.getValue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.client.ResponseException;
+import org.fcrepo.client.FcrepoOperationFailedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Guards calls to a backend dependency with a timeout, and stops calling it for a while once it keeps failing.
+ * <p>
+ * The breaker starts {@link State#CLOSED}, where calls go through. After a configured number of consecutive failures
+ * it becomes {@link State#OPEN}, and calls fail immediately with an {@link OpenException} rather than waiting on a
+ * backend that is known to be unhealthy. Once the open duration has elapsed, it becomes {@link State#HALF_OPEN} and
+ * lets a single trial call through; success closes the breaker, failure opens it again.
+ * </p>
+ * <p>
+ * Only timeouts, I/O errors, and 5xx responses are failures (see {@link #isBackendFailure(Throwable)}). Any other
+ * exception, such as a 404 or a bad request, says nothing about the health of the backend, so it is passed through
+ * without being counted.
+ * </p>
+ * <p>
+ * State changes are logged, and may be observed via {@link #onStateChange(BiConsumer)}.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+public class CircuitBreaker {
+
+    /** Property for the number of consecutive failures that open a breaker */
+    public static final String PROP_FAILURE_THRESHOLD = "authz.breaker.failures";
+
+    /** Property for how long a breaker stays open before allowing a trial call, in milliseconds */
+    public static final String PROP_OPEN_DURATION = "authz.breaker.open.ms";
+
+    static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        final Thread t = new Thread(r, "circuit-breaker");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Breaker state.
+     */
+    public enum State {
+        /** Calls go through */
+        CLOSED,
+        /** Calls fail immediately */
+        OPEN,
+        /** A single trial call is allowed through */
+        HALF_OPEN
+    }
+
+    private final String name;
+
+    private final int failureThreshold;
+
+    private final Duration openDuration;
+
+    private final Duration timeout;
+
+    private final List<BiConsumer<State, State>> listeners = new CopyOnWriteArrayList<>();
+
+    private State state = State.CLOSED;
+
+    private int failures;
+
+    private long openedAt;
+
+    private boolean trialInProgress;
+
+    /**
+     * Create a breaker whose failure threshold and open duration are taken from configuration.
+     *
+     * @param name Name of the guarded dependency, for logging.
+     * @param timeout Maximum duration of a call. Zero or negative means calls are not timed out.
+     */
+    public CircuitBreaker(String name, Duration timeout) {
+        this(name,
+                Integer.valueOf(ofNullable(getValue(PROP_FAILURE_THRESHOLD)).orElse("5")),
+                Duration.ofMillis(Long.valueOf(ofNullable(getValue(PROP_OPEN_DURATION)).orElse("30000"))),
+                timeout);
+    }
+
+    /**
+     * Create a breaker.
+     *
+     * @param name Name of the guarded dependency, for logging.
+     * @param failureThreshold Number of consecutive failures that open the breaker.
+     * @param openDuration How long the breaker stays open before allowing a trial call.
+     * @param timeout Maximum duration of a call. Zero or negative means calls are not timed out.
+     */
+    public CircuitBreaker(String name, int failureThreshold, Duration openDuration, Duration timeout) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Call the guarded dependency.
+     *
+     * @param call The call.
+     * @param <T> Result type.
+     * @return Result of the call.
+     * @throws OpenException if the breaker is open.
+     * @throws RuntimeException wrapping any exception thrown by the call, or a {@link TimeoutException}.
+     */
+    public <T> T call(Callable<T> call) {
+        acquire();
+
+        try {
+            final T result = timeout.isZero() || timeout.isNegative() ? call.call() : callWithTimeout(call);
+            succeeded();
+            return result;
+        } catch (final Exception e) {
+            if (isBackendFailure(e)) {
+                failed();
+            } else {
+                released();
+            }
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Determine whether an exception means the backend is unhealthy, rather than that a call was refused.
+     * <p>
+     * That is the case if its causes include a timeout, a 5xx response from Fedora or Elasticsearch, or any other
+     * I/O error (e.g. a refused connection).
+     * </p>
+     *
+     * @param e The exception.
+     * @return true if it counts as a failure.
+     */
+    public static boolean isBackendFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof FcrepoOperationFailedException) {
+                return ((FcrepoOperationFailedException) cause).getStatusCode() >= 500;
+            } else if (cause instanceof ResponseException) {
+                return ((ResponseException) cause).getResponse().getStatusLine().getStatusCode() >= 500;
+            } else if (cause instanceof ElasticsearchException) {
+                return ((ElasticsearchException) cause).status().getStatus() >= 500;
+            } else if (cause instanceof TimeoutException || cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the current state.
+     *
+     * @return the state.
+     */
+    public synchronized State getState() {
+        if (state == State.OPEN && openDurationElapsed()) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * Register a listener for state changes.
+     *
+     * @param listener Consumer of the old and new states.
+     */
+    public void onStateChange(BiConsumer<State, State> listener) {
+        listeners.add(listener);
+    }
+
+    private <T> T callWithTimeout(Callable<T> call) throws Exception {
+        final Future<T> result = executor.submit(call);
+        try {
+            return result.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException e) {
+            result.cancel(true);
+            throw new RuntimeException(String.format("Timed out calling %s after %sms", name, timeout.toMillis()), e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        } catch (final InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted calling " + name, e);
+        }
+    }
+
+    private void acquire() {
+        final State from;
+        synchronized (this) {
+            if (state == State.CLOSED) {
+                return;
+            }
+
+            if (trialInProgress || !openDurationElapsed()) {
+                throw new OpenException(name);
+            }
+
+            trialInProgress = true;
+            from = state;
+            state = State.HALF_OPEN;
+        }
+        fireStateChange(from, State.HALF_OPEN);
+    }
+
+    private void succeeded() {
+        final State from;
+        synchronized (this) {
+            failures = 0;
+            trialInProgress = false;
+            if (state == State.CLOSED) {
+                return;
+            }
+            from = state;
+            state = State.CLOSED;
+        }
+        fireStateChange(from, State.CLOSED);
+    }
+
+    private void failed() {
+        final State from;
+        synchronized (this) {
+            failures++;
+            trialInProgress = false;
+            if (state == State.OPEN || (state == State.CLOSED && failures < failureThreshold)) {
+                return;
+            }
+            from = state;
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+        fireStateChange(from, State.OPEN);
+    }
+
+    /* Neither a success nor a failure; a trial call that ends this way lets the next call be the trial */
+    private synchronized void released() {
+        trialInProgress = false;
+    }
+
+    private boolean openDurationElapsed() {
+        return System.nanoTime() - openedAt >= openDuration.toNanos();
+    }
+
+    private void fireStateChange(State from, State to) {
+        if (to == State.OPEN) {
+            LOG.warn("Circuit breaker for {} is now {} (was {}), failing fast for {}", name, to, from, openDuration);
+        } else {
+            LOG.warn("Circuit breaker for {} is now {} (was {})", name, to, from);
+        }
+
+        for (final BiConsumer<State, State> listener : listeners) {
+            try {
+                listener.accept(from, to);
+            } catch (final Exception e) {
+                LOG.warn("Circuit breaker listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * Thrown when a call is rejected because the breaker is open.
+     */
+    @SuppressWarnings("serial")
+    public static class OpenException extends RuntimeException {
+
+        OpenException(String name) {
+            super("Circuit breaker for " + name + " is open");
+        }
+    }
+}
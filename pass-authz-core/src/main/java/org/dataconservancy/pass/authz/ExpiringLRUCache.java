@@ -21,6 +21,7 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -53,7 +54,7 @@ public class ExpiringLRUCache<K, V> {
 
     final Duration expiry;
 
-    private final Map<K, Future<V>> cache;
+    private final Map<K, CompletableFuture<V>> cache;
 
     private final String name;
 
@@ -67,10 +68,10 @@ public class ExpiringLRUCache<K, V> {
 
         name = Thread.currentThread().getStackTrace()[2].getClassName();
 
-        cache = new LinkedHashMap<K, Future<V>>(capacity) {
+        cache = new LinkedHashMap<K, CompletableFuture<V>>(capacity) {
 
             @Override
-            protected boolean removeEldestEntry(Map.Entry<K, Future<V>> eldest) {
+            protected boolean removeEldestEntry(Map.Entry<K, CompletableFuture<V>> eldest) {
 
                 if (size() > capacity) {
                     LOG.info("[{}] Cache full, removing oldest entry; {}", name, eldest.getKey());
@@ -105,10 +106,42 @@ public class ExpiringLRUCache<K, V> {
         return getOrDo(key, generator, true);
     }
 
+    /**
+     * Get a cached value, or run the provided generator to compute a new value, without blocking the caller.
+     * <p>
+     * The returned future completes when the cached or generated value is available. Callers that must not park a
+     * thread while the generator runs (e.g. asynchronous servlet requests) can attach a continuation to it instead.
+     * Null values are never cached, just as with {@link #getOrDo(Object, Callable)}.
+     * </p>
+     *
+     * @param key Retrieval key
+     * @param generator Function that MAY be executed, if there is no cached value
+     * @return Future containing the cached or generated value.
+     */
+    public CompletableFuture<V> getOrDoAsync(K key, Callable<V> generator) {
+        return getOrDoAsync(key, generator, false);
+    }
+
+    /**
+     * Call a generator to populate the cache, regardless of whether there is already a cached value or not, without
+     * blocking the caller.
+     *
+     * @param key The key
+     * @param generator Generator function
+     * @return Future containing the generated value
+     */
+    public CompletableFuture<V> doAndCacheAsync(K key, Callable<V> generator) {
+        return getOrDoAsync(key, generator, true);
+    }
+
     private V getOrDo(K key, Callable<V> generator, boolean forceGenerate) {
+        return doGet(getOrDoAsync(key, generator, forceGenerate));
+    }
 
-        final Future<V> result;
-        boolean cached = true;
+    private CompletableFuture<V> getOrDoAsync(K key, Callable<V> generator, boolean forceGenerate) {
+
+        final CompletableFuture<V> result;
+        final boolean cached;
         synchronized (cache) {
 
             if (cache.containsKey(key) && !forceGenerate) {
@@ -116,10 +149,15 @@ public class ExpiringLRUCache<K, V> {
                 cached = true;
             } else {
                 cached = false;
-                result = runner.submit(() -> {
-                    final V value = generator.call();
-                    LOG.debug("[{}] Calculated value for {} as {}", name, key, value);
-                    return value;
+                result = new CompletableFuture<>();
+                runner.submit(() -> {
+                    try {
+                        final V value = generator.call();
+                        LOG.debug("[{}] Calculated value for {} as {}", name, key, value);
+                        result.complete(value);
+                    } catch (final Throwable e) {
+                        result.completeExceptionally(e);
+                    }
                 });
                 cache.put(key, result);
                 scheduler.schedule(() -> {
@@ -129,18 +167,25 @@ public class ExpiringLRUCache<K, V> {
             }
         }
 
-        final V value = doGet(result);
-        if (value == null) {
-            LOG.info("[{}] Value for key {} is null, refusing to cache it", name, key);
-            remove(key);
-        } else {
-            if (cached) {
-                LOG.debug("[{}] Returning cached value for {}: {}", name, key, value);
+        return result.whenComplete((value, e) -> {
+            if (e != null) {
+                // Don't remember failures, so that lookups are retried as soon as the generator can succeed again
+                LOG.debug("[{}] Generating value for key {} failed, refusing to cache it", name, key);
+                remove(key, result);
+                return;
+            }
+
+            if (value == null) {
+                LOG.info("[{}] Value for key {} is null, refusing to cache it", name, key);
+                remove(key, result);
             } else {
-                LOG.debug("[{}] Return calculated value for {}: {}", name, key, value);
+                if (cached) {
+                    LOG.debug("[{}] Returning cached value for {}: {}", name, key, value);
+                } else {
+                    LOG.debug("[{}] Return calculated value for {}: {}", name, key, value);
+                }
             }
-        }
-        return value;
+        });
     }
 
     private void remove(K key) {
@@ -149,6 +194,12 @@ public class ExpiringLRUCache<K, V> {
         }
     }
 
+    private void remove(K key, CompletableFuture<V> value) {
+        synchronized (cache) {
+            cache.remove(key, value);
+        }
+    }
+
     /**
      * Get a cached value, or null if not present in cache.
      *
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lock-free histogram of latencies, with power-of-two microsecond buckets.
+ * <p>
+ * Recording a latency is a handful of atomic increments, so it is cheap enough to do on every request. Percentiles
+ * are approximate, reported as the upper bound of the bucket they fall in. Histograms are registered by name, and
+ * published via JMX as {@code org.dataconservancy.pass.authz:type=Latency,name=<name>}.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+public class LatencyHistogram implements LatencyHistogramMBean {
+
+    static final Logger LOG = LoggerFactory.getLogger(LatencyHistogram.class);
+
+    static final int BUCKETS = 40;
+
+    private static final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    private final String name;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Get the histogram with the given name, creating and registering it if necessary.
+     *
+     * @param name Histogram name.
+     * @return The histogram.
+     */
+    public static LatencyHistogram named(String name) {
+        return histograms.computeIfAbsent(name, n -> {
+            final LatencyHistogram histogram = new LatencyHistogram(n);
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(histogram, new ObjectName(
+                        "org.dataconservancy.pass.authz:type=Latency,name=" + ObjectName.quote(n)));
+            } catch (final Exception e) {
+                LOG.debug("Could not register latency histogram {} with JMX", n, e);
+            }
+            return histogram;
+        });
+    }
+
+    /**
+     * Get the histogram name.
+     *
+     * @return the name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Record a latency.
+     *
+     * @param nanos Latency, in nanoseconds.
+     */
+    public void record(long nanos) {
+        final long micros = Math.max(nanos, 0) / 1000;
+        buckets.incrementAndGet(Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1));
+        count.increment();
+        sum.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        final long n = count.sum();
+        return n == 0 ? 0 : sum.sum() / (n * 1_000_000.0);
+    }
+
+    @Override
+    public double getP50Millis() {
+        return getPercentileMillis(50);
+    }
+
+    @Override
+    public double getP90Millis() {
+        return getPercentileMillis(90);
+    }
+
+    @Override
+    public double getP99Millis() {
+        return getPercentileMillis(99);
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return max.get() / 1_000_000.0;
+    }
+
+    /**
+     * Get an approximate percentile.
+     *
+     * @param percentile Percentile, from 0 to 100.
+     * @return Upper bound of the bucket containing the percentile, in milliseconds.
+     */
+    public double getPercentileMillis(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += buckets.get(i);
+        }
+
+        final long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank && seen > 0) {
+                return Math.min((1L << i) / 1000.0, getMaxMillis());
+            }
+        }
+
+        return 0;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz;
+
+/**
+ * JMX view of a {@link LatencyHistogram}.
+ *
+ * @author apb@jhu.edu
+ */
+public interface LatencyHistogramMBean {
+
+    /**
+     * @return number of recorded latencies.
+     */
+    long getCount();
+
+    /**
+     * @return mean latency, in milliseconds.
+     */
+    double getMeanMillis();
+
+    /**
+     * @return median latency, in milliseconds.
+     */
+    double getP50Millis();
+
+    /**
+     * @return 90th percentile latency, in milliseconds.
+     */
+    double getP90Millis();
+
+    /**
+     * @return 99th percentile latency, in milliseconds.
+     */
+    double getP99Millis();
+
+    /**
+     * @return maximum latency, in milliseconds.
+     */
+    double getMaxMillis();
+}
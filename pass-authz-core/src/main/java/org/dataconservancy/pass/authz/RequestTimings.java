@@ -0,0 +1,137 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz;
+
+import java.util.Locale;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Times the phases of processing a request.
+ * <p>
+ * Each phase is always recorded in its {@link LatencyHistogram}. When tracing is enabled for a request (i.e.
+ * {@value #PROP_SERVER_TIMING} is true), phases are also collected for a {@value #SERVER_TIMING_HEADER} response
+ * header, so that a client can see where the time went. Otherwise, timing a phase costs no more than reading the
+ * clock and updating the histogram.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+public class RequestTimings {
+
+    /** Property for enabling the Server-Timing response header */
+    public static final String PROP_SERVER_TIMING = "authz.server.timing";
+
+    public static final String SERVER_TIMING_HEADER = "Server-Timing";
+
+    static final String ATTRIBUTE = RequestTimings.class.getName();
+
+    private static final RequestTimings UNTRACED = new RequestTimings(false);
+
+    private final StringBuilder serverTiming;
+
+    private RequestTimings(boolean traced) {
+        serverTiming = traced ? new StringBuilder() : null;
+    }
+
+    /**
+     * Start timing a request.
+     *
+     * @param request The request.
+     * @param traced Whether phases should be collected for a Server-Timing header.
+     * @return Timings for the request.
+     */
+    public static RequestTimings start(HttpServletRequest request, boolean traced) {
+        if (!traced) {
+            return UNTRACED;
+        }
+
+        final RequestTimings timings = new RequestTimings(true);
+        request.setAttribute(ATTRIBUTE, timings);
+        return timings;
+    }
+
+    /**
+     * Get the timings of a request that has already started.
+     *
+     * @param request The request.
+     * @return Timings for the request. If the request is not traced, phases are only recorded in histograms.
+     */
+    public static RequestTimings of(HttpServletRequest request) {
+        final Object timings = request == null ? null : request.getAttribute(ATTRIBUTE);
+        return timings instanceof RequestTimings ? (RequestTimings) timings : UNTRACED;
+    }
+
+    /**
+     * Record a phase that has just ended.
+     *
+     * @param phase Histogram for the phase.
+     * @param startNanos Start of the phase, from {@link System#nanoTime()}.
+     * @return End of the phase, for use as the start of the next phase.
+     */
+    public long record(LatencyHistogram phase, long startNanos) {
+        final long now = System.nanoTime();
+        phase.record(now - startNanos);
+
+        if (serverTiming != null) {
+            synchronized (serverTiming) {
+                if (serverTiming.length() > 0) {
+                    serverTiming.append(", ");
+                }
+                serverTiming.append(phase.getName())
+                        .append(";dur=")
+                        .append(String.format(Locale.ROOT, "%.3f", (now - startNanos) / 1_000_000.0));
+            }
+        }
+
+        return now;
+    }
+
+    /**
+     * Whether phases are being collected for a Server-Timing header.
+     *
+     * @return true if traced.
+     */
+    public boolean isTraced() {
+        return serverTiming != null;
+    }
+
+    /**
+     * Add the Server-Timing header to a response, if traced.
+     *
+     * @param response The response.
+     */
+    public void addServerTiming(HttpServletResponse response) {
+        if (serverTiming != null && !response.isCommitted()) {
+            response.setHeader(SERVER_TIMING_HEADER, toString());
+        }
+    }
+
+    /**
+     * Server-Timing header value, e.g. {@code shib;dur=0.052, lookup;dur=12.110}.
+     */
+    @Override
+    public String toString() {
+        if (serverTiming == null) {
+            return "";
+        }
+
+        synchronized (serverTiming) {
+            return serverTiming.toString();
+        }
+    }
+}
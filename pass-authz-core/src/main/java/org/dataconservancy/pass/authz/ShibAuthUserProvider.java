@@ -27,6 +27,7 @@ import java.util.Enumeration;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 import javax.servlet.http.HttpServletRequest;
 
@@ -62,8 +63,20 @@ public class ShibAuthUserProvider implements AuthUserProvider {
 
     public static final String CONFIG_SHIB_CACHE_SIZE = "authz.shib.cache.size";
 
+    /** Property for the timeout of User lookups by locator id, in milliseconds */
+    public static final String CONFIG_SHIB_LOOKUP_TIMEOUT = "authz.shib.lookup.timeout.ms";
+
     Logger LOG = LoggerFactory.getLogger(ShibAuthUserProvider.class);
 
+    /** Time spent reading shib attributes */
+    static final LatencyHistogram SHIB_PHASE = LatencyHistogram.named("shib");
+
+    /** Time spent waiting for a (possibly cached) User */
+    static final LatencyHistogram CACHE_PHASE = LatencyHistogram.named("user-cache");
+
+    /** Time spent looking up a User by locator ids, on a cache miss */
+    static final LatencyHistogram LOOKUP_PHASE = LatencyHistogram.named("user-lookup");
+
     /** Display name http header */
     public static final String DISPLAY_NAME_HEADER = "Displayname";
 
@@ -101,6 +114,9 @@ public class ShibAuthUserProvider implements AuthUserProvider {
 
     boolean useShibHeaders = ofNullable(getValue(CONFIG_SHIB_USE_HEADERS)).map(Boolean::valueOf).orElse(false);
 
+    CircuitBreaker lookupBreaker = new CircuitBreaker("User lookup", Duration.ofMillis(Long.valueOf(ofNullable(
+            getValue(CONFIG_SHIB_LOOKUP_TIMEOUT)).orElse("10000"))));
+
     /**
      * Constructor.
      *
@@ -134,6 +150,104 @@ public class ShibAuthUserProvider implements AuthUserProvider {
     @Override
     public AuthUser getUser(HttpServletRequest request, Function<AuthUser, AuthUser> doAfter, boolean allowCached) {
 
+        final RequestTimings timings = RequestTimings.of(request);
+        long start = System.nanoTime();
+
+        final String cacheLookupId = getHopkinsId(request);
+        final AuthUser authUser = fromShibAttributes(request, cacheLookupId);
+
+        start = timings.record(SHIB_PHASE, start);
+
+        if (cacheLookupId != null) {
+            LOG.debug("Looking up User based on hopkins id '{}'", cacheLookupId);
+            try {
+
+                if (allowCached) {
+                    authUser.setUser(userCache.getOrDo(cacheLookupId, criticalSection(authUser, doAfter, timings)));
+                } else {
+                    authUser.setUser(userCache.doAndCache(cacheLookupId, criticalSection(authUser, doAfter,
+                            timings)));
+                }
+                timings.record(CACHE_PHASE, start);
+
+                // Populate the authUser ID for Users resulting from cache hits.
+                if (authUser.getUser() != null) {
+                    authUser.setId(authUser.getUser().getId());
+                }
+                LOG.debug("User resource for {} is {}", cacheLookupId, authUser.getId());
+            } catch (final Exception e) {
+                throw new RuntimeException("Error while looking up user by locatorIds" + authUser.getLocatorIds()
+                        .toString(), e);
+            }
+        } else {
+            LOG.debug("No shibboleth hopkins id; skipping user lookup ");
+        }
+
+        return authUser;
+    }
+
+    /**
+     * Reads the shib headers on the calling thread, but performs the User lookup (if it is not cached) and the
+     * doAfter function in the cache's own threads.
+     *
+     * @param request the HTTP servlet request
+     * @return Future containing the populated AuthUser
+     */
+    @Override
+    public CompletableFuture<AuthUser> getUserAsync(HttpServletRequest request, Function<AuthUser, AuthUser> doAfter,
+            boolean allowCached) {
+
+        final RequestTimings timings = RequestTimings.of(request);
+        final long start = System.nanoTime();
+
+        final String cacheLookupId = getHopkinsId(request);
+        final AuthUser authUser = fromShibAttributes(request, cacheLookupId);
+
+        final long lookupStart = timings.record(SHIB_PHASE, start);
+
+        if (cacheLookupId == null) {
+            LOG.debug("No shibboleth hopkins id; skipping user lookup ");
+            return CompletableFuture.completedFuture(authUser);
+        }
+
+        LOG.debug("Looking up User based on hopkins id '{}'", cacheLookupId);
+
+        final CompletableFuture<User> user = allowCached
+                ? userCache.getOrDoAsync(cacheLookupId, criticalSection(authUser, doAfter, timings))
+                : userCache.doAndCacheAsync(cacheLookupId, criticalSection(authUser, doAfter, timings));
+
+        return user.handle((u, e) -> {
+            timings.record(CACHE_PHASE, lookupStart);
+
+            if (e != null) {
+                throw new RuntimeException("Error while looking up user by locatorIds" + authUser.getLocatorIds()
+                        .toString(), e.getCause() != null ? e.getCause() : e);
+            }
+
+            authUser.setUser(u);
+
+            // Populate the authUser ID for Users resulting from cache hits.
+            if (u != null) {
+                authUser.setId(u.getId());
+            }
+            LOG.debug("User resource for {} is {}", cacheLookupId, authUser.getId());
+            return authUser;
+        });
+    }
+
+    /**
+     * Reads the principal (eppn) from the shib headers.
+     *
+     * @param request the HTTP servlet request
+     * @return the principal, or null if none
+     */
+    @Override
+    public String getPrincipal(HttpServletRequest request) {
+        return getShibAttr(request, EPPN_HEADER, s -> s);
+    }
+
+    private AuthUser fromShibAttributes(HttpServletRequest request, String hopkinsId) {
+
         if (LOG.isDebugEnabled() && request != null) {
 
             LOG.debug("Request headers: ");
@@ -158,10 +272,6 @@ public class ShibAuthUserProvider implements AuthUserProvider {
 
         final String employeeId = new Identifier(domain, EMPLOYEE_ID_TYPE, getShibAttr(request, EMPLOYEE_ID_HEADER,
                 e -> e)).serialize();
-        final String hopkinsId = new Identifier(domain, HOPKINS_ID_TYPE, getShibAttr(request, HOPKINS_ID_HEADER,
-                s -> s.split("@")[0])).serialize();
-
-        String cacheLookupId = null;
 
         final AuthUser authUser = new AuthUser();
         authUser.setName(displayName);
@@ -171,7 +281,6 @@ public class ShibAuthUserProvider implements AuthUserProvider {
         // populate the locatorId list with durable ids first - shib user always has hopkins id
         if (hopkinsId != null) {
             authUser.getLocatorIds().add(hopkinsId);
-            cacheLookupId = hopkinsId;
         }
         if (employeeId != null) {
             authUser.getLocatorIds().add(employeeId);
@@ -200,56 +309,46 @@ public class ShibAuthUserProvider implements AuthUserProvider {
                                                     .orElse(new String[0]))
                                             .collect(toSet()));
 
-        if (cacheLookupId != null) {
-            LOG.debug("Looking up User based on hopkins id '{}'", cacheLookupId);
-            try {
+        return authUser;
+    }
 
-                final Callable<User> criticalSection = () -> {
+    // The hopkins id is the key for cached User lookups
+    private String getHopkinsId(HttpServletRequest request) {
+        final String domain = getShibAttr(request, EPPN_HEADER, s -> s.split("@")[1]);
+        return new Identifier(domain, HOPKINS_ID_TYPE, getShibAttr(request, HOPKINS_ID_HEADER,
+                s -> s.split("@")[0])).serialize();
+    }
 
-                    // Critical section, only executed for a cache miss.
-                    //
-                    // We look to see if the user exists, then execute any
-                    // doAfter filters in the critical section
-                    // (e.g. User service creating or updating users).
-                    // If the doAfter filter has populated the User field, then
-                    // cache it. Otherwise, don't cache anything.
+    private Callable<User> criticalSection(AuthUser authUser, Function<AuthUser, AuthUser> doAfter,
+            RequestTimings timings) {
+        return () -> {
 
-                    authUser.setId(findUserId(authUser.getLocatorIds()));
-                    final AuthUser filtered = doAfter.apply(authUser);
+            // Critical section, only executed for a cache miss.
+            //
+            // We look to see if the user exists, then execute any
+            // doAfter filters in the critical section
+            // (e.g. User service creating or updating users).
+            // If the doAfter filter has populated the User field, then
+            // cache it. Otherwise, don't cache anything.
 
-                    if (filtered.getUser() != null) {
+            final long start = System.nanoTime();
+            authUser.setId(lookupBreaker.call(() -> findUserId(authUser.getLocatorIds())));
+            timings.record(LOOKUP_PHASE, start);
 
-                        // Return the User, it'll be cached.
-                        LOG.debug("doAfter filter supplied a User resource");
-                        return filtered.getUser();
-                    } else {
+            final AuthUser filtered = doAfter.apply(authUser);
 
-                        // Return null so that this entry is not cached.
-                        LOG.debug("doAfter filter did NOT supply a User resource");
-                        return null;
-                    }
-                };
+            if (filtered.getUser() != null) {
 
-                if (allowCached) {
-                    authUser.setUser(userCache.getOrDo(hopkinsId, criticalSection));
-                } else {
-                    authUser.setUser(userCache.doAndCache(hopkinsId, criticalSection));
-                }
+                // Return the User, it'll be cached.
+                LOG.debug("doAfter filter supplied a User resource");
+                return filtered.getUser();
+            } else {
 
-                // Populate the authUser ID for Users resulting from cache hits.
-                if (authUser.getUser() != null) {
-                    authUser.setId(authUser.getUser().getId());
-                }
-                LOG.debug("User resource for {} is {}", hopkinsId, authUser.getId());
-            } catch (final Exception e) {
-                throw new RuntimeException("Error while looking up user by locatorIds" + authUser.getLocatorIds()
-                        .toString(), e);
+                // Return null so that this entry is not cached.
+                LOG.debug("doAfter filter did NOT supply a User resource");
+                return null;
             }
-        } else {
-            LOG.debug("No shibboleth hopkins id; skipping user lookup ");
-        }
-
-        return authUser;
+        };
     }
 
     private URI findUserId(List<String> locatorIdList) {
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates virtual threads, on a JVM that has them (Java 21 or later).
+ * <p>
+ * Virtual threads are cheap enough to have one per blocking task, so I/O bound work can run at high concurrency
+ * without a large pool of platform threads. They are reached by reflection, so that this code still runs on older
+ * JVMs, where {@link #available()} is false.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+public class VirtualThreads {
+
+    static final Logger LOG = LoggerFactory.getLogger(VirtualThreads.class);
+
+    private static final Method OF_VIRTUAL;
+
+    private static final Method NAME;
+
+    private static final Method FACTORY;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        try {
+            final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+        } catch (final Exception e) {
+            LOG.debug("Virtual threads are not available", e);
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+    }
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Whether this JVM has virtual threads.
+     *
+     * @return true if it does.
+     */
+    public static boolean available() {
+        return FACTORY != null;
+    }
+
+    /**
+     * Get a factory for virtual threads.
+     *
+     * @param prefix Thread names are this prefix followed by a number.
+     * @return The factory.
+     * @throws UnsupportedOperationException if this JVM does not have virtual threads.
+     */
+    public static ThreadFactory factory(String prefix) {
+        if (!available()) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or later; this is Java " + System
+                    .getProperty("java.version"));
+        }
+
+        try {
+            return (ThreadFactory) FACTORY.invoke(NAME.invoke(OF_VIRTUAL.invoke(null), prefix, 0L));
+        } catch (final Exception e) {
+            throw new RuntimeException("Could not create virtual thread factory", e);
+        }
+    }
+}
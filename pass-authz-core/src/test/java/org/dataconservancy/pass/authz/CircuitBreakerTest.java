@@ -0,0 +1,229 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dataconservancy.pass.authz.CircuitBreaker.State;
+import org.fcrepo.client.FcrepoOperationFailedException;
+import org.junit.Test;
+
+/**
+ * @author apb@jhu.edu
+ */
+public class CircuitBreakerTest {
+
+    static final URI FEDORA = URI.create("http://example.org/fcrepo");
+
+    @Test
+    public void closedTest() {
+        final CircuitBreaker toTest = new CircuitBreaker("test", 2, Duration.ofMinutes(1), Duration.ofSeconds(5));
+
+        assertEquals("value", toTest.call(() -> "value"));
+        assertEquals(State.CLOSED, toTest.getState());
+    }
+
+    @Test
+    public void opensAfterConsecutiveFailuresTest() {
+        final CircuitBreaker toTest = new CircuitBreaker("test", 2, Duration.ofMinutes(1), Duration.ZERO);
+        final AtomicInteger calls = new AtomicInteger(0);
+
+        final List<State> transitions = new CopyOnWriteArrayList<>();
+        toTest.onStateChange((from, to) -> transitions.add(to));
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                toTest.call(() -> {
+                    calls.incrementAndGet();
+                    throw new IOException("Backend is down");
+                });
+                fail("Should have thrown an exception");
+            } catch (final RuntimeException e) {
+                // expected
+            }
+        }
+
+        assertEquals(State.OPEN, toTest.getState());
+
+        // Fails fast, without calling the backend
+        try {
+            toTest.call(calls::incrementAndGet);
+            fail("Breaker should be open");
+        } catch (final CircuitBreaker.OpenException e) {
+            // expected
+        }
+
+        assertEquals(2, calls.get());
+        assertEquals(asList(State.OPEN), transitions);
+    }
+
+    @Test
+    public void successResetsFailuresTest() {
+        final CircuitBreaker toTest = new CircuitBreaker("test", 2, Duration.ofMinutes(1), Duration.ZERO);
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                toTest.call(() -> {
+                    throw new IOException("Backend hiccup");
+                });
+            } catch (final RuntimeException e) {
+                // expected
+            }
+            toTest.call(() -> "OK");
+        }
+
+        assertEquals(State.CLOSED, toTest.getState());
+    }
+
+    @Test
+    public void halfOpenTest() throws Exception {
+        final CircuitBreaker toTest = new CircuitBreaker("test", 1, Duration.ofMillis(20), Duration.ZERO);
+
+        final List<State> transitions = new CopyOnWriteArrayList<>();
+        toTest.onStateChange((from, to) -> transitions.add(to));
+
+        try {
+            toTest.call(() -> {
+                throw new IOException("Backend is down");
+            });
+        } catch (final RuntimeException e) {
+            // expected
+        }
+
+        Thread.sleep(50);
+        assertEquals(State.HALF_OPEN, toTest.getState());
+
+        // A failed trial opens it again
+        try {
+            toTest.call(() -> {
+                throw new IOException("Backend is still down");
+            });
+        } catch (final RuntimeException e) {
+            // expected
+        }
+        assertEquals(State.OPEN, toTest.getState());
+
+        Thread.sleep(50);
+
+        // A successful trial closes it
+        assertEquals("OK", toTest.call(() -> "OK"));
+        assertEquals(State.CLOSED, toTest.getState());
+
+        assertEquals(asList(State.OPEN, State.HALF_OPEN, State.OPEN, State.HALF_OPEN, State.CLOSED), transitions);
+    }
+
+    @Test
+    public void timeoutTest() {
+        final CircuitBreaker toTest = new CircuitBreaker("test", 1, Duration.ofMinutes(1), Duration.ofMillis(10));
+
+        try {
+            toTest.call(() -> {
+                Thread.sleep(10000);
+                return "too late";
+            });
+            fail("Should have timed out");
+        } catch (final RuntimeException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+
+        assertEquals(State.OPEN, toTest.getState());
+    }
+
+    @Test
+    public void notFailureTest() {
+        final CircuitBreaker toTest = new CircuitBreaker("test", 1, Duration.ofMinutes(1), Duration.ZERO);
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                toTest.call(() -> {
+                    throw new RuntimeException(new FcrepoOperationFailedException(FEDORA, 404, "Gone"));
+                });
+                fail("Should have thrown an exception");
+            } catch (final RuntimeException e) {
+                assertTrue(e.getCause() instanceof FcrepoOperationFailedException);
+            }
+
+            try {
+                toTest.call(() -> {
+                    throw new IllegalArgumentException("Bad request");
+                });
+                fail("Should have thrown an exception");
+            } catch (final IllegalArgumentException e) {
+                // expected
+            }
+        }
+
+        assertEquals(State.CLOSED, toTest.getState());
+    }
+
+    @Test
+    public void serverErrorTest() {
+        final CircuitBreaker toTest = new CircuitBreaker("test", 1, Duration.ofMinutes(1), Duration.ZERO);
+
+        try {
+            toTest.call(() -> {
+                throw new RuntimeException(new FcrepoOperationFailedException(FEDORA, 503, "Busy"));
+            });
+            fail("Should have thrown an exception");
+        } catch (final RuntimeException e) {
+            assertFalse(e instanceof CircuitBreaker.OpenException);
+        }
+
+        assertEquals(State.OPEN, toTest.getState());
+    }
+
+    @Test
+    public void halfOpenNotFailureTest() throws Exception {
+        final CircuitBreaker toTest = new CircuitBreaker("test", 1, Duration.ofMillis(20), Duration.ZERO);
+
+        try {
+            toTest.call(() -> {
+                throw new IOException("Backend is down");
+            });
+        } catch (final RuntimeException e) {
+            // expected
+        }
+
+        Thread.sleep(50);
+
+        // A trial that ends in something other than a failure neither closes nor opens the breaker...
+        try {
+            toTest.call(() -> {
+                throw new IllegalArgumentException("Bad request");
+            });
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(State.HALF_OPEN, toTest.getState());
+
+        // ... but lets the next call be the trial
+        assertEquals("OK", toTest.call(() -> "OK"));
+        assertEquals(State.CLOSED, toTest.getState());
+    }
+}
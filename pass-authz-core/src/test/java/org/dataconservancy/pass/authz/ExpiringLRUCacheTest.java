@@ -17,10 +17,13 @@
 package org.dataconservancy.pass.authz;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -123,6 +126,22 @@ public class ExpiringLRUCacheTest {
         }
     }
 
+    @Test
+    public void doNotCacheExceptionsTest() {
+        final ExpiringLRUCache<String, Integer> toTest = new ExpiringLRUCache<>(10, Duration.ofSeconds(10));
+
+        try {
+            toTest.getOrDo(KEY1, () -> {
+                throw new RuntimeException();
+            });
+            fail("Should have thrown an exception");
+        } catch (final Exception e) {
+            // Expected
+        }
+
+        assertEquals(1, toTest.getOrDo(KEY1, () -> 1).intValue());
+    }
+
     @Test
     public void interruptionTest() throws Exception {
         final ExecutorService exe = Executors.newCachedThreadPool();
@@ -147,4 +166,50 @@ public class ExpiringLRUCacheTest {
         }
 
     }
+
+    @Test
+    public void asyncTest() throws Exception {
+        final ExpiringLRUCache<String, String> toTest = new ExpiringLRUCache<>(10, Duration.ofSeconds(10));
+
+        final CountDownLatch generatorLatch = new CountDownLatch(1);
+        final AtomicInteger executionCount = new AtomicInteger(0);
+
+        final CompletableFuture<String> result = toTest.getOrDoAsync(KEY1, () -> {
+            generatorLatch.await();
+            executionCount.incrementAndGet();
+            return VALUE1;
+        });
+
+        // The caller is not blocked while the generator runs, and concurrent lookups share the same result
+        assertFalse(result.isDone());
+        final CompletableFuture<String> concurrent = toTest.getOrDoAsync(KEY1, () -> VALUE2);
+
+        generatorLatch.countDown();
+
+        assertEquals(VALUE1, result.get());
+        assertEquals(VALUE1, concurrent.get());
+        assertEquals(1, executionCount.get());
+
+        // Cached values are immediately available
+        assertTrue(toTest.getOrDoAsync(KEY1, () -> VALUE2).isDone());
+        assertEquals(VALUE1, toTest.getOrDo(KEY1, () -> VALUE2));
+    }
+
+    @Test
+    public void asyncNullNotCachedTest() throws Exception {
+        final ExpiringLRUCache<String, Integer> toTest = new ExpiringLRUCache<>(10, Duration.ofSeconds(10));
+
+        final AtomicInteger executionCount = new AtomicInteger(0);
+
+        toTest.getOrDoAsync(KEY1, () -> {
+            executionCount.incrementAndGet();
+            return null;
+        }).get();
+        toTest.getOrDoAsync(KEY1, () -> {
+            executionCount.incrementAndGet();
+            return null;
+        }).get();
+
+        assertEquals(2, executionCount.get());
+    }
 }
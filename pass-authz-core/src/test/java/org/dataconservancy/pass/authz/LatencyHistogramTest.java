@@ -0,0 +1,77 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+/**
+ * @author apb@jhu.edu
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void percentileTest() {
+        final LatencyHistogram toTest = new LatencyHistogram("test");
+
+        // 90 fast (~10us), 10 slow (~100ms)
+        for (int i = 0; i < 90; i++) {
+            toTest.record(10_000);
+        }
+        for (int i = 0; i < 10; i++) {
+            toTest.record(100_000_000);
+        }
+
+        assertEquals(100, toTest.getCount());
+        assertEquals(100, toTest.getMaxMillis(), 0.001);
+        assertEquals(10.009, toTest.getMeanMillis(), 0.001);
+
+        // Percentiles are reported as bucket upper bounds
+        assertTrue(toTest.getP50Millis() >= 0.010 && toTest.getP50Millis() <= 0.020);
+        assertTrue(toTest.getP90Millis() >= 0.010 && toTest.getP90Millis() <= 0.020);
+        assertTrue(toTest.getP99Millis() >= 100 && toTest.getP99Millis() <= 200);
+    }
+
+    @Test
+    public void emptyTest() {
+        final LatencyHistogram toTest = new LatencyHistogram("test");
+
+        assertEquals(0, toTest.getCount());
+        assertEquals(0, toTest.getMeanMillis(), 0);
+        assertEquals(0, toTest.getP99Millis(), 0);
+    }
+
+    @Test
+    public void namedTest() throws Exception {
+        final String name = UUID.randomUUID().toString();
+
+        final LatencyHistogram toTest = LatencyHistogram.named(name);
+        assertSame(toTest, LatencyHistogram.named(name));
+
+        toTest.record(1_000_000);
+
+        assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(new ObjectName(
+                "org.dataconservancy.pass.authz:type=Latency,name=" + ObjectName.quote(name)), "Count"));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.UUID;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ * @author apb@jhu.edu
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class RequestTimingsTest {
+
+    @Mock
+    HttpServletRequest request;
+
+    @Mock
+    HttpServletResponse response;
+
+    final LatencyHistogram phase = LatencyHistogram.named(UUID.randomUUID().toString());
+
+    @Test
+    public void untracedTest() {
+        final RequestTimings toTest = RequestTimings.start(request, false);
+
+        toTest.record(phase, System.nanoTime() - 1_000_000);
+        toTest.addServerTiming(response);
+
+        // Histograms are always recorded, but there is no header
+        assertFalse(toTest.isTraced());
+        assertEquals(1, phase.getCount());
+        verify(request, never()).setAttribute(any(), any());
+        verify(response, never()).setHeader(anyString(), anyString());
+    }
+
+    @Test
+    public void tracedTest() {
+        final LatencyHistogram otherPhase = LatencyHistogram.named("other-" + UUID.randomUUID().toString());
+
+        final RequestTimings toTest = RequestTimings.start(request, true);
+        verify(request).setAttribute(RequestTimings.ATTRIBUTE, toTest);
+
+        when(request.getAttribute(RequestTimings.ATTRIBUTE)).thenReturn(toTest);
+        assertSame(toTest, RequestTimings.of(request));
+
+        final long end = toTest.record(phase, System.nanoTime() - 1_500_000);
+        toTest.record(otherPhase, end);
+        toTest.addServerTiming(response);
+
+        assertTrue(toTest.isTraced());
+        assertTrue(toTest.toString(), toTest.toString().matches(
+                phase.getName() + ";dur=[1-9][0-9]*\\.[0-9]{3}, " + otherPhase.getName() + ";dur=[0-9]+\\.[0-9]{3}"));
+        verify(response).setHeader(eq(RequestTimings.SERVER_TIMING_HEADER), eq(toTest.toString()));
+    }
+
+    @Test
+    public void notStartedTest() {
+        assertFalse(RequestTimings.of(request).isTraced());
+        assertFalse(RequestTimings.of(null).isTraced());
+    }
+}
@@ -38,6 +38,7 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.net.URI;
 import java.util.function.Function;
 import javax.servlet.http.HttpServletRequest;
 
@@ -295,6 +296,31 @@ public class ShibAuthUserProviderTest {
         }
     }
 
+    @Test
+    public void filterAddsUserAsyncTest() throws Exception {
+        final String eppn = "bcow666@johnshopkins.edu";
+        final String hopkinsId = "A5A5A5@johnshopkins.edu";
+
+        when(request.getHeader(EPPN_HEADER)).thenReturn(eppn);
+        when(request.getHeader(HOPKINS_ID_HEADER)).thenReturn(hopkinsId);
+
+        final User foundUser = new User();
+        foundUser.setId(URI.create("http://example.org/users/A5A5A5"));
+
+        when(doAfter.apply(any())).thenAnswer(i -> {
+            final AuthUser u = i.getArgument(0);
+            u.setUser(foundUser);
+            return u;
+        });
+        final String cacheLookupId = new Identifier(DOMAIN, HOPKINS_ID_TYPE, "A5A5A5").serialize();
+        final ShibAuthUserProvider underTest = new ShibAuthUserProvider(client);
+        final AuthUser authUser = underTest.getUserAsync(request, doAfter, true).get();
+
+        assertEquals(foundUser, authUser.getUser());
+        assertEquals(foundUser.getId(), authUser.getId());
+        assertEquals(foundUser, underTest.userCache.get(cacheLookupId));
+    }
+
     @Test
     public void filterAddsUserTest() {
         final String displayName = "Bessie Cow";
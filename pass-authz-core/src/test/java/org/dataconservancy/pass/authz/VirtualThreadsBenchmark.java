@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares running blocking tasks on a pool of platform threads against running each on its own virtual thread,
+ * for throughput and memory.
+ * <p>
+ * Each task stands in for applying the permissions policy to one resource: it waits as long as a few Fedora requests
+ * take, doing no work meanwhile. A semaphore bounds the tasks in flight, as it would bound requests to Fedora.
+ * Memory is the heap in use while the tasks are in flight, which includes the stacks of virtual threads; platform
+ * thread stacks are outside the heap, so their peak count is shown as well. Virtual threads need Java 21 or later;
+ * on older JVMs only the platform thread pools are measured.
+ * </p>
+ * <p>
+ * This is not a unit test; run its main method with the test classpath, e.g. from an IDE.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+public class VirtualThreadsBenchmark {
+
+    static final int TASKS = 20_000;
+
+    static final long LATENCY_MILLIS = 20;
+
+    public static void main(String[] args) throws Exception {
+        if (!VirtualThreads.available()) {
+            System.out.println("Virtual threads are not available on Java " + System.getProperty("java.version") +
+                    "; measuring platform threads only");
+        }
+
+        for (int round = 0; round < 2; round++) {
+            System.out.println("Round " + round);
+            for (final int concurrency : new int[] { 16, 256, 1024 }) {
+                final ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+                run("platform", concurrency, pool);
+                pool.shutdown();
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+
+                if (VirtualThreads.available()) {
+                    final ThreadFactory threads = VirtualThreads.factory("benchmark-");
+                    run("virtual", concurrency, task -> threads.newThread(task).start());
+                }
+            }
+        }
+    }
+
+    static void run(String name, int concurrency, Executor executor) throws InterruptedException {
+        System.gc();
+        final long heapBefore = heapUsed();
+        ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+
+        final Semaphore inFlight = new Semaphore(concurrency);
+        final CountDownLatch done = new CountDownLatch(TASKS);
+        final AtomicLong peakHeap = new AtomicLong();
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < TASKS; i++) {
+            inFlight.acquire();
+            if (i % 1000 == 0) {
+                peakHeap.accumulateAndGet(heapUsed(), Math::max);
+            }
+            executor.execute(() -> {
+                try {
+                    Thread.sleep(LATENCY_MILLIS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    inFlight.release();
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        final long elapsed = System.nanoTime() - start;
+
+        System.out.println(String.format("  %-8s %5d in flight %9.0f tasks/s %7d KB heap %6d platform threads",
+                name, concurrency, TASKS * 1e9 / elapsed, Math.max(0, peakHeap.get() - heapBefore) / 1024,
+                ManagementFactory.getThreadMXBean().getPeakThreadCount()));
+    }
+
+    static long heapUsed() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
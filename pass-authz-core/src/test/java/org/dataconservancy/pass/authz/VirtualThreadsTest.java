@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * @author apb@jhu.edu
+ */
+public class VirtualThreadsTest {
+
+    @Test
+    public void availableFromJava21Test() {
+        final String version = System.getProperty("java.specification.version");
+        final int major = Integer.parseInt(version.startsWith("1.") ? version.substring(2) : version);
+
+        assertEquals(major >= 21, VirtualThreads.available());
+    }
+
+    @Test
+    public void factoryTest() throws Exception {
+        if (!VirtualThreads.available()) {
+            try {
+                VirtualThreads.factory("test-");
+                fail("Should not create virtual threads on this JVM");
+            } catch (final UnsupportedOperationException e) {
+                // expected
+            }
+            return;
+        }
+
+        final ThreadFactory threads = VirtualThreads.factory("test-");
+        final AtomicReference<Thread> ran = new AtomicReference<>();
+        final Thread thread = threads.newThread(() -> ran.set(Thread.currentThread()));
+        thread.start();
+        thread.join();
+
+        assertEquals(thread, ran.get());
+        assertEquals("test-0", thread.getName());
+        assertTrue(thread.isDaemon());
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.listener;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits how many tasks run at once, adapting the limit to how long they take.
+ * <p>
+ * Task durations are tracked as two moving averages: a short one of the last few tasks, and a long one that serves
+ * as the baseline. The limit grows by one for every limit's worth of tasks completed while the limit is in use
+ * (additive increase), and shrinks by a fraction whenever a task fails or the short average is much longer than the
+ * baseline (multiplicative decrease). When the limit is reached, callers of {@link #run(Runnable)} wait.
+ * </p>
+ * <p>
+ * The listener's tasks are dominated by requests to Fedora, so when Fedora slows down under load from other users,
+ * the listener backs off, and it speeds up again once Fedora recovers.
+ * </p>
+ * <p>
+ * Waiting callers park on a lock rather than a monitor, so that a waiting virtual thread does not hold on to its
+ * carrier thread.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+class AdaptiveLimiter {
+
+    static final Logger LOG = LoggerFactory.getLogger(AdaptiveLimiter.class);
+
+    /* Fraction of the limit kept on a slow or failed task */
+    static final double BACKOFF = 0.9;
+
+    /* Weight of each task in the short and long averages */
+    static final double SHORT_WEIGHT = 0.2;
+
+    static final double LONG_WEIGHT = 0.01;
+
+    private final int min;
+
+    private final int max;
+
+    private final double tolerance;
+
+    private double limit;
+
+    private double shortNanos;
+
+    private double longNanos;
+
+    private int inFlight;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition room = lock.newCondition();
+
+    /**
+     * @param min Smallest limit.
+     * @param max Largest limit, and the initial limit.
+     * @param tolerance How many times longer than the baseline the short average may be before tasks count as slow.
+     */
+    AdaptiveLimiter(int min, int max, double tolerance) {
+        this.min = Math.max(min, 1);
+        this.max = Math.max(max, this.min);
+        this.tolerance = tolerance;
+        this.limit = this.max;
+    }
+
+    /**
+     * Run a task once there is room under the limit.
+     *
+     * @param task The task.
+     */
+    void run(Runnable task) {
+        acquire();
+
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            task.run();
+            failed = false;
+        } finally {
+            release(System.nanoTime() - start, failed);
+        }
+    }
+
+    void acquire() {
+        lock.lock();
+        try {
+            while (inFlight >= (int) limit) {
+                room.await();
+            }
+            inFlight++;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting under the concurrency limit", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void release(long nanos, boolean failed) {
+        lock.lock();
+        try {
+            final boolean saturated = inFlight >= (int) limit;
+            inFlight--;
+
+            shortNanos = shortNanos == 0 ? nanos : shortNanos + (nanos - shortNanos) * SHORT_WEIGHT;
+            longNanos = longNanos == 0 ? nanos : longNanos + (nanos - longNanos) * LONG_WEIGHT;
+
+            final int before = (int) limit;
+            if (failed || shortNanos > longNanos * tolerance) {
+                limit = Math.max(min, limit * BACKOFF);
+            } else if (saturated) {
+                limit = Math.min(max, limit + 1 / limit);
+            }
+
+            if ((int) limit != before) {
+                LOG.debug("Concurrency limit now {}", (int) limit);
+            }
+            room.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -16,9 +16,21 @@
 
 package org.dataconservancy.pass.authz.listener;
 
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+
+import java.util.ArrayList;
 import java.util.List;
 import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+import javax.jms.TextMessage;
 
+import org.apache.activemq.ActiveMQSession;
+import org.dataconservancy.pass.authz.VirtualThreads;
+import org.dataconservancy.pass.authz.acl.FedoraClientFactory;
 import org.dataconservancy.pass.authz.acl.PolicyEngine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,46 +44,271 @@ public class AuthzListener {
 
     String SUBMISSION_EVENT_TYPE = "http://oapass.org/ns/pass#SubmissionEvent";
 
-    private final ConnectionFactory factory;
+    /**
+     * Property of a message in the dead letter queue that describes why it could not be handled.
+     */
+    public static final String ERROR_PROPERTY = "passAuthzError";
+
+    private final List<ConnectionFactory> factories;
 
     private final PolicyEngine aclPolicies;
 
     private final String queueName;
 
+    private int workers = 1;
+
+    private int workerCapacity = 100;
+
+    private long coalesceMillis = 0;
+
+    private boolean suppressEchoes = true;
+
+    private String selector;
+
+    private int maxAttempts = 5;
+
+    private long initialDelayMillis = 1000;
+
+    private long maxDelayMillis = 60000;
+
+    private String deadLetterQueue;
+
+    private int acknowledgeMode = ActiveMQSession.INDIVIDUAL_ACKNOWLEDGE;
+
+    private int minConcurrency = 0;
+
+    private double latencyTolerance = 2;
+
+    private int maxConcurrency = 0;
+
+    private boolean virtualThreads = false;
+
     Logger LOG = LoggerFactory.getLogger(AuthzListener.class);
 
     public AuthzListener(ConnectionFactory jmsFactory, PolicyEngine policyEngine, String queueName) {
-        this.factory = jmsFactory;
+        this(singletonList(jmsFactory), policyEngine, queueName);
+    }
+
+    /**
+     * Create a listener that fails over between brokers.
+     *
+     * @param jmsFactories Connection factories, one for each broker, in order of preference.
+     * @param policyEngine Applies the permissions policy.
+     * @param queueName Queue to listen on.
+     */
+    public AuthzListener(List<? extends ConnectionFactory> jmsFactories, PolicyEngine policyEngine,
+            String queueName) {
+        this.factories = new ArrayList<>(jmsFactories);
         this.aclPolicies = policyEngine;
         this.queueName = queueName;
     }
 
+    /**
+     * Set the number of workers that handle messages.
+     * <p>
+     * Messages are divided among workers by the hash of their resource URI, so that messages about the same
+     * resource are handled one at a time, in the order they arrived, while messages about different resources are
+     * handled in parallel.
+     * </p>
+     *
+     * @param workers Number of workers, at least one.
+     */
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    /**
+     * Set the number of messages each worker may have waiting before the listener stops taking messages from the
+     * queue.
+     *
+     * @param capacity Number of waiting messages per worker.
+     */
+    public void setWorkerCapacity(int capacity) {
+        this.workerCapacity = capacity;
+    }
+
+    /**
+     * Set how long to hold a message so that further messages about the same resource can be merged into it.
+     * <p>
+     * A burst of messages about one resource is then handled once, at the cost of delaying each message by at most
+     * this long. {@code 0} handles every message as it arrives.
+     * </p>
+     *
+     * @param millis Coalescing window, in milliseconds.
+     */
+    public void setCoalesceMillis(long millis) {
+        this.coalesceMillis = millis;
+    }
+
+    /**
+     * Set whether to ignore messages about changes made by the listener's own ACL writes.
+     * <p>
+     * Linking an ACL to a submission modifies the submission, so Fedora sends a message about it. Handling that
+     * message would only read the submission and find its ACL already correct. These messages are recognized by the
+     * {@link FedoraClientFactory#USER_AGENT} user agent of the request that caused them.
+     * </p>
+     *
+     * @param suppress true to ignore them.
+     */
+    public void setSuppressEchoes(boolean suppress) {
+        this.suppressEchoes = suppress;
+    }
+
+    /**
+     * Set a JMS message selector, so that the broker only delivers the messages it matches.
+     * <p>
+     * Messages the broker does not deliver cost the listener nothing, where it would otherwise have to receive and
+     * parse them before ignoring them. Fedora's own headers ({@code org.fcrepo.jms.*}) contain dots, which JMS
+     * selectors cannot name, so the selector can only use headers copied to other names on the way to the queue.
+     * </p>
+     *
+     * @param selector The selector, or null to receive every message.
+     */
+    public void setSelector(String selector) {
+        this.selector = selector != null && !selector.trim().isEmpty() ? selector : null;
+    }
+
+    /**
+     * Set how many times to try handling a message, and how long to wait between tries.
+     * <p>
+     * The wait doubles after each failed attempt, up to the maximum. A message that has failed every attempt is
+     * copied to the dead letter queue, with the failure in its {@link #ERROR_PROPERTY} property.
+     * </p>
+     *
+     * @param maxAttempts Number of attempts, at least one.
+     * @param initialDelayMillis Wait after the first failure, in milliseconds.
+     * @param maxDelayMillis Longest wait, in milliseconds.
+     */
+    public void setRedelivery(int maxAttempts, long initialDelayMillis, long maxDelayMillis) {
+        this.maxAttempts = maxAttempts;
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * Set the name of the queue for messages that could not be handled.
+     *
+     * @param queue Queue name; defaults to the name of the listener's queue with {@code .DLQ} appended.
+     */
+    public void setDeadLetterQueue(String queue) {
+        this.deadLetterQueue = queue;
+    }
+
+    /**
+     * Set how messages are acknowledged.
+     * <p>
+     * By default, each message is acknowledged individually, once it has been handled, ignored, or copied to the
+     * dead letter queue, so messages that are still being handled or waiting for a retry when the listener stops are
+     * delivered again by the broker. With {@link Session#AUTO_ACKNOWLEDGE} or {@link Session#DUPS_OK_ACKNOWLEDGE},
+     * messages are acknowledged as soon as they are received (in batches, for the latter), which costs the broker
+     * less but loses the messages in progress if the listener stops. Handling a message again is harmless, since it
+     * sets permissions from the current state of the resource.
+     * </p>
+     *
+     * @param mode Session acknowledge mode.
+     */
+    public void setAcknowledgeMode(int mode) {
+        this.acknowledgeMode = mode;
+    }
+
+    /**
+     * Adapt how many messages are handled at once to how quickly they are handled.
+     * <p>
+     * Up to one message per worker is handled at once while handling stays quick. When it slows down (typically
+     * because Fedora is busy), fewer messages are handled at once, down to the minimum; workers then wait, and once
+     * they are full the listener stops taking messages from the queue. So a backlog of ACL work yields to other users
+     * of Fedora.
+     * </p>
+     *
+     * @param min Fewest messages handled at once; {@code 0} to always handle one per worker.
+     * @param tolerance How many times slower than usual handling may become before fewer messages are handled.
+     */
+    public void setAdaptiveConcurrency(int min, double tolerance) {
+        this.minConcurrency = min;
+        this.latencyTolerance = tolerance;
+    }
+
+    /**
+     * Set the most messages handled at once, if it should be fewer than the number of workers.
+     * <p>
+     * Handling a message is mostly waiting for Fedora, so this bounds the listener's requests to Fedora in flight.
+     * It is useful with virtual threads, where there may be far more workers than Fedora could serve at once.
+     * </p>
+     *
+     * @param max Most messages handled at once; {@code 0} for one per worker.
+     */
+    public void setMaxConcurrency(int max) {
+        this.maxConcurrency = max;
+    }
+
+    /**
+     * Set whether workers run on virtual threads rather than platform threads.
+     * <p>
+     * A virtual thread waiting for Fedora does not hold on to a platform thread, so there can be many workers (and so
+     * little waiting behind other resources' messages) at the cost of little more than their stacks. Virtual threads
+     * need Java 21 or later.
+     * </p>
+     *
+     * @param virtual true for virtual threads.
+     */
+    public void setVirtualThreads(boolean virtual) {
+        this.virtualThreads = virtual;
+    }
+
+    /**
+     * Listen for messages until interrupted.
+     */
     public void listen() {
-        try (JMSClient client = new JMSClient(factory)) {
-            LOG.info("Listening on queue {}", queueName);
-            client.listen(queueName, msg -> {
-                try {
-                    final FedoraMessage fm = FedoraMessageConverter.convert(msg);
-
-                    if (fm.getAction() == FedoraAction.CREATED || fm.getAction() == FedoraAction.MODIFIED) {
-                        final List<String> types = fm.getResourceTypes();
-
-                        if (types.contains(SUBMISSION_TYPE)) {
-                            LOG.debug("Handling Submission message for {} ", fm.getAction());
-                            aclPolicies.updateSubmission(fm.getResourceURI());
-                        } else if (types.contains(SUBMISSION_EVENT_TYPE)) {
-                            LOG.debug("Handling SubmissionEvent message for {} ", fm.getAction());
-                            aclPolicies.updateSubmissionEvent(fm.getResourceURI());
-                        } else {
-                            LOG.debug("Ignoring message with irrelevant types ", types);
-                        }
-                    } else {
-                        LOG.debug("Ignoring irelevant action {}", fm.getAction());
-                    }
+        final ListenerStats stats = ListenerStats.get();
+        final FedoraMessageParser parser = new FedoraMessageParser(asList(SUBMISSION_TYPE, SUBMISSION_EVENT_TYPE));
+        final String dlq = deadLetterQueue != null ? deadLetterQueue : queueName + ".DLQ";
+        final int max = maxConcurrency > 0 ? Math.min(maxConcurrency, workers) : workers;
+        final AdaptiveLimiter limiter = new AdaptiveLimiter(minConcurrency > 0 ? minConcurrency : max, max,
+                latencyTolerance);
+        stats.limiter = limiter;
 
+        try (JMSClient client = new JMSClient(factories, acknowledgeMode);
+                JMSClient deadLetters = new JMSClient(factories, Session.AUTO_ACKNOWLEDGE);
+                PartitionedExecutor executor = new PartitionedExecutor(workers, workerCapacity, virtualThreads
+                        ? VirtualThreads.factory("authz-worker-")
+                        : PartitionedExecutor.daemons("authz-worker"));
+                Redelivery redelivery = new Redelivery(maxAttempts, initialDelayMillis, maxDelayMillis, executor,
+                        m -> {
+                            stats.lagMillis = lag(m);
+                            limiter.run(() -> handle(m));
+                            acknowledge(m.getMessages());
+                        }, (m, e) -> deadLetter(deadLetters, dlq, m.getMessages(), e), stats);
+                Coalescer coalescer = new Coalescer(coalesceMillis, workers * workerCapacity, redelivery::submit,
+                        redelivery::offer, stats)) {
+            LOG.info("Listening on queue {} with {} workers on {} threads, handling at most {} messages at once",
+                    queueName, workers, virtualThreads ? "virtual" : "platform", max);
+            client.listen(queueName, selector, msg -> {
+                stats.received.increment();
+
+                final FedoraMessage fm;
+                try {
+                    fm = parser.parse(msg);
                 } catch (final Exception e) {
-                    throw new RuntimeException("Error listening for messages", e);
+                    LOG.error("Could not read message {}", msg, e);
+                    stats.deadLettered.increment();
+                    deadLetter(deadLetters, dlq, asList(msg), e);
+                    return;
+                }
+
+                if (fm == null) {
+                    stats.ignored.increment();
+                    acknowledge(asList(msg));
+                    return;
                 }
+
+                if (suppressEchoes && isEcho(fm)) {
+                    LOG.debug("Ignoring {} caused by our own ACL write", fm);
+                    stats.echoes.increment();
+                    acknowledge(fm.getMessages());
+                    return;
+                }
+
+                coalescer.accept(fm);
             });
 
             try {
@@ -83,4 +320,71 @@ public class AuthzListener {
         }
     }
 
+    /* Time since Fedora sent the oldest of the JMS messages a message was read from */
+    private long lag(FedoraMessage fm) {
+        long sent = Long.MAX_VALUE;
+        for (final Message message : fm.getMessages()) {
+            try {
+                if (message.getJMSTimestamp() > 0) {
+                    sent = Math.min(sent, message.getJMSTimestamp());
+                }
+            } catch (final JMSException e) {
+                LOG.debug("Could not read timestamp of {}", message, e);
+            }
+        }
+        return sent == Long.MAX_VALUE ? 0 : System.currentTimeMillis() - sent;
+    }
+
+    private void acknowledge(List<Message> messages) {
+        if (acknowledgeMode != ActiveMQSession.INDIVIDUAL_ACKNOWLEDGE) {
+            return;
+        }
+        for (final Message message : messages) {
+            try {
+                message.acknowledge();
+            } catch (final JMSException e) {
+                // The broker will deliver it again
+                LOG.debug("Could not acknowledge message {}", message, e);
+            }
+        }
+    }
+
+    private void deadLetter(JMSClient client, String dlq, List<Message> messages, Exception error) {
+        for (final Message message : messages) {
+            try {
+                client.forward(dlq, (TextMessage) message, singletonMap(ERROR_PROPERTY, String.valueOf(error)));
+            } catch (final Exception e) {
+                // Leave it unacknowledged, so it is not lost
+                LOG.error("Could not copy message {} to {}", message, dlq, e);
+                continue;
+            }
+            acknowledge(asList(message));
+        }
+    }
+
+    static boolean isEcho(FedoraMessage fm) {
+        return fm.getUserAgent() != null && fm.getUserAgent().startsWith(FedoraClientFactory.USER_AGENT);
+    }
+
+    void handle(FedoraMessage fm) {
+        if (fm.getAction() == FedoraAction.CREATED || fm.getAction() == FedoraAction.MODIFIED) {
+            final List<String> types = fm.getResourceTypes();
+
+            if (types.contains(SUBMISSION_TYPE)) {
+                LOG.debug("Handling Submission message for {} ", fm.getAction());
+                aclPolicies.updateSubmission(fm.getResourceURI());
+            } else if (types.contains(SUBMISSION_EVENT_TYPE)) {
+                LOG.debug("Handling SubmissionEvent message for {} ", fm.getAction());
+                aclPolicies.updateSubmissionEvent(fm.getResourceURI());
+            } else {
+                LOG.debug("Ignoring message with irrelevant types ", types);
+            }
+        } else if (fm.getAction() == FedoraAction.DELETED) {
+            LOG.debug("Forgetting the ACL of deleted resource {}", fm.getResourceURI());
+            aclPolicies.resourceDeleted(fm.getResourceURI());
+        } else {
+            LOG.debug("Ignoring irelevant action {}", fm.getAction());
+        }
+    }
+
 }
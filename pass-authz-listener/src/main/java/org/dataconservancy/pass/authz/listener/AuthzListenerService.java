@@ -21,9 +21,16 @@ import static org.dataconservancy.pass.authz.ConfigUtil.getValue;
 import static org.dataconservancy.pass.authz.LogUtil.adjustLogLevels;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import javax.jms.ConnectionFactory;
+import javax.jms.Session;
 
 import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.ActiveMQSession;
 import org.dataconservancy.pass.authz.acl.ACLManager;
 import org.dataconservancy.pass.authz.acl.PolicyEngine;
 import org.dataconservancy.pass.client.PassClient;
@@ -52,20 +59,117 @@ public class AuthzListenerService {
         policies.setBackendRole(ofNullable(getValue("pass.backend.role")).map(URI::create).orElse(null));
         policies.setAdminRole(ofNullable(getValue("pass.grantadmin.role")).map(URI::create).orElse(null));
         policies.setSubmitterRole(ofNullable(getValue("pass.submitter.role")).map(URI::create).orElse(null));
+        policies.setAsync(Boolean.valueOf(ofNullable(getValue("pass.authz.acl.async")).orElse("true")));
 
-        final AuthzListener listener = new AuthzListener(buildConnectionFactory(), policies, queue);
+        if (Boolean.valueOf(ofNullable(getValue("pass.authz.acl.warmup")).orElse("false"))) {
+            // Learning ACL locations is only an optimization, so don't hold up listening for messages
+            final Thread warmup = new Thread(() -> {
+                try {
+                    manager.warmUp();
+                } catch (final Exception e) {
+                    LOG.warn("Could not learn ACL locations", e);
+                }
+            }, "acl-warmup");
+            warmup.setDaemon(true);
+            warmup.start();
+        }
+
+        final long verifyMinutes = Long.parseLong(ofNullable(getValue("pass.authz.acl.verify.minutes")).orElse("0"));
+        if (verifyMinutes > 0) {
+            final ScheduledExecutorService verifier = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread t = new Thread(r, "acl-verifier");
+                t.setDaemon(true);
+                return t;
+            });
+            verifier.scheduleWithFixedDelay(() -> {
+                try {
+                    manager.verifyAuthorizations();
+                } catch (final Exception e) {
+                    LOG.warn("Could not verify remembered ACL authorizations", e);
+                }
+            }, verifyMinutes, verifyMinutes, TimeUnit.MINUTES);
+        }
+
+        final AuthzListener listener = new AuthzListener(buildConnectionFactories(), policies, queue);
+        listener.setWorkers(Integer.parseInt(ofNullable(getValue("pass.authz.workers")).orElse("4")));
+        listener.setWorkerCapacity(Integer.parseInt(ofNullable(getValue("pass.authz.worker.capacity")).orElse("100")));
+        listener.setCoalesceMillis(Long.parseLong(ofNullable(getValue("pass.authz.coalesce.millis")).orElse("500")));
+        listener.setSuppressEchoes(Boolean.valueOf(ofNullable(getValue("pass.authz.suppress.echoes")).orElse("true")));
+        listener.setSelector(getValue("pass.authz.selector"));
+        listener.setRedelivery(Integer.parseInt(ofNullable(getValue("pass.authz.retry.attempts")).orElse("5")),
+                Long.parseLong(ofNullable(getValue("pass.authz.retry.delay.ms")).orElse("1000")),
+                Long.parseLong(ofNullable(getValue("pass.authz.retry.delay.max.ms")).orElse("60000")));
+        listener.setDeadLetterQueue(getValue("pass.authz.dlq"));
+        listener.setAdaptiveConcurrency(Integer.parseInt(ofNullable(getValue("pass.authz.concurrency.min")).orElse(
+                "1")), Double.parseDouble(ofNullable(getValue("pass.authz.concurrency.tolerance")).orElse("2")));
+        listener.setAcknowledgeMode(acknowledgeMode(ofNullable(getValue("pass.authz.ack")).orElse("individual")));
+        listener.setMaxConcurrency(Integer.parseInt(ofNullable(getValue("pass.authz.concurrency.max")).orElse("0")));
+        listener.setVirtualThreads(virtualThreads(ofNullable(getValue("pass.authz.threads")).orElse("platform")));
 
         LOG.info("Starting listener...");
         listener.listen();
     }
 
-    private static ConnectionFactory buildConnectionFactory() {
-        final ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory();
-        factory.setBrokerURL(ofNullable(getValue("jms.brokerUrl")).orElse("tcp://localhost:61616"));
-        factory.setUserName(getValue("jms.username"));
-        factory.setPassword(getValue("jms.password"));
+    static int acknowledgeMode(String mode) {
+        switch (mode.trim().toLowerCase()) {
+        case "individual":
+            return ActiveMQSession.INDIVIDUAL_ACKNOWLEDGE;
+        case "auto":
+            return Session.AUTO_ACKNOWLEDGE;
+        case "dups_ok":
+            return Session.DUPS_OK_ACKNOWLEDGE;
+        default:
+            throw new IllegalArgumentException("Unknown acknowledge mode " + mode +
+                    "; expected individual, auto, or dups_ok");
+        }
+    }
+
+    static boolean virtualThreads(String threads) {
+        switch (threads.trim().toLowerCase()) {
+        case "platform":
+            return false;
+        case "virtual":
+            return true;
+        default:
+            throw new IllegalArgumentException("Unknown kind of threads " + threads +
+                    "; expected platform or virtual");
+        }
+    }
+
+    private static List<ConnectionFactory> buildConnectionFactories() {
+        final List<ConnectionFactory> factories = new ArrayList<>();
+        for (final String url : brokerUrls(ofNullable(getValue("jms.brokerUrl")).orElse("tcp://localhost:61616"))) {
+            final ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory();
+            factory.setBrokerURL(url);
+            factory.setUserName(getValue("jms.username"));
+            factory.setPassword(getValue("jms.password"));
+            ofNullable(getValue("jms.prefetch")).map(Integer::parseInt).ifPresent(prefetch -> factory
+                    .getPrefetchPolicy().setQueuePrefetch(prefetch));
+            factories.add(factory);
+        }
+
+        return factories;
+    }
 
-        return factory;
+    /* Split a comma separated list of broker URLs, leaving alone commas within a URL's parentheses */
+    static List<String> brokerUrls(String urls) {
+        final List<String> split = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < urls.length(); i++) {
+            final char c = urls.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                split.add(urls.substring(start, i).trim());
+                start = i + 1;
+            }
+        }
+        split.add(urls.substring(start).trim());
+        split.removeIf(String::isEmpty);
+        return split;
     }
 
 }
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.listener;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.net.URI;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collapses bursts of messages about the same resource into one.
+ * <p>
+ * The first message about a resource is held for a fixed window; any further messages about that resource which
+ * arrive during the window are merged into it, and the merged message is passed on when the window ends. A message
+ * is therefore delayed by at most the window. When merging, deletion beats creation, and creation beats
+ * modification. At most {@code maxPending} resources are held at once; beyond that, accepting a message blocks
+ * until the oldest window ends.
+ * </p>
+ * <p>
+ * When a window ends, the message is only offered downstream, so that a busy downstream never blocks the timer
+ * that ends every other window. If it is refused, the message is held (and merged into) a little longer, and
+ * offered again. Since it still takes up room, it is whoever accepts messages, not the timer, that ends up waiting.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+class Coalescer implements AutoCloseable {
+
+    static final Logger LOG = LoggerFactory.getLogger(Coalescer.class);
+
+    /* How long to go on holding a message that downstream had no room for, before offering it again */
+    static final long REOFFER_MILLIS = 10;
+
+    private final long windowMillis;
+
+    private final Consumer<FedoraMessage> downstream;
+
+    private final Predicate<FedoraMessage> offer;
+
+    private final ListenerStats stats;
+
+    private final Map<URI, FedoraMessage> pending = new ConcurrentHashMap<>();
+
+    private final Semaphore room;
+
+    private final ScheduledExecutorService timer;
+
+    /**
+     * @param windowMillis How long to hold the first message about a resource; 0 passes every message on at once.
+     * @param maxPending Most resources to hold messages about at once.
+     * @param downstream Takes a message, blocking if need be. Only used when not coalescing, or when closing.
+     * @param offer Takes a message if there is room for it now, returning false otherwise.
+     * @param stats Listener stats.
+     */
+    Coalescer(long windowMillis, int maxPending, Consumer<FedoraMessage> downstream, Predicate<FedoraMessage> offer,
+            ListenerStats stats) {
+        this.windowMillis = windowMillis;
+        this.downstream = downstream;
+        this.offer = offer;
+        this.stats = stats;
+        this.room = new Semaphore(maxPending);
+        this.timer = windowMillis > 0 ? Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread t = new Thread(r, "authz-coalescer");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+    }
+
+    /**
+     * Accept a message, passing it on now if coalescing is disabled, or when its window ends.
+     *
+     * @param fm The message.
+     */
+    void accept(FedoraMessage fm) {
+        if (timer == null) {
+            dispatch(fm);
+            return;
+        }
+
+        final URI resource = fm.getResourceURI();
+        if (pending.computeIfPresent(resource, (uri, held) -> merge(held, fm)) != null) {
+            stats.coalesced.increment();
+            return;
+        }
+
+        try {
+            room.acquire();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting to hold message", e);
+        }
+
+        pending.put(resource, fm);
+        timer.schedule(() -> flush(resource), windowMillis, MILLISECONDS);
+    }
+
+    private void flush(URI resource) {
+        try {
+            // Atomic with merging in accept(), so nothing is merged into a message once it has been passed on
+            final FedoraMessage refused = pending.computeIfPresent(resource, (uri, fm) -> offer(fm) ? null : fm);
+            if (refused != null) {
+                try {
+                    timer.schedule(() -> flush(resource), REOFFER_MILLIS, MILLISECONDS);
+                    return;
+                } catch (final RejectedExecutionException e) {
+                    // Closing, so there are no other windows left to hold up
+                    pending.remove(resource);
+                    dispatch(refused);
+                }
+            }
+        } catch (final Exception e) {
+            LOG.warn("Could not pass on message for {}", resource, e);
+            pending.remove(resource);
+        }
+        room.release();
+    }
+
+    private boolean offer(FedoraMessage fm) {
+        if (offer.test(fm)) {
+            stats.dispatched.increment();
+            return true;
+        }
+        return false;
+    }
+
+    private void dispatch(FedoraMessage fm) {
+        stats.dispatched.increment();
+        downstream.accept(fm);
+    }
+
+    /**
+     * Merge a later message about a resource into an earlier one.
+     *
+     * @param earlier The earlier message.
+     * @param later The later message.
+     * @return A message with the strongest of their actions, and all of their types and JMS messages.
+     */
+    static FedoraMessage merge(FedoraMessage earlier, FedoraMessage later) {
+        final Set<String> types = new LinkedHashSet<>(earlier.getResourceTypes());
+        types.addAll(later.getResourceTypes());
+
+        final FedoraMessage merged = new FedoraMessage();
+        merged.setResourceURI(earlier.getResourceURI().toString());
+        merged.setResourceTypes(types.toArray(new String[0]));
+        merged.setAction(rank(later.getAction()) > rank(earlier.getAction()) ? later.getAction() : earlier
+                .getAction());
+        merged.getMessages().addAll(earlier.getMessages());
+        merged.getMessages().addAll(later.getMessages());
+
+        return merged;
+    }
+
+    private static int rank(FedoraAction action) {
+        if (action == null) {
+            return 0;
+        }
+
+        switch (action) {
+        case DELETED:
+            return 3;
+        case CREATED:
+            return 2;
+        case MODIFIED:
+            return 1;
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * Pass on every held message, then stop.
+     */
+    @Override
+    public void close() {
+        if (timer == null) {
+            return;
+        }
+
+        timer.shutdown();
+        try {
+            timer.awaitTermination(windowMillis + 30000, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        pending.keySet().forEach(this::flush);
+    }
+}
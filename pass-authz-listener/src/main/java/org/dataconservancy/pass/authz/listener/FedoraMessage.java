@@ -17,8 +17,10 @@
 package org.dataconservancy.pass.authz.listener;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import javax.jms.Message;
 
 /**
  * Message about an Resource in Fedora upon which some action has been performed.
@@ -33,6 +35,10 @@ public class FedoraMessage {
 
     private FedoraAction action;
 
+    private String userAgent;
+
+    private final List<Message> messages = new ArrayList<>(1);
+
     public URI getResourceURI() {
         return URI.create(res_uri);
     }
@@ -57,6 +63,28 @@ public class FedoraMessage {
         this.action = action;
     }
 
+    /**
+     * Get the user agent of the request that caused the message.
+     *
+     * @return the user agent, or null if not known.
+     */
+    public String getUserAgent() {
+        return userAgent;
+    }
+
+    public void setUserAgent(String userAgent) {
+        this.userAgent = userAgent;
+    }
+
+    /**
+     * Get the JMS messages this message was read from, to acknowledge once it has been handled.
+     *
+     * @return the JMS messages; more than one if messages have been merged.
+     */
+    public List<Message> getMessages() {
+        return messages;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
@@ -64,6 +92,7 @@ public class FedoraMessage {
         result = prime * result + ((action == null) ? 0 : action.hashCode());
         result = prime * result + Arrays.hashCode(res_types);
         result = prime * result + ((res_uri == null) ? 0 : res_uri.hashCode());
+        result = prime * result + ((userAgent == null) ? 0 : userAgent.hashCode());
         return result;
     }
 
@@ -92,6 +121,13 @@ public class FedoraMessage {
         } else if (!res_uri.equals(other.res_uri)) {
             return false;
         }
+        if (userAgent == null) {
+            if (other.userAgent != null) {
+                return false;
+            }
+        } else if (!userAgent.equals(other.userAgent)) {
+            return false;
+        }
         return true;
     }
 
@@ -35,8 +35,13 @@ public class FedoraMessageConverter {
     private static final String MODIFICATION = "http://fedora.info/definitions/v4/event#ResourceModification";
     private static final String CREATION = "http://fedora.info/definitions/v4/event#ResourceCreation";
 
+    // Header in which Fedora puts the user agent of the request that caused the message
+    static final String USER_AGENT = "org.fcrepo.jms.userAgent";
+
     public static FedoraMessage convert(Message m) throws JMSException {
-        return convert(TextMessage.class.cast(m).getText());
+        final FedoraMessage result = convert(TextMessage.class.cast(m).getText());
+        result.setUserAgent(m.getStringProperty(USER_AGENT));
+        return result;
     }
 
     private static boolean contains(String[] array, String s) {
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.listener;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.TextMessage;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Reads the parts of a Fedora message that the listener needs, without building a document from it.
+ * <p>
+ * Only {@code id}, {@code type}, and the {@code type} of {@code wasGeneratedBy} are read; everything else is
+ * skipped. A message which is neither about a resource of one of the relevant types nor about a deletion is rejected
+ * as soon as both have been read, without reading the rest of it. A JMS message whose Fedora headers already show
+ * that it is of no interest is rejected without reading its text at all.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+class FedoraMessageParser {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private static final String DELETION = "http://fedora.info/definitions/v4/event#ResourceDeletion";
+
+    private static final String MODIFICATION = "http://fedora.info/definitions/v4/event#ResourceModification";
+
+    private static final String CREATION = "http://fedora.info/definitions/v4/event#ResourceCreation";
+
+    // Headers in which Fedora lists the types of the resource, and of the event, separated by commas
+    static final String RESOURCE_TYPE = "org.fcrepo.jms.resourceType";
+
+    static final String EVENT_TYPE = "org.fcrepo.jms.eventType";
+
+    private final Set<String> relevantTypes;
+
+    /**
+     * @param relevantTypes Resource types whose messages are of interest.
+     */
+    FedoraMessageParser(Collection<String> relevantTypes) {
+        this.relevantTypes = new HashSet<>(relevantTypes);
+    }
+
+    /**
+     * Parse a JMS message from Fedora.
+     *
+     * @param m The message.
+     * @return The Fedora message, or null if it is not of interest.
+     * @throws JMSException if the message cannot be read.
+     * @throws IOException if the message is not a Fedora message.
+     */
+    FedoraMessage parse(Message m) throws JMSException, IOException {
+        final String resourceTypes = m.getStringProperty(RESOURCE_TYPE);
+        final String eventTypes = m.getStringProperty(EVENT_TYPE);
+        if (resourceTypes != null && eventTypes != null && !listed(eventTypes, DELETION) && relevantTypes.stream()
+                .noneMatch(type -> listed(resourceTypes, type))) {
+            return null;
+        }
+
+        final FedoraMessage result = parse(TextMessage.class.cast(m).getText());
+        if (result != null) {
+            result.setUserAgent(m.getStringProperty(FedoraMessageConverter.USER_AGENT));
+            result.getMessages().add(m);
+        }
+        return result;
+    }
+
+    /**
+     * Parse the JSON text of a Fedora message.
+     *
+     * @param text The text.
+     * @return The Fedora message, or null if it is not of interest.
+     * @throws IOException if the text is not a Fedora message.
+     */
+    FedoraMessage parse(String text) throws IOException {
+        String id = null;
+        List<String> types = null;
+        boolean relevant = false;
+
+        // Action flags; one event may be all three
+        boolean created = false;
+        boolean deleted = false;
+        boolean modified = false;
+        boolean sawActions = false;
+
+        try (JsonParser json = JSON.createParser(text)) {
+            if (json.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Fedora message is not a JSON object");
+            }
+
+            while (json.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = json.getCurrentName();
+                json.nextToken();
+
+                if ("id".equals(field)) {
+                    id = json.getValueAsString();
+                } else if ("type".equals(field)) {
+                    types = strings(json);
+                    for (final String type : types) {
+                        relevant |= relevantTypes.contains(type);
+                    }
+                } else if ("wasGeneratedBy".equals(field) && json.currentToken() == JsonToken.START_OBJECT) {
+                    while (json.nextToken() == JsonToken.FIELD_NAME) {
+                        final String genField = json.getCurrentName();
+                        json.nextToken();
+                        if ("type".equals(genField)) {
+                            for (final String action : strings(json)) {
+                                created |= CREATION.equals(action);
+                                deleted |= DELETION.equals(action);
+                                modified |= MODIFICATION.equals(action);
+                            }
+                            sawActions = true;
+                        } else {
+                            json.skipChildren();
+                        }
+                    }
+                } else {
+                    json.skipChildren();
+                }
+
+                if (types != null && sawActions && !relevant && !deleted) {
+                    return null;
+                }
+            }
+        }
+
+        if (id == null) {
+            throw new IOException("Fedora message has no id");
+        }
+
+        final FedoraMessage result = new FedoraMessage();
+        result.setResourceURI(id);
+        result.setResourceTypes(types == null ? new String[0] : types.toArray(new String[types.size()]));
+
+        // May have MODIFIED with both CREATION and DELETION
+        // Give precedence to CREATION and DELETION
+        if (created) {
+            result.setAction(FedoraAction.CREATED);
+        } else if (deleted) {
+            result.setAction(FedoraAction.DELETED);
+        } else if (modified) {
+            result.setAction(FedoraAction.MODIFIED);
+        }
+
+        return result;
+    }
+
+    /* Whether a comma-separated header lists a value */
+    private static boolean listed(String header, String value) {
+        for (final String listed : header.split(",")) {
+            if (listed.trim().equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* Read a string, or an array of strings, at the current token */
+    private static List<String> strings(JsonParser json) throws IOException {
+        final List<String> values = new ArrayList<>(4);
+        if (json.currentToken() == JsonToken.START_ARRAY) {
+            while (json.nextToken() != JsonToken.END_ARRAY) {
+                if (json.currentToken() == JsonToken.VALUE_STRING) {
+                    values.add(json.getText());
+                } else {
+                    json.skipChildren();
+                }
+            }
+        } else if (json.currentToken() == JsonToken.VALUE_STRING) {
+            values.add(json.getText());
+        } else {
+            json.skipChildren();
+        }
+        return values;
+    }
+}
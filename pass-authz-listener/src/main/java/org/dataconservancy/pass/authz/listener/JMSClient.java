@@ -16,9 +16,18 @@
 
 package org.dataconservancy.pass.authz.listener;
 
+import static java.util.Collections.singletonList;
+
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Enumeration;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 import javax.jms.Connection;
@@ -29,35 +38,88 @@ import javax.jms.Message;
 import javax.jms.MessageListener;
 import javax.jms.MessageProducer;
 import javax.jms.Session;
+import javax.jms.TextMessage;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Sends and receives JMS messages, reconnecting whenever the connection is lost.
+ * <p>
+ * Connecting and reconnecting happen on a thread of their own. When the connection is lost, the client reconnects at
+ * once, and then after a delay that doubles with every failed attempt (with random jitter, so that many clients do
+ * not retry in step), up to {@link #MAX_RECONNECT_DELAY_MILLIS}. Given several connection factories (e.g. one for
+ * each broker), each attempt fails over to the next factory, starting from the one that last worked. On a new
+ * connection, consumers are created again on the new session. Sending waits until there is a connection.
+ * </p>
+ *
  * @author apb@jhu.edu
  */
 public class JMSClient implements AutoCloseable {
 
-    private Connection conn;
+    /* Delay after the first failed attempt to connect */
+    static final long RECONNECT_DELAY_MILLIS = 100;
+
+    static final long MAX_RECONNECT_DELAY_MILLIS = 30000;
+
+    private volatile Connection conn;
 
     private volatile boolean connected = false;
 
+    private volatile boolean closed = false;
+
+    /* Released once connected; replaced when the connection is lost */
+    private volatile CountDownLatch ready = new CountDownLatch(1);
+
     private static final Logger LOG = LoggerFactory.getLogger(JMSClient.class);
 
-    private ConnectionFactory connectionFactory;
+    private List<ConnectionFactory> connectionFactories;
 
-    private final List<Consumer<Session>> sessionListeners = Collections.synchronizedList(new ArrayList<>());
+    /* Index of the factory to try next, and the number of failed attempts since the last connection */
+    private int next;
 
-    private MessageProducer producer;
+    private int attempts;
 
-    private Session session;
+    private ScheduledExecutorService reconnector;
+
+    private final List<Consumer<Session>> sessionListeners = new ArrayList<>();
+
+    private volatile MessageProducer producer;
+
+    private volatile Session session;
+
+    private int acknowledgeMode = Session.AUTO_ACKNOWLEDGE;
 
     public void setConnectionFactory(ConnectionFactory factory) {
-        this.connectionFactory = factory;
+        this.connectionFactories = singletonList(factory);
     }
 
     public JMSClient(ConnectionFactory factory) {
-        this.connectionFactory = factory;
+        this(singletonList(factory), Session.AUTO_ACKNOWLEDGE);
+    }
+
+    /**
+     * Create a client whose session acknowledges messages in the given mode.
+     *
+     * @param factory Connection factory.
+     * @param acknowledgeMode Session acknowledge mode, e.g. {@link Session#CLIENT_ACKNOWLEDGE}.
+     */
+    public JMSClient(ConnectionFactory factory, int acknowledgeMode) {
+        this(singletonList(factory), acknowledgeMode);
+    }
+
+    /**
+     * Create a client that fails over between connection factories.
+     *
+     * @param factories Connection factories, in order of preference.
+     * @param acknowledgeMode Session acknowledge mode, e.g. {@link Session#CLIENT_ACKNOWLEDGE}.
+     */
+    public JMSClient(List<? extends ConnectionFactory> factories, int acknowledgeMode) {
+        if (factories.isEmpty()) {
+            throw new IllegalArgumentException("Need at least one connection factory");
+        }
+        this.connectionFactories = new ArrayList<>(factories);
+        this.acknowledgeMode = acknowledgeMode;
         init();
     }
 
@@ -65,34 +127,60 @@ public class JMSClient implements AutoCloseable {
 
     }
 
+    /**
+     * Connect, waiting until connected.
+     */
     public void init() {
 
         if (this.producer == null) {
             addSessionListener(s -> {
                 try {
-                    this.producer = session.createProducer(null);
+                    this.producer = s.createProducer(null);
                 } catch (final JMSException e) {
                     throw new JmsRuntimeException(e);
                 }
             });
         }
 
-        connect();
+        reconnector = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread t = new Thread(r, "jms-reconnect");
+            t.setDaemon(true);
+            return t;
+        });
+        reconnector.execute(this::connect);
+        awaitConnected();
     }
 
     private void addSessionListener(Consumer<Session> listener) {
-        this.sessionListeners.add(listener);
-        if (connected) {
-            listener.accept(session);
+        synchronized (sessionListeners) {
+            this.sessionListeners.add(listener);
+            if (connected) {
+                listener.accept(session);
+            }
         }
     }
 
     public void listen(String queue, MessageListener listener) {
+        listen(queue, null, listener);
+    }
+
+    /**
+     * Listen for the messages on a queue that match a selector.
+     * <p>
+     * The broker does not deliver messages that do not match the selector. The consumer is created again whenever
+     * the client reconnects.
+     * </p>
+     *
+     * @param queue Queue name.
+     * @param selector JMS message selector, or null for all messages.
+     * @param listener Listener for matching messages.
+     */
+    public void listen(String queue, String selector, MessageListener listener) {
         this.addSessionListener(s -> {
             try {
                 final Destination dest = s.createQueue(queue);
-                s.createConsumer(dest).setMessageListener(listener);
-                LOG.info("Listening on " + dest);
+                s.createConsumer(dest, selector).setMessageListener(listener);
+                LOG.info("Listening on {}{}", dest, selector != null ? " for messages matching " + selector : "");
             } catch (final JMSException e) {
                 throw new JmsRuntimeException(e);
             }
@@ -101,29 +189,23 @@ public class JMSClient implements AutoCloseable {
 
     public Supplier<Session> getSessionSupplier() {
         return () -> {
-            while (!connected) {
-                try {
-                    Thread.sleep(1000);
-                } catch (final InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    throw new RuntimeException("Interrupted", e);
-                }
-            }
-
+            awaitConnected();
             return session;
         };
     }
 
+    /**
+     * Whether the client is connected.
+     *
+     * @return true if connected.
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
     public synchronized void write(String queue, Message message) {
         LOG.debug("Sending message to queue {}", queue);
-        while (!connected) {
-            try {
-                Thread.sleep(1000);
-            } catch (final InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new RuntimeException("Interrupted", e);
-            }
-        }
+        awaitConnected();
 
         try {
             producer.send(session.createQueue(queue), message);
@@ -132,62 +214,158 @@ public class JMSClient implements AutoCloseable {
         }
     }
 
-    private void connect() {
-        while (!connected) {
-            try {
-                conn = connectionFactory.createConnection();
-                conn.start();
+    /**
+     * Send a copy of a text message, with its properties and some more, to a queue.
+     *
+     * @param queue Queue name.
+     * @param message The message to copy.
+     * @param properties Properties to add to the copy.
+     */
+    public synchronized void forward(String queue, TextMessage message, Map<String, Object> properties) {
+        final TextMessage copy;
+        try {
+            getSessionSupplier().get();
+            copy = session.createTextMessage(message.getText());
+            for (final Enumeration<?> names = message.getPropertyNames(); names.hasMoreElements();) {
+                final String name = (String) names.nextElement();
+                // JMSX properties are set by the provider
+                if (!name.startsWith("JMSX")) {
+                    copy.setObjectProperty(name, message.getObjectProperty(name));
+                }
+            }
+            for (final Map.Entry<String, Object> property : properties.entrySet()) {
+                copy.setObjectProperty(property.getKey(), property.getValue());
+            }
+        } catch (final JMSException e) {
+            throw new RuntimeException("Error copying message for queue " + queue, e);
+        }
 
-                session = conn.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        write(queue, copy);
+    }
 
-                sessionListeners.forEach(s -> s.accept(session));
+    private void awaitConnected() {
+        while (!connected) {
+            if (closed) {
+                throw new IllegalStateException("JMS client is closed");
+            }
+            try {
+                ready.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted", e);
+            }
+        }
+    }
 
-                conn.setExceptionListener(e -> {
-                    if (connected) {
-                        if (LOG.isDebugEnabled()) {
-                            LOG.debug("Connection disrupted", e);
-                        } else {
-                            LOG.info("Connection disrupted", e.getMessage());
-                        }
-                        close();
-                        connect();
-                    }
+    /* Runs on the reconnector thread */
+    private void connect() {
+        if (closed) {
+            return;
+        }
 
-                });
+        final ConnectionFactory factory = connectionFactories.get(next);
+        Connection c = null;
+        try {
+            c = factory.createConnection();
+            final Connection connection = c;
+            c.setExceptionListener(e -> disconnected(connection, e));
+            c.start();
+
+            final Session s = c.createSession(false, acknowledgeMode);
+            synchronized (sessionListeners) {
+                conn = c;
+                session = s;
+                sessionListeners.forEach(l -> l.accept(s));
                 connected = true;
-            } catch (final JMSException e) {
-                try {
-                    if (conn != null) {
-                        conn.close();
-                    }
-                } catch (final JMSException j) {
-                    LOG.warn("Error closing connection, j");
+            }
+            attempts = 0;
+            ready.countDown();
+            LOG.info("Connected to JMS broker");
+        } catch (final JMSException | RuntimeException e) {
+            closeQuietly(c);
+            next = (next + 1) % connectionFactories.size();
+            attempts++;
+
+            // Fail over to the next factory at once, and back off once every factory has failed
+            final int rounds = attempts / connectionFactories.size();
+            final long delay = attempts % connectionFactories.size() == 0 ? reconnectDelay(rounds - 1) : 0;
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("JMS error, re-trying in {} ms", delay, e);
+            } else {
+                LOG.info("JMS error: {}, re-connecting in {} ms", e.getMessage(), delay);
+            }
+            try {
+                reconnector.schedule(this::connect, delay, TimeUnit.MILLISECONDS);
+            } catch (final RejectedExecutionException r) {
+                LOG.debug("Not re-connecting, client is closed");
+            }
+        }
+    }
+
+    /* Called by the provider, so hand over to the reconnector thread rather than reconnect here */
+    private void disconnected(Connection connection, JMSException e) {
+        try {
+            reconnector.execute(() -> {
+                if (closed || !connected || connection != conn) {
+                    // Already reconnected
+                    return;
                 }
                 if (LOG.isDebugEnabled()) {
-                    LOG.debug("JMS error, re-trying", e);
+                    LOG.debug("Connection disrupted", e);
                 } else {
-                    LOG.info("JMS error: {}, re-connecting", e.getMessage());
-                }
-                try {
-                    Thread.sleep(2000);
-                } catch (final InterruptedException i) {
-                    Thread.currentThread().interrupt();
+                    LOG.info("Connection disrupted: {}", e.getMessage());
                 }
+                ready = new CountDownLatch(1);
+                connected = false;
+                closeQuietly(connection);
+                connect();
+            });
+        } catch (final RejectedExecutionException r) {
+            LOG.debug("Ignoring connection error, client is closed", e);
+        }
+    }
+
+    long reconnectDelay(int attempt) {
+        final long delay = Math.min(MAX_RECONNECT_DELAY_MILLIS, RECONNECT_DELAY_MILLIS << Math.min(attempt, 20));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private static void closeQuietly(Connection c) {
+        if (c != null) {
+            try {
+                c.close();
+            } catch (final JMSException j) {
+                LOG.debug("Error closing connection", j);
             }
         }
     }
 
     @Override
     public void close() {
+        LOG.info("Closing ActiveMQ Sessions");
+        closed = true;
+        if (reconnector != null) {
+            reconnector.shutdownNow();
+            try {
+                reconnector.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        connected = false;
+        ready.countDown();
+
         try {
-            LOG.info("Closing ActiveMQ Sessions");
-            connected = false;
-            producer.close();
-            session.close();
-            conn.close();
+            if (producer != null) {
+                producer.close();
+            }
+            if (session != null) {
+                session.close();
+            }
         } catch (final JMSException j) {
             LOG.debug("Exception while closing connection", j);
         }
+        closeQuietly(conn);
     }
 
     @SuppressWarnings("serial")
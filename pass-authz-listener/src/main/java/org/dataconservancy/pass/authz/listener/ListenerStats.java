@@ -0,0 +1,133 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.listener;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counts of the messages seen by the listener.
+ * <p>
+ * The listener's counts are published via JMX as {@code org.dataconservancy.pass.authz:type=Listener}.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+public class ListenerStats implements ListenerStatsMBean {
+
+    static final Logger LOG = LoggerFactory.getLogger(ListenerStats.class);
+
+    private static ListenerStats registered;
+
+    final LongAdder received = new LongAdder();
+
+    final LongAdder ignored = new LongAdder();
+
+    final LongAdder echoes = new LongAdder();
+
+    final LongAdder coalesced = new LongAdder();
+
+    final LongAdder dispatched = new LongAdder();
+
+    final LongAdder retried = new LongAdder();
+
+    final LongAdder deadLettered = new LongAdder();
+
+    volatile AdaptiveLimiter limiter;
+
+    volatile long lagMillis;
+
+    /**
+     * Get the listener's counts, registering them with JMX the first time.
+     *
+     * @return The counts.
+     */
+    public static synchronized ListenerStats get() {
+        if (registered == null) {
+            registered = new ListenerStats();
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(registered, new ObjectName(
+                        "org.dataconservancy.pass.authz:type=Listener"));
+            } catch (final Exception e) {
+                LOG.debug("Could not register listener stats with JMX", e);
+            }
+        }
+        return registered;
+    }
+
+    @Override
+    public long getReceived() {
+        return received.sum();
+    }
+
+    @Override
+    public long getIgnored() {
+        return ignored.sum();
+    }
+
+    @Override
+    public long getEchoes() {
+        return echoes.sum();
+    }
+
+    @Override
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    @Override
+    public long getDispatched() {
+        return dispatched.sum();
+    }
+
+    @Override
+    public long getRetried() {
+        return retried.sum();
+    }
+
+    @Override
+    public long getDeadLettered() {
+        return deadLettered.sum();
+    }
+
+    @Override
+    public double getCoalescingRatio() {
+        final long n = dispatched.sum();
+        return n == 0 ? 1 : (double) (received.sum() - ignored.sum() - echoes.sum()) / n;
+    }
+
+    @Override
+    public int getConcurrencyLimit() {
+        final AdaptiveLimiter l = limiter;
+        return l != null ? l.getLimit() : 0;
+    }
+
+    @Override
+    public int getInFlight() {
+        final AdaptiveLimiter l = limiter;
+        return l != null ? l.getInFlight() : 0;
+    }
+
+    @Override
+    public long getLagMillis() {
+        return lagMillis;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.listener;
+
+/**
+ * JMX view of {@link ListenerStats}.
+ *
+ * @author apb@jhu.edu
+ */
+public interface ListenerStatsMBean {
+
+    /**
+     * @return number of Fedora messages received.
+     */
+    long getReceived();
+
+    /**
+     * @return number of messages about resources of no interest to the listener, which were ignored.
+     */
+    long getIgnored();
+
+    /**
+     * @return number of messages about changes made by the listener's own ACL writes, which were ignored.
+     */
+    long getEchoes();
+
+    /**
+     * @return number of messages folded into an earlier message about the same resource.
+     */
+    long getCoalesced();
+
+    /**
+     * @return number of messages handed to workers, after coalescing.
+     */
+    long getDispatched();
+
+    /**
+     * @return number of failed attempts at handling a message that were retried.
+     */
+    long getRetried();
+
+    /**
+     * @return number of messages copied to the dead letter queue.
+     */
+    long getDeadLettered();
+
+    /**
+     * @return messages received, other than those ignored and echoes, per message dispatched; 1 when nothing has
+     *         been coalesced.
+     */
+    double getCoalescingRatio();
+
+    /**
+     * @return number of messages that may be handled at once, as currently adapted to Fedora's response times.
+     */
+    int getConcurrencyLimit();
+
+    /**
+     * @return number of messages being handled now.
+     */
+    int getInFlight();
+
+    /**
+     * @return time between Fedora sending the most recently handled message and the listener handling it, in
+     *         milliseconds.
+     */
+    long getLagMillis();
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.listener;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs tasks on a fixed number of single-threaded partitions, chosen by the hash of a key.
+ * <p>
+ * Tasks with the same key always run on the same partition, so they run one at a time in the order they were
+ * submitted, while tasks with different keys may run in parallel. Each partition has a bounded queue; submitting
+ * to a full partition blocks until it has room, while offering to a full partition fails at once.
+ * </p>
+ * <p>
+ * A partition's thread may be a virtual thread, so that there can be many more partitions than there would be
+ * platform threads; tasks that block then cost little more than their stack.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+class PartitionedExecutor implements AutoCloseable {
+
+    static final Logger LOG = LoggerFactory.getLogger(PartitionedExecutor.class);
+
+    private final ThreadPoolExecutor[] partitions;
+
+    PartitionedExecutor(int partitions, int capacity, String name) {
+        this(partitions, capacity, daemons(name));
+    }
+
+    /**
+     * @param partitions Number of partitions.
+     * @param capacity Number of tasks each partition may have waiting.
+     * @param threads Creates the thread of each partition.
+     */
+    PartitionedExecutor(int partitions, int capacity, ThreadFactory threads) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("Need at least one partition, got " + partitions);
+        }
+        this.partitions = new ThreadPoolExecutor[partitions];
+
+        for (int i = 0; i < partitions; i++) {
+            this.partitions[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(capacity), threads, (r, executor) -> {
+                        if (executor.isShutdown()) {
+                            throw new RejectedExecutionException("Executor has been shut down");
+                        }
+                        try {
+                            executor.getQueue().put(r);
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new RejectedExecutionException("Interrupted", e);
+                        }
+                    });
+            // Started now, so that offered tasks, which go straight on the queue, have a thread to take them
+            this.partitions[i].prestartAllCoreThreads();
+        }
+    }
+
+    static ThreadFactory daemons(String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return r -> {
+            final Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * Run a task on the partition for the given key, blocking while that partition is full.
+     *
+     * @param key Key whose hash chooses the partition.
+     * @param task The task.
+     */
+    void execute(Object key, Runnable task) {
+        partitions[partition(key)].execute(task);
+    }
+
+    /**
+     * Run a task on the partition for the given key, if that partition has room for it now.
+     * <p>
+     * For threads that must not block, such as timers that other tasks are waiting on.
+     * </p>
+     *
+     * @param key Key whose hash chooses the partition.
+     * @param task The task.
+     * @return true if the task was queued, false if the partition was full.
+     */
+    boolean offer(Object key, Runnable task) {
+        final ThreadPoolExecutor partition = partitions[partition(key)];
+        if (partition.isShutdown()) {
+            throw new RejectedExecutionException("Executor has been shut down");
+        }
+        return partition.getQueue().offer(task);
+    }
+
+    int partition(Object key) {
+        return Math.floorMod(key.hashCode(), partitions.length);
+    }
+
+    @Override
+    public void close() {
+        for (final ThreadPoolExecutor p : partitions) {
+            p.shutdown();
+        }
+        try {
+            for (final ThreadPoolExecutor p : partitions) {
+                if (!p.awaitTermination(30, TimeUnit.SECONDS)) {
+                    LOG.warn("Gave up waiting for {} queued tasks", p.getQueue().size());
+                    p.shutdownNow();
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
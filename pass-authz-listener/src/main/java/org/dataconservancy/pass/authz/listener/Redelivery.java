@@ -0,0 +1,152 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.listener;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Handles messages on the workers, retrying failures with exponential backoff.
+ * <p>
+ * A message whose handling fails is handed back to its worker after a delay, which doubles with each attempt up to
+ * a maximum. The worker is free to handle other messages in the meantime, so one failing message does not hold up
+ * the rest. A retry is only handed back once its worker has room, so that one full worker does not hold up the
+ * retries of the others. Once a message has failed the maximum number of times, it is given up on and passed to
+ * the dead letter handler.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+class Redelivery implements AutoCloseable {
+
+    static final Logger LOG = LoggerFactory.getLogger(Redelivery.class);
+
+    /* How long to wait before handing a retry to a worker that had no room for it */
+    static final long REOFFER_MILLIS = 10;
+
+    private final int maxAttempts;
+
+    private final long initialDelayMillis;
+
+    private final long maxDelayMillis;
+
+    private final PartitionedExecutor workers;
+
+    private final Consumer<FedoraMessage> handler;
+
+    private final BiConsumer<FedoraMessage, Exception> deadLetter;
+
+    private final ListenerStats stats;
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread t = new Thread(r, "authz-redelivery");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * @param maxAttempts Number of times to try a message before giving up on it.
+     * @param initialDelayMillis Delay before the first retry.
+     * @param maxDelayMillis Longest delay before a retry.
+     * @param workers Workers to handle messages on.
+     * @param handler Handles a message, throwing an exception if it fails.
+     * @param deadLetter Takes a message that has been given up on, and the last failure.
+     * @param stats Listener stats.
+     */
+    Redelivery(int maxAttempts, long initialDelayMillis, long maxDelayMillis, PartitionedExecutor workers,
+            Consumer<FedoraMessage> handler, BiConsumer<FedoraMessage, Exception> deadLetter, ListenerStats stats) {
+        this.maxAttempts = Math.max(maxAttempts, 1);
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.workers = workers;
+        this.handler = handler;
+        this.deadLetter = deadLetter;
+        this.stats = stats;
+    }
+
+    /**
+     * Handle a message on its worker.
+     *
+     * @param fm The message.
+     */
+    void submit(FedoraMessage fm) {
+        workers.execute(fm.getResourceURI(), () -> attempt(fm, 1));
+    }
+
+    /**
+     * Handle a message on its worker, if the worker has room for it now.
+     *
+     * @param fm The message.
+     * @return true if the message was handed to its worker, false if the worker was full.
+     */
+    boolean offer(FedoraMessage fm) {
+        return workers.offer(fm.getResourceURI(), () -> attempt(fm, 1));
+    }
+
+    private void attempt(FedoraMessage fm, int attempt) {
+        try {
+            handler.accept(fm);
+        } catch (final Exception e) {
+            if (attempt >= maxAttempts) {
+                LOG.error("Giving up on {} after {} attempts", fm, attempt, e);
+                stats.deadLettered.increment();
+                deadLetter.accept(fm, e);
+                return;
+            }
+
+            final long delay = delay(attempt);
+            LOG.warn("Error handling {}, retrying in {} ms: {}", fm, delay, e.getMessage());
+            LOG.debug("Failure handling {}", fm, e);
+            stats.retried.increment();
+            timer.schedule(() -> retry(fm, attempt + 1), delay, MILLISECONDS);
+        }
+    }
+
+    /* Runs on the timer, so it must not wait for room on the worker; if there is none, try again a little later */
+    private void retry(FedoraMessage fm, int attempt) {
+        if (!workers.offer(fm.getResourceURI(), () -> attempt(fm, attempt))) {
+            LOG.debug("Worker for {} is full, retrying in {} ms", fm, REOFFER_MILLIS);
+            timer.schedule(() -> retry(fm, attempt), REOFFER_MILLIS, MILLISECONDS);
+        }
+    }
+
+    /**
+     * Delay before the retry that follows a failed attempt.
+     *
+     * @param attempt Number of the failed attempt, starting at 1.
+     * @return Delay, in milliseconds.
+     */
+    long delay(int attempt) {
+        final long factor = 1L << Math.min(attempt - 1, 30);
+        return initialDelayMillis > maxDelayMillis / factor ? maxDelayMillis : initialDelayMillis * factor;
+    }
+
+    /**
+     * Stop retrying. Messages awaiting a retry are not acknowledged, so the broker delivers them again.
+     */
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author apb@jhu.edu
+ */
+public class AdaptiveLimiterTest {
+
+    static final long QUICK = TimeUnit.MILLISECONDS.toNanos(10);
+
+    static final long SLOW = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    public void backOffWhenSlowTest() {
+        final AdaptiveLimiter toTest = new AdaptiveLimiter(1, 8, 2);
+        complete(toTest, 100, QUICK);
+        assertEquals(8, toTest.getLimit());
+
+        complete(toTest, 20, SLOW);
+        assertEquals(1, toTest.getLimit());
+        assertEquals(0, toTest.getInFlight());
+    }
+
+    @Test
+    public void recoverWhenQuickTest() {
+        final AdaptiveLimiter toTest = new AdaptiveLimiter(1, 8, 2);
+        complete(toTest, 100, QUICK);
+        complete(toTest, 20, SLOW);
+
+        // Once the short average settles, each limit's worth of quick tasks run at the limit raises it by one
+        for (int round = 0; round < 200; round++) {
+            final int limit = toTest.getLimit();
+            for (int i = 0; i < limit; i++) {
+                toTest.acquire();
+            }
+            for (int i = 0; i < limit; i++) {
+                toTest.release(QUICK, false);
+            }
+        }
+
+        assertEquals(8, toTest.getLimit());
+    }
+
+    @Test
+    public void backOffOnFailureTest() {
+        final AdaptiveLimiter toTest = new AdaptiveLimiter(2, 8, 2);
+
+        // 8 * 0.9^9 is just over 3
+        for (int i = 0; i < 9; i++) {
+            toTest.acquire();
+            toTest.release(QUICK, true);
+        }
+
+        assertEquals(3, toTest.getLimit());
+
+        for (int i = 0; i < 10; i++) {
+            toTest.acquire();
+            toTest.release(QUICK, true);
+        }
+
+        assertEquals(2, toTest.getLimit());
+    }
+
+    @Test
+    public void waitAtLimitTest() throws Exception {
+        final AdaptiveLimiter toTest = new AdaptiveLimiter(1, 1, 2);
+        final CountDownLatch ran = new CountDownLatch(1);
+
+        toTest.acquire();
+        final Thread waiting = new Thread(() -> toTest.run(ran::countDown));
+        waiting.start();
+
+        assertFalse(ran.await(200, TimeUnit.MILLISECONDS));
+
+        toTest.release(QUICK, false);
+        assertTrue(ran.await(10, TimeUnit.SECONDS));
+        waiting.join();
+        assertEquals(0, toTest.getInFlight());
+    }
+
+    private static void complete(AdaptiveLimiter limiter, int tasks, long nanos) {
+        for (int i = 0; i < tasks; i++) {
+            limiter.acquire();
+            limiter.release(nanos, false);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.dataconservancy.pass.authz.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.jms.TextMessage;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.dataconservancy.pass.authz.acl.FedoraClientFactory;
+import org.dataconservancy.pass.authz.acl.PolicyEngine;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Listens to messages in an embedded broker.
+ *
+ * @author apb@jhu.edu
+ */
+public class AuthzListenerTest {
+
+    static final String QUEUE = "authz";
+
+    static final String SUBMISSION = "http://oapass.org/ns/pass#Submission";
+
+    static final String EVENT = "http://fedora.info/definitions/v4/event#";
+
+    static final URI ECHOED = URI.create("http://example.org/submissions/1");
+
+    static final URI CHANGED = URI.create("http://example.org/submissions/2");
+
+    ActiveMQConnectionFactory factory;
+
+    JMSClient sender;
+
+    PolicyEngine policies;
+
+    Thread listening;
+
+    @Before
+    public void setUp() {
+        factory = new ActiveMQConnectionFactory(
+                "vm://" + getClass().getSimpleName() + "?broker.persistent=false&broker.useJmx=false");
+        sender = new JMSClient(factory);
+        policies = mock(PolicyEngine.class);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (listening != null) {
+            listening.interrupt();
+            listening.join(30000);
+        }
+        sender.close();
+    }
+
+    @Test
+    public void echoTest() throws Exception {
+        final long echoes = ListenerStats.get().getEchoes();
+
+        // The ACL write made while handling a message, and then a change made by someone else
+        send(ECHOED, FedoraClientFactory.USER_AGENT);
+        send(CHANGED, "Mozilla/5.0");
+
+        listen();
+
+        verify(policies, timeout(10000)).updateSubmission(CHANGED);
+        verify(policies, never()).updateSubmission(ECHOED);
+        assertEquals(echoes + 1, ListenerStats.get().getEchoes());
+
+        // Both were acknowledged, so neither is delivered again once the listener is gone
+        listening.interrupt();
+        listening.join(30000);
+        listening = null;
+
+        final CountDownLatch redelivered = new CountDownLatch(1);
+        try (JMSClient receiver = new JMSClient(factory)) {
+            receiver.listen(QUEUE, msg -> redelivered.countDown());
+            assertFalse(redelivered.await(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void echoesNotSuppressedTest() throws Exception {
+        send(ECHOED, FedoraClientFactory.USER_AGENT);
+
+        final AuthzListener toTest = new AuthzListener(factory, policies, QUEUE);
+        toTest.setSuppressEchoes(false);
+        listen(toTest);
+
+        verify(policies, timeout(10000)).updateSubmission(ECHOED);
+        verify(policies, never()).updateSubmissionEvent(any());
+    }
+
+    private void listen() {
+        listen(new AuthzListener(factory, policies, QUEUE));
+    }
+
+    private void listen(AuthzListener listener) {
+        listening = new Thread(listener::listen, "test-listener");
+        listening.setDaemon(true);
+        listening.start();
+    }
+
+    private void send(URI resource, String userAgent) throws Exception {
+        final TextMessage message = new ActiveMQTextMessage();
+        message.setText(FedoraMessageParserTest.message(resource.toString(), SUBMISSION, "ResourceModification"));
+        message.setStringProperty(FedoraMessageParser.RESOURCE_TYPE, "http://www.w3.org/ns/ldp#Container," +
+                SUBMISSION);
+        message.setStringProperty(FedoraMessageParser.EVENT_TYPE, EVENT + "ResourceModification");
+        message.setStringProperty(FedoraMessageConverter.USER_AGENT, userAgent);
+        sender.write(QUEUE, message);
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.dataconservancy.pass.authz.listener;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.jms.Message;
+
+import org.junit.Test;
+
+/**
+ * @author apb@jhu.edu
+ */
+public class CoalescerTest {
+
+    static final String SUBMISSION = "http://example.org/submissions/1";
+
+    static final String OTHER_SUBMISSION = "http://example.org/submissions/2";
+
+    static final String SUBMISSION_TYPE = "http://oapass.org/ns/pass#Submission";
+
+    static final String CONTAINER_TYPE = "http://www.w3.org/ns/ldp#Container";
+
+    final ListenerStats stats = new ListenerStats();
+
+    final BlockingQueue<FedoraMessage> passedOn = new LinkedBlockingQueue<>();
+
+    @Test
+    public void mergeTest() {
+        final FedoraMessage earlier = message(SUBMISSION, FedoraAction.MODIFIED, SUBMISSION_TYPE);
+        final FedoraMessage later = message(SUBMISSION, FedoraAction.MODIFIED, CONTAINER_TYPE);
+
+        final FedoraMessage merged = Coalescer.merge(earlier, later);
+
+        assertEquals(earlier.getResourceURI(), merged.getResourceURI());
+        assertEquals(FedoraAction.MODIFIED, merged.getAction());
+        assertEquals(asList(SUBMISSION_TYPE, CONTAINER_TYPE), merged.getResourceTypes());
+        assertEquals(asList(earlier.getMessages().get(0), later.getMessages().get(0)), merged.getMessages());
+    }
+
+    @Test
+    public void createdBeatsModifiedTest() {
+        assertEquals(FedoraAction.CREATED, Coalescer.merge(message(SUBMISSION, FedoraAction.CREATED),
+                message(SUBMISSION, FedoraAction.MODIFIED)).getAction());
+        assertEquals(FedoraAction.CREATED, Coalescer.merge(message(SUBMISSION, FedoraAction.MODIFIED),
+                message(SUBMISSION, FedoraAction.CREATED)).getAction());
+    }
+
+    @Test
+    public void deletedKeptTest() {
+        assertEquals(FedoraAction.DELETED, Coalescer.merge(message(SUBMISSION, FedoraAction.DELETED),
+                message(SUBMISSION, FedoraAction.CREATED)).getAction());
+        assertEquals(FedoraAction.DELETED, Coalescer.merge(message(SUBMISSION, FedoraAction.MODIFIED),
+                message(SUBMISSION, FedoraAction.DELETED)).getAction());
+        assertEquals(FedoraAction.DELETED, Coalescer.merge(message(SUBMISSION, FedoraAction.DELETED),
+                message(SUBMISSION, FedoraAction.MODIFIED)).getAction());
+    }
+
+    @Test
+    public void flushAtWindowEndTest() throws Exception {
+        try (Coalescer toTest = new Coalescer(200, 10, passedOn::add, passedOn::offer, stats)) {
+            final long start = System.nanoTime();
+            toTest.accept(message(SUBMISSION, FedoraAction.CREATED));
+            toTest.accept(message(SUBMISSION, FedoraAction.MODIFIED));
+            toTest.accept(message(OTHER_SUBMISSION, FedoraAction.MODIFIED));
+
+            // Held until the window ends
+            assertTrue(passedOn.isEmpty());
+
+            final FedoraMessage first = passedOn.poll(10, TimeUnit.SECONDS);
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 200);
+            final FedoraMessage second = passedOn.poll(10, TimeUnit.SECONDS);
+
+            assertEquals(SUBMISSION, first.getResourceURI().toString());
+            assertEquals(FedoraAction.CREATED, first.getAction());
+            assertEquals(2, first.getMessages().size());
+            assertEquals(OTHER_SUBMISSION, second.getResourceURI().toString());
+        }
+
+        assertEquals(1, stats.getCoalesced());
+        assertEquals(2, stats.getDispatched());
+    }
+
+    @Test
+    public void noWindowTest() {
+        try (Coalescer toTest = new Coalescer(0, 10, passedOn::add, m -> false, stats)) {
+            toTest.accept(message(SUBMISSION, FedoraAction.CREATED));
+            toTest.accept(message(SUBMISSION, FedoraAction.MODIFIED));
+        }
+
+        assertEquals(2, passedOn.size());
+        assertEquals(0, stats.getCoalesced());
+    }
+
+    @Test
+    public void maxPendingTest() throws Exception {
+        try (Coalescer toTest = new Coalescer(500, 1, passedOn::add, passedOn::offer, stats)) {
+            toTest.accept(message(SUBMISSION, FedoraAction.CREATED));
+
+            // Merging into a held message doesn't need room
+            toTest.accept(message(SUBMISSION, FedoraAction.MODIFIED));
+
+            // Holding another resource has to wait for the first window to end
+            final CountDownLatch accepted = new CountDownLatch(1);
+            final Thread accepter = new Thread(() -> {
+                toTest.accept(message(OTHER_SUBMISSION, FedoraAction.MODIFIED));
+                accepted.countDown();
+            });
+            accepter.setDaemon(true);
+            accepter.start();
+
+            assertFalse(accepted.await(250, TimeUnit.MILLISECONDS));
+            assertTrue(accepted.await(10, TimeUnit.SECONDS));
+            assertEquals(SUBMISSION, passedOn.poll(10, TimeUnit.SECONDS).getResourceURI().toString());
+            assertEquals(OTHER_SUBMISSION, passedOn.poll(10, TimeUnit.SECONDS).getResourceURI().toString());
+        }
+    }
+
+    @Test
+    public void refusedTest() throws Exception {
+        final AtomicBoolean full = new AtomicBoolean(true);
+
+        try (Coalescer toTest = new Coalescer(50, 10, passedOn::add, m -> !full.get() && passedOn.offer(m),
+                stats)) {
+            toTest.accept(message(SUBMISSION, FedoraAction.MODIFIED));
+
+            // Downstream is full at the end of the window, so the message is held and still merged into
+            Thread.sleep(200);
+            assertTrue(passedOn.isEmpty());
+            toTest.accept(message(SUBMISSION, FedoraAction.CREATED));
+
+            full.set(false);
+            final FedoraMessage fm = passedOn.poll(10, TimeUnit.SECONDS);
+            assertEquals(FedoraAction.CREATED, fm.getAction());
+            assertEquals(2, fm.getMessages().size());
+        }
+
+        assertTrue(passedOn.isEmpty());
+        assertEquals(1, stats.getDispatched());
+    }
+
+    @Test
+    public void closeWhileRefusedTest() {
+        // Never any room downstream, so once closing, held messages are passed on by waiting for room instead
+        try (Coalescer toTest = new Coalescer(100, 10, passedOn::add, m -> false, stats)) {
+            toTest.accept(message(SUBMISSION, FedoraAction.CREATED));
+        }
+
+        assertEquals(1, passedOn.size());
+    }
+
+    @Test
+    public void coalescingRatioTest() throws Exception {
+        assertEquals(1.0, stats.getCoalescingRatio(), 0.0);
+
+        try (Coalescer toTest = new Coalescer(100, 10, passedOn::add, passedOn::offer, stats)) {
+            for (final FedoraAction action : asList(FedoraAction.CREATED, FedoraAction.MODIFIED,
+                    FedoraAction.MODIFIED, FedoraAction.MODIFIED)) {
+                stats.received.increment();
+                toTest.accept(message(SUBMISSION, action));
+            }
+            passedOn.poll(10, TimeUnit.SECONDS);
+        }
+
+        // Four messages received, passed on as one
+        assertEquals(3, stats.getCoalesced());
+        assertEquals(4.0, stats.getCoalescingRatio(), 0.0);
+    }
+
+    private static FedoraMessage message(String resource, FedoraAction action, String... types) {
+        final FedoraMessage fm = new FedoraMessage();
+        fm.setResourceURI(resource);
+        fm.setResourceTypes(types.length > 0 ? types : new String[] { SUBMISSION_TYPE });
+        fm.setAction(action);
+        fm.getMessages().add(mock(Message.class));
+        return fm;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.listener;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the {@link FedoraMessageParser} against {@link FedoraMessageConverter}, which builds a JSON document
+ * from every message, over a sample of messages in the form Fedora sends them.
+ * <p>
+ * Most messages are about resources the listener ignores, as in a real repository. This is not a unit test; run
+ * its main method with the test classpath, e.g. from an IDE.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+public class FedoraMessageParserBenchmark {
+
+    static final String SUBMISSION_TYPE = "http://oapass.org/ns/pass#Submission";
+
+    static final String SUBMISSION_EVENT_TYPE = "http://oapass.org/ns/pass#SubmissionEvent";
+
+    static final int ITERATIONS = 200_000;
+
+    static volatile Object sink;
+
+    interface Parse {
+
+        FedoraMessage parse(String text) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final List<String> messages;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(FedoraMessageParserBenchmark.class
+                .getResourceAsStream("/fedora-messages.txt"), UTF_8))) {
+            messages = in.lines().filter(line -> !line.isEmpty()).collect(Collectors.toList());
+        }
+
+        final FedoraMessageParser parser = new FedoraMessageParser(asList(SUBMISSION_TYPE, SUBMISSION_EVENT_TYPE));
+
+        for (int round = 0; round < 3; round++) {
+            System.out.println("Round " + round);
+            run("document", FedoraMessageParserBenchmark::convert, messages);
+            run("stream", parser::parse, messages);
+        }
+    }
+
+    /* What the listener did before: convert everything, then look at the types */
+    static FedoraMessage convert(String text) {
+        final FedoraMessage fm = FedoraMessageConverter.convert(text);
+        final List<String> types = fm.getResourceTypes();
+        if (fm.getAction() == FedoraAction.DELETED || types.contains(SUBMISSION_TYPE) || types.contains(
+                SUBMISSION_EVENT_TYPE)) {
+            return fm;
+        }
+        return null;
+    }
+
+    static void run(String name, Parse parse, List<String> messages) throws Exception {
+        int kept = 0;
+        final long allocatedBefore = allocatedBytes();
+        final long start = System.nanoTime();
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (final String message : messages) {
+                final FedoraMessage fm = parse.parse(message);
+                if (fm != null) {
+                    kept++;
+                    sink = fm;
+                }
+            }
+        }
+
+        final long count = (long) ITERATIONS * messages.size();
+        final long elapsed = System.nanoTime() - start;
+        final long allocated = allocatedBytes() - allocatedBefore;
+
+        System.out.println(String.format("  %-8s %8.1f ns/message %8d bytes/message %6.1f%% kept", name,
+                (double) elapsed / count, allocated / count, 100.0 * kept / count));
+    }
+
+    static long allocatedBytes() {
+        final java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread()
+                    .getId());
+        }
+        return 0;
+    }
+}
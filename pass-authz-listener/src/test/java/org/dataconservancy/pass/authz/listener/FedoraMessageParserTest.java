@@ -0,0 +1,192 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.listener;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.util.List;
+import java.util.StringJoiner;
+
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.junit.Test;
+
+/**
+ * @author apb@jhu.edu
+ */
+public class FedoraMessageParserTest {
+
+    static final String SUBMISSION = "http://oapass.org/ns/pass#Submission";
+
+    static final String GRANT = "http://oapass.org/ns/pass#Grant";
+
+    static final String EVENT = "http://fedora.info/definitions/v4/event#";
+
+    final FedoraMessageParser toTest = new FedoraMessageParser(asList(SUBMISSION));
+
+    @Test
+    public void parseTest() throws Exception {
+        final FedoraMessage fm = toTest.parse(message("http://example.org/submissions/1", SUBMISSION,
+                "ResourceModification", "ResourceCreation"));
+
+        assertEquals(URI.create("http://example.org/submissions/1"), fm.getResourceURI());
+        assertEquals(asList("http://www.w3.org/ns/ldp#Container", SUBMISSION), fm.getResourceTypes());
+        assertEquals(FedoraAction.CREATED, fm.getAction());
+    }
+
+    @Test
+    public void rejectIrrelevantTest() throws Exception {
+        assertNull(toTest.parse(message("http://example.org/grants/1", GRANT, "ResourceModification")));
+
+        final FedoraMessage deleted = toTest.parse(message("http://example.org/grants/1", GRANT,
+                "ResourceDeletion"));
+        assertEquals(FedoraAction.DELETED, deleted.getAction());
+    }
+
+    @Test
+    public void rejectByHeaderTest() throws Exception {
+        final ActiveMQTextMessage grant = new ActiveMQTextMessage();
+        grant.setText("Not even JSON");
+        grant.setStringProperty(FedoraMessageParser.RESOURCE_TYPE, "http://www.w3.org/ns/ldp#Container," + GRANT);
+        grant.setStringProperty(FedoraMessageParser.EVENT_TYPE, EVENT + "ResourceModification");
+
+        assertNull(toTest.parse(grant));
+
+        final ActiveMQTextMessage submission = new ActiveMQTextMessage();
+        submission.setText(message("http://example.org/submissions/1", SUBMISSION, "ResourceModification"));
+        submission.setStringProperty(FedoraMessageParser.RESOURCE_TYPE, "http://www.w3.org/ns/ldp#Container," +
+                SUBMISSION);
+        submission.setStringProperty(FedoraMessageParser.EVENT_TYPE, EVENT + "ResourceModification");
+
+        assertNotNull(toTest.parse(submission));
+    }
+
+    @Test
+    public void precedenceTest() throws Exception {
+        assertEquals(FedoraAction.CREATED, action("ResourceCreation", "ResourceDeletion"));
+        assertEquals(FedoraAction.CREATED, action("ResourceDeletion", "ResourceCreation"));
+        assertEquals(FedoraAction.CREATED, action("ResourceModification", "ResourceDeletion", "ResourceCreation"));
+        assertEquals(FedoraAction.DELETED, action("ResourceModification", "ResourceDeletion"));
+        assertEquals(FedoraAction.DELETED, action("ResourceDeletion"));
+        assertEquals(FedoraAction.MODIFIED, action("ResourceModification"));
+        assertNull(action("ResourceRelocation"));
+    }
+
+    @Test
+    public void deletionOfIrrelevantByHeaderTest() throws Exception {
+        final ActiveMQTextMessage grant = new ActiveMQTextMessage();
+        grant.setText(message("http://example.org/grants/1", GRANT, "ResourceDeletion"));
+        grant.setStringProperty(FedoraMessageParser.RESOURCE_TYPE, "http://www.w3.org/ns/ldp#Container," + GRANT);
+        grant.setStringProperty(FedoraMessageParser.EVENT_TYPE, EVENT + "ResourceModification, " + EVENT +
+                "ResourceDeletion");
+
+        assertEquals(FedoraAction.DELETED, toTest.parse(grant).getAction());
+    }
+
+    @Test
+    public void noHeadersTest() throws Exception {
+        final ActiveMQTextMessage submission = new ActiveMQTextMessage();
+        submission.setText(message("http://example.org/submissions/1", SUBMISSION, "ResourceModification"));
+
+        assertEquals(FedoraAction.MODIFIED, toTest.parse(submission).getAction());
+    }
+
+    @Test
+    public void earlyRejectTest() throws Exception {
+        // Rejected as soon as types and actions are known, so what follows them is never read
+        final String grant = message("http://example.org/grants/1", GRANT, "ResourceModification");
+        assertNull(toTest.parse(grant.substring(0, grant.lastIndexOf('}')) + ", \"wasAttributedTo\": [{{{"));
+
+        // Whichever comes first
+        assertNull(toTest.parse("{\"wasGeneratedBy\": {\"type\": \"" + EVENT + "ResourceModification\"}, " +
+                "\"type\": \"" + GRANT + "\", \"id\": \"http://example.org/grants/1\", \"x\": [{{{"));
+    }
+
+    @Test
+    public void typesAfterActionsTest() throws Exception {
+        final FedoraMessage fm = toTest.parse("{\"id\": \"http://example.org/submissions/1\", " +
+                "\"wasGeneratedBy\": {\"type\": [\"" + EVENT + "ResourceCreation\"]}, \"type\": \"" +
+                SUBMISSION + "\"}");
+
+        assertEquals(asList(SUBMISSION), fm.getResourceTypes());
+        assertEquals(FedoraAction.CREATED, fm.getAction());
+    }
+
+    @Test(expected = IOException.class)
+    public void notJsonTest() throws Exception {
+        toTest.parse("Not even JSON");
+    }
+
+    @Test(expected = IOException.class)
+    public void noIdTest() throws Exception {
+        toTest.parse("{\"type\": \"" + SUBMISSION + "\", \"wasGeneratedBy\": {\"type\": \"" + EVENT +
+                "ResourceCreation\"}}");
+    }
+
+    @Test
+    public void sameAsConverterTest() throws Exception {
+        final List<String> messages;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream(
+                "/fedora-messages.txt"), UTF_8))) {
+            messages = in.lines().filter(line -> !line.isEmpty()).collect(toList());
+        }
+
+        int relevant = 0;
+        for (final String text : messages) {
+            final FedoraMessage parsed = toTest.parse(text);
+            final FedoraMessage converted = FedoraMessageConverter.convert(text);
+
+            if (parsed == null) {
+                assertFalse(converted.getResourceTypes().contains(SUBMISSION));
+                assertNotEquals(FedoraAction.DELETED, converted.getAction());
+            } else {
+                relevant++;
+                assertEquals(converted.getResourceURI(), parsed.getResourceURI());
+                assertEquals(converted.getResourceTypes(), parsed.getResourceTypes());
+                assertEquals(converted.getAction(), parsed.getAction());
+            }
+        }
+        assertTrue(relevant > 0);
+    }
+
+    private FedoraAction action(String... actions) throws Exception {
+        return toTest.parse(message("http://example.org/submissions/1", SUBMISSION, actions)).getAction();
+    }
+
+    static String message(String id, String type, String... actions) {
+        final StringJoiner events = new StringJoiner("\", \"" + EVENT, "[\"" + EVENT, "\"]");
+        for (final String action : actions) {
+            events.add(action);
+        }
+
+        return "{\"@context\": {\"id\": \"@id\"}, \"id\": \"" + id + "\", \"type\": [" +
+                "\"http://www.w3.org/ns/ldp#Container\", \"" + type + "\"], \"wasGeneratedBy\": {\"type\": " +
+                events + ", \"identifier\": \"urn:uuid:1\"}, \"wasAttributedTo\": [{\"name\": " +
+                "\"fedoraAdmin\"}]}";
+    }
+}
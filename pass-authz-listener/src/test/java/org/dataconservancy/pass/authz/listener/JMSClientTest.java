@@ -0,0 +1,265 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.listener;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import javax.jms.Message;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Selects Fedora messages in an embedded broker.
+ *
+ * @author apb@jhu.edu
+ */
+public class JMSClientTest {
+
+    static final String QUEUE = "authz";
+
+    static final String SUBMISSION = "http://oapass.org/ns/pass#Submission";
+
+    static final String SUBMISSION_EVENT = "http://oapass.org/ns/pass#SubmissionEvent";
+
+    static final String GRANT = "http://oapass.org/ns/pass#Grant";
+
+    static final String CONTAINER = "http://fedora.info/definitions/v4/repository#Container";
+
+    static final String CREATION = "http://fedora.info/definitions/v4/event#ResourceCreation";
+
+    static final String MODIFICATION = "http://fedora.info/definitions/v4/event#ResourceModification";
+
+    static final String DELETION = "http://fedora.info/definitions/v4/event#ResourceDeletion";
+
+    static final String SELECTOR = "resourceType LIKE '%http://oapass.org/ns/pass#Submission%' OR " +
+            "eventType LIKE '%#ResourceDeletion'";
+
+    ActiveMQConnectionFactory factory;
+
+    JMSClient sender;
+
+    JMSClient receiver;
+
+    final List<BrokerService> brokers = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        factory = new ActiveMQConnectionFactory(
+                "vm://" + getClass().getSimpleName() + "?broker.persistent=false&broker.useJmx=false");
+        sender = new JMSClient(factory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (receiver != null) {
+            receiver.close();
+        }
+        sender.close();
+        for (final BrokerService broker : brokers) {
+            broker.stop();
+        }
+    }
+
+    @Test
+    public void selectorTest() throws Exception {
+        send("submissions/1", CREATION, CONTAINER, SUBMISSION);
+        send("grants/1", MODIFICATION, CONTAINER, GRANT);
+        send("events/1", CREATION, CONTAINER, SUBMISSION_EVENT);
+        send("grants/1", DELETION, CONTAINER, GRANT);
+        send("grants/2", CREATION, CONTAINER, GRANT);
+        send("submissions/1", MODIFICATION, CONTAINER, SUBMISSION);
+
+        assertEquals(asList("submissions/1", "events/1", "grants/1", "submissions/1"), receive(SELECTOR, 4));
+    }
+
+    @Test
+    public void noSelectorTest() throws Exception {
+        send("submissions/1", CREATION, CONTAINER, SUBMISSION);
+        send("grants/1", MODIFICATION, CONTAINER, GRANT);
+
+        assertEquals(asList("submissions/1", "grants/1"), receive(null, 2));
+    }
+
+    @Test
+    public void forwardTest() throws Exception {
+        final ActiveMQTextMessage original = new ActiveMQTextMessage();
+        original.setText("submissions/1");
+        original.setStringProperty(FedoraMessageParser.EVENT_TYPE, CREATION);
+
+        sender.forward(QUEUE, original, singletonMap(AuthzListener.ERROR_PROPERTY, "Failed"));
+
+        final List<Message> received = new CopyOnWriteArrayList<>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        receiver = new JMSClient(factory);
+        receiver.listen(QUEUE, msg -> {
+            received.add(msg);
+            latch.countDown();
+        });
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        final TextMessage copy = (TextMessage) received.get(0);
+        assertEquals("submissions/1", copy.getText());
+        assertEquals(CREATION, copy.getStringProperty(FedoraMessageParser.EVENT_TYPE));
+        assertEquals("Failed", copy.getStringProperty(AuthzListener.ERROR_PROPERTY));
+    }
+
+    @Test
+    public void reconnectTest() throws Exception {
+        final BrokerService broker = startBroker("tcp://localhost:0");
+        final String url = broker.getTransportConnectors().get(0).getPublishableConnectString();
+        final ActiveMQConnectionFactory tcp = new ActiveMQConnectionFactory(url);
+
+        final List<String> ids = new CopyOnWriteArrayList<>();
+        final CountDownLatch received = new CountDownLatch(1);
+        receiver = new JMSClient(tcp);
+        receiver.listen(QUEUE, msg -> {
+            try {
+                ids.add(((TextMessage) msg).getText());
+            } catch (final Exception e) {
+                throw new RuntimeException(e);
+            }
+            received.countDown();
+        });
+        final JMSClient tcpSender = new JMSClient(tcp);
+
+        broker.stop();
+        broker.waitUntilStopped();
+        waitFor(() -> !receiver.isConnected() && !tcpSender.isConnected());
+
+        // Writing waits for the broker to come back
+        final ActiveMQTextMessage message = new ActiveMQTextMessage();
+        message.setText("submissions/1");
+        final Future<?> written = Executors.newSingleThreadExecutor().submit(() -> tcpSender.write(QUEUE, message));
+        Thread.sleep(200);
+        assertFalse(written.isDone());
+
+        startBroker(url);
+        written.get(10, TimeUnit.SECONDS);
+
+        assertTrue(received.await(10, TimeUnit.SECONDS));
+        assertEquals(asList("submissions/1"), ids);
+        tcpSender.close();
+    }
+
+    @Test
+    public void failoverTest() throws Exception {
+        final BrokerService first = startBroker("tcp://localhost:0");
+        final BrokerService second = startBroker("tcp://localhost:0");
+        final ActiveMQConnectionFactory firstFactory = new ActiveMQConnectionFactory(first.getTransportConnectors()
+                .get(0).getPublishableConnectString());
+        final ActiveMQConnectionFactory secondFactory = new ActiveMQConnectionFactory(second.getTransportConnectors()
+                .get(0).getPublishableConnectString());
+
+        final CountDownLatch received = new CountDownLatch(1);
+        receiver = new JMSClient(asList(firstFactory, secondFactory), Session.AUTO_ACKNOWLEDGE);
+        receiver.listen(QUEUE, msg -> received.countDown());
+
+        first.stop();
+        first.waitUntilStopped();
+
+        // The consumer is created again on the second broker
+        final JMSClient secondSender = new JMSClient(secondFactory);
+        final ActiveMQTextMessage message = new ActiveMQTextMessage();
+        message.setText("submissions/1");
+        secondSender.write(QUEUE, message);
+
+        assertTrue(received.await(10, TimeUnit.SECONDS));
+        secondSender.close();
+    }
+
+    @Test
+    public void reconnectDelayTest() {
+        for (int attempt = 0; attempt < 30; attempt++) {
+            final long max = Math.min(JMSClient.MAX_RECONNECT_DELAY_MILLIS, JMSClient.RECONNECT_DELAY_MILLIS <<
+                    Math.min(attempt, 20));
+            final long delay = sender.reconnectDelay(attempt);
+            assertTrue(delay >= max / 2 && delay <= max);
+        }
+    }
+
+    private BrokerService startBroker(String url) throws Exception {
+        final BrokerService broker = new BrokerService();
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.setBrokerName("broker" + brokers.size());
+        broker.addConnector(url);
+        broker.start();
+        broker.waitUntilStarted();
+        brokers.add(broker);
+        return broker;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /* Sends a message with Fedora's headers, and the copies of them a selector can name */
+    private void send(String id, String eventType, String... types) throws Exception {
+        final TextMessage message = new ActiveMQTextMessage();
+        message.setText(id);
+        message.setStringProperty("org.fcrepo.jms.identifier", "/" + id);
+        message.setStringProperty(FedoraMessageParser.EVENT_TYPE, eventType);
+        message.setStringProperty(FedoraMessageParser.RESOURCE_TYPE, String.join(",", types));
+        message.setStringProperty("eventType", eventType);
+        message.setStringProperty("resourceType", String.join(",", types));
+        sender.write(QUEUE, message);
+    }
+
+    /* Receive the ids of the expected number of messages, then give stragglers a moment to arrive */
+    private List<String> receive(String selector, int expected) throws Exception {
+        final List<String> ids = new CopyOnWriteArrayList<>();
+        final CountDownLatch received = new CountDownLatch(expected);
+
+        receiver = new JMSClient(factory);
+        receiver.listen(QUEUE, selector, msg -> {
+            try {
+                ids.add(((TextMessage) msg).getText());
+            } catch (final Exception e) {
+                throw new RuntimeException(e);
+            }
+            received.countDown();
+        });
+
+        received.await(10, TimeUnit.SECONDS);
+        Thread.sleep(200);
+
+        return ids;
+    }
+}
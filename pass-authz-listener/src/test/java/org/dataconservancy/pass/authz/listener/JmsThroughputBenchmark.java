@@ -0,0 +1,138 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.listener;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.ActiveMQSession;
+import org.apache.activemq.broker.BrokerService;
+
+/**
+ * Measures how fast messages can be taken from a queue under different prefetch and acknowledgement settings, with
+ * an embedded broker reached over TCP.
+ * <p>
+ * The queue is filled first, then drained by a consumer that does nothing but acknowledge, so the numbers are an
+ * upper bound set by the broker round trips. This is not a unit test; run its main method with the test classpath,
+ * e.g. from an IDE.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+public class JmsThroughputBenchmark {
+
+    static final int MESSAGES = 20_000;
+
+    static int queues;
+
+    public static void main(String[] args) throws Exception {
+        final List<String> messages;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(JmsThroughputBenchmark.class
+                .getResourceAsStream("/fedora-messages.txt"), UTF_8))) {
+            messages = in.lines().filter(line -> !line.isEmpty()).collect(Collectors.toList());
+        }
+
+        final BrokerService broker = new BrokerService();
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        final String url = broker.addConnector("tcp://localhost:0").getPublishableConnectString();
+        broker.start();
+
+        try {
+            for (int round = 0; round < 2; round++) {
+                System.out.println("Round " + round);
+                run(url, messages, "individual", ActiveMQSession.INDIVIDUAL_ACKNOWLEDGE, 1, false);
+                run(url, messages, "individual", ActiveMQSession.INDIVIDUAL_ACKNOWLEDGE, 100, false);
+                run(url, messages, "individual", ActiveMQSession.INDIVIDUAL_ACKNOWLEDGE, 1000, false);
+                run(url, messages, "auto", Session.AUTO_ACKNOWLEDGE, 1000, false);
+                run(url, messages, "auto", Session.AUTO_ACKNOWLEDGE, 1000, true);
+                run(url, messages, "dups_ok", Session.DUPS_OK_ACKNOWLEDGE, 1000, false);
+            }
+        } finally {
+            broker.stop();
+        }
+    }
+
+    static void run(String url, List<String> messages, String name, int acknowledgeMode, int prefetch,
+            boolean optimizeAcknowledge) throws Exception {
+        final String queue = "benchmark" + queues++;
+        fill(url, queue, messages);
+
+        final ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(url);
+        factory.getPrefetchPolicy().setQueuePrefetch(prefetch);
+        factory.setOptimizeAcknowledge(optimizeAcknowledge);
+        // Without a scheduled ack, the last partial batch is never acknowledged, and delivery stalls
+        factory.setOptimizedAckScheduledAckInterval(optimizeAcknowledge ? 1000 : 0);
+
+        final CountDownLatch received = new CountDownLatch(MESSAGES);
+        final Connection conn = factory.createConnection();
+        try {
+            final Session session = conn.createSession(false, acknowledgeMode);
+            final MessageConsumer consumer = session.createConsumer(session.createQueue(queue));
+            consumer.setMessageListener(msg -> {
+                try {
+                    msg.acknowledge();
+                } catch (final JMSException e) {
+                    throw new RuntimeException(e);
+                }
+                received.countDown();
+            });
+
+            final long start = System.nanoTime();
+            conn.start();
+            if (!received.await(5, TimeUnit.MINUTES)) {
+                throw new RuntimeException("Gave up waiting for messages");
+            }
+            final long elapsed = System.nanoTime() - start;
+
+            System.out.println(String.format("  %-10s prefetch %5d%s %10.0f messages/s", name, prefetch,
+                    optimizeAcknowledge ? " optimized" : "          ", MESSAGES * 1e9 / elapsed));
+        } finally {
+            conn.close();
+        }
+    }
+
+    static void fill(String url, String queue, List<String> messages) throws Exception {
+        final ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(url);
+        factory.setUseAsyncSend(true);
+
+        final Connection conn = factory.createConnection();
+        try {
+            final Session session = conn.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            final MessageProducer producer = session.createProducer(session.createQueue(queue));
+            producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+            for (int i = 0; i < MESSAGES; i++) {
+                producer.send(session.createTextMessage(messages.get(i % messages.size())));
+            }
+        } finally {
+            conn.close();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.dataconservancy.pass.authz.listener;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author apb@jhu.edu
+ */
+public class PartitionedExecutorTest {
+
+    PartitionedExecutor toTest;
+
+    @After
+    public void tearDown() {
+        if (toTest != null) {
+            toTest.close();
+        }
+    }
+
+    @Test
+    public void routingTest() throws Exception {
+        toTest = new PartitionedExecutor(4, 100, "test-partition");
+
+        final Map<String, Set<String>> threads = new ConcurrentHashMap<>();
+        final CountDownLatch done = new CountDownLatch(40);
+        for (int i = 0; i < 40; i++) {
+            final String key = "http://example.org/submissions/" + (i % 8);
+            assertEquals(toTest.partition(key), toTest.partition(key));
+            assertTrue(toTest.partition(key) >= 0 && toTest.partition(key) < 4);
+
+            toTest.execute(key, () -> {
+                threads.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(Thread.currentThread()
+                        .getName());
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        // Each key only ever ran on its own partition's thread
+        assertEquals(8, threads.size());
+        threads.values().forEach(names -> assertEquals(1, names.size()));
+
+        // Keys on the same partition share a thread, keys on different partitions don't
+        for (final String a : threads.keySet()) {
+            for (final String b : threads.keySet()) {
+                assertEquals(toTest.partition(a) == toTest.partition(b), threads.get(a).equals(threads.get(b)));
+            }
+        }
+    }
+
+    @Test
+    public void negativeHashTest() {
+        toTest = new PartitionedExecutor(3, 1, "test-partition");
+
+        final Object key = new Object() {
+
+            @Override
+            public int hashCode() {
+                return Integer.MIN_VALUE;
+            }
+        };
+        assertTrue(toTest.partition(key) >= 0 && toTest.partition(key) < 3);
+    }
+
+    @Test
+    public void orderTest() throws Exception {
+        toTest = new PartitionedExecutor(4, 10, "test-partition");
+
+        final List<Integer> ran = new CopyOnWriteArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1000);
+
+        // More tasks than a partition holds, so submitting also has to wait for room
+        for (int i = 0; i < 1000; i++) {
+            final int n = i;
+            toTest.execute("http://example.org/submissions/1", () -> {
+                ran.add(n);
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        assertEquals(IntStream.range(0, 1000).boxed().collect(toList()), ran);
+    }
+
+    @Test
+    public void blocksWhenFullTest() throws Exception {
+        toTest = new PartitionedExecutor(1, 1, "test-partition");
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch ran = new CountDownLatch(3);
+
+        // One task running, one waiting, so the partition is full
+        toTest.execute("key", () -> {
+            await(release);
+            ran.countDown();
+        });
+        toTest.execute("key", ran::countDown);
+
+        final CountDownLatch submitted = new CountDownLatch(1);
+        final Thread submitter = new Thread(() -> {
+            toTest.execute("key", ran::countDown);
+            submitted.countDown();
+        });
+        submitter.setDaemon(true);
+        submitter.start();
+
+        assertFalse(submitted.await(500, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        assertTrue(submitted.await(10, TimeUnit.SECONDS));
+        assertTrue(ran.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void offerTest() throws Exception {
+        toTest = new PartitionedExecutor(1, 1, "test-partition");
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch ran = new CountDownLatch(3);
+
+        final CountDownLatch started = new CountDownLatch(1);
+
+        // Nothing is running yet, so the first task is taken off the queue and a second fits
+        assertTrue(toTest.offer("key", () -> {
+            started.countDown();
+            await(release);
+            ran.countDown();
+        }));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertTrue(toTest.offer("key", ran::countDown));
+
+        // Full, so the next is refused at once rather than waiting
+        assertFalse(toTest.offer("key", ran::countDown));
+
+        release.countDown();
+        assertFalse(ran.await(500, TimeUnit.MILLISECONDS));
+        assertEquals(1, ran.getCount());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
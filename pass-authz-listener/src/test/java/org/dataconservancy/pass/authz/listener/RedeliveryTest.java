@@ -0,0 +1,168 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.listener;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author apb@jhu.edu
+ */
+public class RedeliveryTest {
+
+    final PartitionedExecutor workers = new PartitionedExecutor(2, 10, "test-worker");
+
+    final ListenerStats stats = new ListenerStats();
+
+    final List<Exception> deadLetters = new CopyOnWriteArrayList<>();
+
+    final CountDownLatch done = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        workers.close();
+    }
+
+    @Test
+    public void delayTest() {
+        try (Redelivery toTest = new Redelivery(10, 100, 1000, workers, m -> {}, (m, e) -> {}, stats)) {
+            assertEquals(asList(100L, 200L, 400L, 800L, 1000L, 1000L), asList(toTest.delay(1), toTest.delay(2),
+                    toTest.delay(3), toTest.delay(4), toTest.delay(5), toTest.delay(6)));
+            assertEquals(1000L, toTest.delay(100));
+        }
+    }
+
+    @Test
+    public void retryTest() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+
+        try (Redelivery toTest = new Redelivery(5, 10, 100, workers, m -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new RuntimeException("Fedora is unavailable");
+            }
+            done.countDown();
+        }, this::deadLetter, stats)) {
+            toTest.submit(message());
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        }
+
+        assertEquals(3, attempts.get());
+        assertEquals(2, stats.getRetried());
+        assertTrue(deadLetters.isEmpty());
+    }
+
+    @Test
+    public void deadLetterTest() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+
+        try (Redelivery toTest = new Redelivery(3, 10, 100, workers, m -> {
+            throw new RuntimeException("Failure " + attempts.incrementAndGet());
+        }, this::deadLetter, stats)) {
+            toTest.submit(message());
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        }
+
+        assertEquals(3, attempts.get());
+        assertEquals(2, stats.getRetried());
+        assertEquals(1, stats.getDeadLettered());
+        assertEquals(1, deadLetters.size());
+        assertEquals("Failure 3", deadLetters.get(0).getMessage());
+    }
+
+    @Test
+    public void fullWorkerTest() throws Exception {
+        final FedoraMessage blocked = message("http://example.org/submissions/1");
+        int i = 2;
+        while (workers.partition(URI.create("http://example.org/submissions/" + i)) == workers.partition(blocked
+                .getResourceURI())) {
+            i++;
+        }
+        final FedoraMessage other = message("http://example.org/submissions/" + i);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch failed = new CountDownLatch(1);
+        final Map<URI, AtomicInteger> attempts = new ConcurrentHashMap<>();
+
+        try (Redelivery toTest = new Redelivery(5, 200, 200, workers, m -> {
+            if (attempts.computeIfAbsent(m.getResourceURI(), k -> new AtomicInteger()).incrementAndGet() == 1) {
+                failed.countDown();
+                throw new RuntimeException("Fedora is unavailable");
+            }
+            if (m.getResourceURI().equals(other.getResourceURI())) {
+                done.countDown();
+            }
+        }, this::deadLetter, stats)) {
+            toTest.submit(blocked);
+            assertTrue(failed.await(10, TimeUnit.SECONDS));
+
+            // Fill its worker before it is retried, so the retry has to wait for room
+            for (int n = 0; n < 11; n++) {
+                workers.execute(blocked.getResourceURI(), () -> await(release));
+            }
+
+            // ...which doesn't hold up the retry of a later message on another worker
+            toTest.submit(other);
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(2, attempts.get(other.getResourceURI()).get());
+            assertEquals(1, attempts.get(blocked.getResourceURI()).get());
+
+            release.countDown();
+            for (int n = 0; n < 1000 && attempts.get(blocked.getResourceURI()).get() < 2; n++) {
+                Thread.sleep(10);
+            }
+            assertEquals(2, attempts.get(blocked.getResourceURI()).get());
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void deadLetter(FedoraMessage fm, Exception e) {
+        deadLetters.add(e);
+        done.countDown();
+    }
+
+    private static FedoraMessage message() {
+        return message("http://example.org/submissions/1");
+    }
+
+    private static FedoraMessage message(String resource) {
+        final FedoraMessage fm = new FedoraMessage();
+        fm.setResourceURI(resource);
+        fm.setResourceTypes(new String[] { "http://oapass.org/ns/pass#Submission" });
+        fm.setAction(FedoraAction.MODIFIED);
+        return fm;
+    }
+}
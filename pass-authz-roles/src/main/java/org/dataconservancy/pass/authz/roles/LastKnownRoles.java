@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.roles;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the most recently determined roles of each principal, for serving when roles cannot be determined.
+ * <p>
+ * Roles are only served for a bounded grace period after they were last determined. When the capacity is exceeded,
+ * expired entries are dropped, then arbitrary others, until a tenth of the capacity is free again.
+ * </p>
+ * <p>
+ * Roles are recorded on every request whose roles are looked up, so this does not take a lock.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+class LastKnownRoles {
+
+    private final long graceNanos;
+
+    private final int capacity;
+
+    private final Map<String, Known> known = new ConcurrentHashMap<>();
+
+    LastKnownRoles(int capacity, Duration grace) {
+        this.graceNanos = grace.toNanos();
+        this.capacity = capacity;
+    }
+
+    /**
+     * Record the roles of a principal.
+     *
+     * @param principal The principal
+     * @param roles Roles just determined for the principal
+     */
+    void put(String principal, Set<String> roles) {
+        if (principal == null || graceNanos <= 0) {
+            return;
+        }
+
+        known.put(principal, new Known(roles));
+
+        if (known.size() > capacity) {
+            evict(principal);
+        }
+    }
+
+    /**
+     * Get the last known roles of a principal.
+     *
+     * @param principal The principal
+     * @return The roles, or null if unknown, or if they were determined longer ago than the grace period.
+     */
+    Set<String> get(String principal) {
+        if (principal == null) {
+            return null;
+        }
+
+        final Known k = known.get(principal);
+        if (k == null) {
+            return null;
+        } else if (isExpired(k, System.nanoTime())) {
+            known.remove(principal, k);
+            return null;
+        }
+        return k.roles;
+    }
+
+    /* Frees a tenth of the capacity at once, so that a full map is not swept on every put; keeps the given principal */
+    private void evict(String keep) {
+        final long now = System.nanoTime();
+        known.values().removeIf(k -> isExpired(k, now));
+
+        final int target = capacity - capacity / 10;
+        for (final Iterator<String> i = known.keySet().iterator(); known.size() > target && i.hasNext();) {
+            if (!i.next().equals(keep)) {
+                i.remove();
+            }
+        }
+    }
+
+    private boolean isExpired(Known k, long now) {
+        return now - k.nanoTime > graceNanos;
+    }
+
+    private static class Known {
+
+        final Set<String> roles;
+
+        final long nanoTime = System.nanoTime();
+
+        Known(Set<String> roles) {
+            this.roles = roles;
+        }
+    }
+}
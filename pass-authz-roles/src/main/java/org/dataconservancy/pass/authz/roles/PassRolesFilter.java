@@ -22,14 +22,26 @@ import static org.dataconservancy.pass.authz.roles.AuthRolesProvider.getRoles;
 
 import java.io.IOException;
 import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -37,13 +49,19 @@ import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
 
 import org.dataconservancy.pass.authz.AuthUser;
 import org.dataconservancy.pass.authz.AuthUserProvider;
+import org.dataconservancy.pass.authz.CircuitBreaker;
+import org.dataconservancy.pass.authz.LatencyHistogram;
 import org.dataconservancy.pass.authz.LogUtil;
+import org.dataconservancy.pass.authz.RequestTimings;
+import org.dataconservancy.pass.authz.usertoken.RoleAssertion;
+import org.dataconservancy.pass.authz.usertoken.RoleAssertionFactory;
 import org.dataconservancy.pass.client.PassClient;
 import org.dataconservancy.pass.client.PassClientFactory;
 import org.dataconservancy.pass.model.User;
@@ -67,10 +85,84 @@ public class PassRolesFilter implements Filter {
 
     public static final String PROP_USER_SERVICE_PATH = "authz.user.service.path";
 
+    /** Property for enabling asynchronous processing of requests that need a User lookup */
+    public static final String PROP_ASYNC = "authz.async";
+
+    /** Property for the asynchronous processing timeout, in milliseconds */
+    public static final String PROP_ASYNC_TIMEOUT = "authz.async.timeout.ms";
+
+    /** Property for the base32 encoded key used to protect role assertions. If unset, no assertions are used */
+    public static final String PROP_ASSERTION_KEY = "authz.assertion.key";
+
+    /** Property for how long a role assertion is valid, in seconds */
+    public static final String PROP_ASSERTION_LIFETIME = "authz.assertion.lifetime.seconds";
+
+    /** Property for the name of the role assertion cookie */
+    public static final String PROP_ASSERTION_COOKIE = "authz.assertion.cookie";
+
+    public static final String DEFAULT_ASSERTION_COOKIE = "pass-roles-assertion";
+
+    /**
+     * Property for whether the role assertion cookie is always marked Secure. If false, it is only marked Secure when
+     * the request is secure, or was forwarded from https
+     */
+    public static final String PROP_ASSERTION_SECURE = "authz.assertion.secure";
+
+    /** Property for the timeout of reading a User resource from the repository, in milliseconds */
+    public static final String PROP_USER_READ_TIMEOUT = "authz.user.read.timeout.ms";
+
+    /**
+     * Property for how long the last known roles of a user may be served when a backend needed to determine their
+     * roles is unavailable, in seconds. Zero (the default) disables this.
+     */
+    public static final String PROP_ROLES_GRACE = "authz.roles.grace.seconds";
+
+    /** Property for the number of users whose last known roles are remembered */
+    public static final String PROP_ROLES_GRACE_SIZE = "authz.roles.grace.size";
+
+    /** Total time spent determining roles */
+    static final LatencyHistogram ROLES_PHASE = LatencyHistogram.named("roles");
+
+    /** Time spent reading a User resource from the repository */
+    static final LatencyHistogram READ_PHASE = LatencyHistogram.named("user-read");
+
+    /** Time spent formatting the roles header */
+    static final LatencyHistogram FORMAT_PHASE = LatencyHistogram.named("roles-format");
+
+    /** Most distinct role sets whose formatted header values are remembered */
+    static final int ROLES_HEADER_CACHE_SIZE = 1000;
+
+    static final String ROLES_ATTRIBUTE = PassRolesFilter.class.getName() + ".roles";
+
     static final String USER_SERVICE_PATH = ofNullable(getValue(PROP_USER_SERVICE_PATH)).orElse("/pass-user-service");
 
     boolean allowExternalRoles;
 
+    boolean async;
+
+    long asyncTimeout;
+
+    RoleAssertionFactory assertions;
+
+    Duration assertionLifetime;
+
+    boolean assertionSecure = true;
+
+    CircuitBreaker readBreaker;
+
+    LastKnownRoles lastKnownRoles;
+
+    boolean serverTiming;
+
+    /*
+     * Formatted header values of role sets. Requests of the same user share the same value, rather than each
+     * formatting (and holding) their own copy. Lookups take no lock; once full, new role sets are formatted without
+     * being remembered.
+     */
+    private final Map<Set<String>, String> rolesHeaders = new ConcurrentHashMap<>();
+
+    final String assertionCookie = ofNullable(getValue(PROP_ASSERTION_COOKIE)).orElse(DEFAULT_ASSERTION_COOKIE);
+
     final String authzHeader = ofNullable(getValue(PROP_HEADER_NAME)).orElse(DEFAULT_ROLE_HEADER);
 
     final String authzRoleSeparator = ofNullable(getValue(PROP_HEADER_SEPARATOR)).orElse(",");
@@ -112,6 +204,35 @@ public class PassRolesFilter implements Filter {
             LOG.warn("Init: Allowing external values for authz header {}", authzHeader);
         }
 
+        async = Boolean.valueOf(ofNullable(getValue(PROP_ASYNC)).orElse("false"));
+        asyncTimeout = Long.valueOf(ofNullable(getValue(PROP_ASYNC_TIMEOUT)).orElse("30000"));
+        if (async) {
+            LOG.info("Init: User lookups will be processed asynchronously, timeout {}ms", asyncTimeout);
+        }
+
+        assertions = ofNullable(getValue(PROP_ASSERTION_KEY)).map(RoleAssertionFactory::new).orElse(null);
+        assertionLifetime = Duration.ofSeconds(Long.valueOf(ofNullable(getValue(PROP_ASSERTION_LIFETIME)).orElse(
+                "300")));
+        assertionSecure = Boolean.valueOf(ofNullable(getValue(PROP_ASSERTION_SECURE)).orElse("true"));
+        if (assertions != null) {
+            LOG.info("Init: Issuing role assertions in cookie {}, valid for {}", assertionCookie, assertionLifetime);
+        }
+
+        readBreaker = new CircuitBreaker("User read", Duration.ofMillis(Long.valueOf(ofNullable(getValue(
+                PROP_USER_READ_TIMEOUT)).orElse("10000"))));
+
+        final Duration grace = Duration.ofSeconds(Long.valueOf(ofNullable(getValue(PROP_ROLES_GRACE)).orElse("0")));
+        lastKnownRoles = new LastKnownRoles(Integer.valueOf(ofNullable(getValue(PROP_ROLES_GRACE_SIZE)).orElse(
+                "1000")), grace);
+        if (!grace.isZero()) {
+            LOG.info("Init: Last known roles may be served for {} when roles are unavailable", grace);
+        }
+
+        serverTiming = Boolean.valueOf(ofNullable(getValue(RequestTimings.PROP_SERVER_TIMING)).orElse("false"));
+        if (serverTiming) {
+            LOG.info("Init: Adding {} header to responses", RequestTimings.SERVER_TIMING_HEADER);
+        }
+
     }
 
     @Override
@@ -121,20 +242,44 @@ public class PassRolesFilter implements Filter {
         final HttpServletRequest req = (HttpServletRequest) request;
         final HttpServletResponse resp = (HttpServletResponse) response;
 
+        // Roles were determined asynchronously, and the container has dispatched the request back to us.
+        if (req.getDispatcherType() == DispatcherType.ASYNC && req.getAttribute(ROLES_ATTRIBUTE) != null) {
+            RequestTimings.of(req).addServerTiming(resp);
+            chain.doFilter(new AuthzRequestWrapper(req, authzHeader, (String) req.getAttribute(
+                    ROLES_ATTRIBUTE)), response);
+            return;
+        }
+
         AuthzRequestWrapper rolesWrapper = null;
         try {
             if (!req.getRequestURI().startsWith(USER_SERVICE_PATH)) {
                 LOG.debug("Preparing authorizations for {} {}", req.getMethod(), req.getRequestURL());
-                rolesWrapper = new AuthzRequestWrapper(req);
+                final long start = System.nanoTime();
+                final RequestTimings timings = RequestTimings.start(req, serverTiming);
+
+                if (async && req.isAsyncSupported()) {
+                    final CompletableFuture<String> roles = resolveRolesAsync(req, resp)
+                            .whenComplete((r, e) -> timings.record(ROLES_PHASE, start));
+
+                    if (!roles.isDone()) {
+                        // Don't hold on to the container thread while looking up the user.
+                        dispatchWhenDone(req, resp, roles);
+                        return;
+                    }
+
+                    rolesWrapper = new AuthzRequestWrapper(req, authzHeader, roles.join());
+                } else {
+                    rolesWrapper = new AuthzRequestWrapper(req, authzHeader, resolveRoles(req, resp));
+                    timings.record(ROLES_PHASE, start);
+                }
+                timings.addServerTiming(resp);
             } else {
                 // If the request is for the user service, just pass down the chain, don't apply the roles wrapper.
                 chain.doFilter(request, response);
             }
         } catch (final Exception e) {
             LOG.warn("Could not apply roles filter", e);
-            if (!resp.isCommitted()) {
-                resp.sendError(500, "Error determining authorization roles.  This request has been logged.");
-            }
+            sendError(resp, e);
         }
 
         if (rolesWrapper != null) {
@@ -143,51 +288,295 @@ public class PassRolesFilter implements Filter {
 
     }
 
-    @Override
-    public void destroy() {
-        // nothing
+    /*
+     * Parks the request until the roles are known, then dispatches it back through the filter chain. Responds with a
+     * 503 if the roles cannot be determined within the async timeout.
+     */
+    private void dispatchWhenDone(HttpServletRequest req, HttpServletResponse resp, CompletableFuture<String> roles) {
+        final AsyncContext context = req.startAsync();
+        context.setTimeout(asyncTimeout);
+
+        final AtomicBoolean finished = new AtomicBoolean(false);
+
+        context.addListener(new AsyncListener() {
+
+            @Override
+            public void onTimeout(AsyncEvent event) throws IOException {
+                if (finished.compareAndSet(false, true)) {
+                    LOG.warn("Timed out determining roles for {} {}", req.getMethod(), req.getRequestURI());
+                    sendError(resp, 503, "Timed out determining authorization roles.  Please try again later.");
+                    context.complete();
+                }
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                finished.set(true);
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) {
+                // nothing
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+                // nothing
+            }
+        });
+
+        roles.whenComplete((r, e) -> {
+            if (!finished.compareAndSet(false, true)) {
+                LOG.debug("Request for {} has already finished, discarding roles", req.getRequestURI());
+                return;
+            }
+
+            if (e != null) {
+                LOG.warn("Could not apply roles filter", e);
+                sendError(resp, e);
+                context.complete();
+            } else {
+                req.setAttribute(ROLES_ATTRIBUTE, r);
+                context.dispatch();
+            }
+        });
     }
 
-    class AuthzRequestWrapper extends HttpServletRequestWrapper {
+    /*
+     * Responds with a 503 if roles could not be determined because a backend is unavailable, otherwise a 500.
+     */
+    private void sendError(HttpServletResponse resp, Throwable e) {
+        if (isUnavailable(e)) {
+            sendError(resp, 503, "Authorization roles are temporarily unavailable.  Please try again later.");
+        } else {
+            sendError(resp, 500, "Error determining authorization roles.  This request has been logged.");
+        }
+    }
 
-        final String roles;
+    private static boolean isUnavailable(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CircuitBreaker.OpenException || cause instanceof TimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        public AuthzRequestWrapper(HttpServletRequest request) {
-            super(request);
+    private void sendError(HttpServletResponse resp, int status, String message) {
+        try {
+            if (!resp.isCommitted()) {
+                resp.sendError(status, message);
+            }
+        } catch (final IOException e) {
+            LOG.warn("Could not send error response", e);
+        }
+    }
+
+    String resolveRoles(HttpServletRequest request, HttpServletResponse response) {
+        final Set<String> rolesDiscovered = getExternalRoles(request);
+        final boolean secure = isSecure(request);
+        final RequestTimings timings = RequestTimings.of(request);
+        String principal = null;
+
+        try {
+            final AuthUserProvider provider = authUserProviderFactory.apply(request.getServletContext());
+            principal = provider.getPrincipal(request);
+
+            final Set<String> assertedRoles = getAssertedRoles(request, provider);
+            if (assertedRoles != null) {
+                rolesDiscovered.addAll(assertedRoles);
+                return toRolesHeader(rolesDiscovered, timings);
+            }
+
+            LOG.debug("Getting user info for roles");
+            final AuthUser user = provider.getUser(request, a -> readUserResource(a, timings), true);
 
-            final Set<String> rolesDiscovered = new HashSet<>();
+            return toRolesHeader(rolesDiscovered, user, secure, response, timings);
+        } catch (final Exception e) {
+            return toLastKnownRolesHeader(rolesDiscovered, principal, e, timings);
+        }
+    }
 
-            final String externalRoles = request.getHeader(authzHeader);
+    CompletableFuture<String> resolveRolesAsync(HttpServletRequest request, HttpServletResponse response) {
+        final Set<String> rolesDiscovered = getExternalRoles(request);
+        final boolean secure = isSecure(request);
+        final RequestTimings timings = RequestTimings.of(request);
+        String principal = null;
+
+        try {
+            final AuthUserProvider provider = authUserProviderFactory.apply(request.getServletContext());
+            principal = provider.getPrincipal(request);
 
-            if (allowExternalRoles && externalRoles != null) {
-                LOG.warn("Accepting user-asserted roles '{}'", externalRoles);
-                rolesDiscovered.addAll(Arrays.asList(externalRoles.split(authzRoleSeparator)));
-            } else if (externalRoles != null) {
-                LOG.warn("A request tried to assert roles '{}' in header '{}', but this is not allowed!  Discarding.",
-                        externalRoles, authzHeader);
+            final Set<String> assertedRoles = getAssertedRoles(request, provider);
+            if (assertedRoles != null) {
+                rolesDiscovered.addAll(assertedRoles);
+                return CompletableFuture.completedFuture(toRolesHeader(rolesDiscovered, timings));
             }
 
-            try {
-                LOG.debug("Getting user info for roles");
-                final AuthUser user = authUserProviderFactory.apply(request.getServletContext()).getUser(request,
-                        a -> {
-                            LOG.debug("Entering critical section");
-                            if (a.getId() != null && a.getUser() == null) {
-                                a.setUser(passClient.readResource(a.getId(), User.class));
-                            }
-                            return a;
-                        }, true);
+            final String lookedUp = principal;
+
+            LOG.debug("Getting user info for roles asynchronously");
+            return provider.getUserAsync(request, a -> readUserResource(a, timings), true)
+                    .handle((user, e) -> e == null
+                            ? toRolesHeader(rolesDiscovered, user, secure, response, timings)
+                            : toLastKnownRolesHeader(rolesDiscovered, lookedUp, e, timings));
+        } catch (final Exception e) {
+            return CompletableFuture.completedFuture(toLastKnownRolesHeader(rolesDiscovered, principal, e, timings));
+        }
+    }
+
+    /*
+     * Returns the roles from a valid role assertion cookie for the request's principal, or null if there isn't one.
+     */
+    private Set<String> getAssertedRoles(HttpServletRequest request, AuthUserProvider provider) {
+        if (assertions == null || request.getCookies() == null) {
+            return null;
+        }
 
-                rolesDiscovered.addAll(getRoles(user).stream()
-                        .map(URI::toString)
-                        .collect(Collectors.toList()));
-            } catch (final Exception e) {
-                throw new RuntimeException("Error looking up user or roles ", e);
+        for (final Cookie cookie : request.getCookies()) {
+            if (assertionCookie.equals(cookie.getName())) {
+                try {
+                    final RoleAssertion assertion = assertions.from(cookie.getValue());
+                    if (assertion.isValidFor(provider.getPrincipal(request))) {
+                        LOG.debug("Using asserted roles for {}", assertion.getPrincipal());
+                        return assertion.getRoles();
+                    }
+                } catch (final Exception e) {
+                    LOG.debug("Ignoring unreadable role assertion", e);
+                }
             }
+        }
+
+        return null;
+    }
+
+    /*
+     * Whether a cookie for the request is to be marked Secure. Behind a load balancer that terminates TLS, the request
+     * itself is not secure, so it is only consulted if the cookie is not always marked Secure.
+     */
+    private boolean isSecure(HttpServletRequest request) {
+        return assertionSecure || request.isSecure() || "https".equalsIgnoreCase(request.getHeader(
+                "X-Forwarded-Proto"));
+    }
+
+    private void assertRoles(HttpServletResponse response, boolean secure, AuthUser user, Set<String> roles) {
+        if (assertions == null || user == null || user.getUser() == null || user.getPrincipal() == null) {
+            return;
+        }
 
+        final RoleAssertion assertion = assertions.forPrincipal(user.getPrincipal(), roles, assertionLifetime);
+
+        final Cookie cookie = new Cookie(assertionCookie, assertion.toString());
+        cookie.setHttpOnly(true);
+        cookie.setSecure(secure);
+        cookie.setPath("/");
+        cookie.setMaxAge((int) assertionLifetime.getSeconds());
+
+        response.addCookie(cookie);
+    }
+
+    private Set<String> getExternalRoles(HttpServletRequest request) {
+        final Set<String> rolesDiscovered = new HashSet<>();
+
+        final String externalRoles = request.getHeader(authzHeader);
+
+        if (allowExternalRoles && externalRoles != null) {
+            LOG.warn("Accepting user-asserted roles '{}'", externalRoles);
+            rolesDiscovered.addAll(Arrays.asList(externalRoles.split(authzRoleSeparator)));
+        } else if (externalRoles != null) {
+            LOG.warn("A request tried to assert roles '{}' in header '{}', but this is not allowed!  Discarding.",
+                    externalRoles, authzHeader);
+        }
+
+        return rolesDiscovered;
+    }
+
+    private AuthUser readUserResource(AuthUser a, RequestTimings timings) {
+        LOG.debug("Entering critical section");
+        if (a.getId() != null && a.getUser() == null) {
+            final long start = System.nanoTime();
+            a.setUser(readBreaker.call(() -> passClient.readResource(a.getId(), User.class)));
+            timings.record(READ_PHASE, start);
+        }
+        return a;
+    }
+
+    private String toRolesHeader(Set<String> rolesDiscovered, AuthUser user, boolean secure,
+            HttpServletResponse response, RequestTimings timings) {
+        final Set<String> userRoles = getRoles(user).stream()
+                .map(URI::toString)
+                .collect(Collectors.toSet());
+
+        assertRoles(response, secure, user, userRoles);
+
+        if (user != null && user.getUser() != null) {
+            lastKnownRoles.put(user.getPrincipal(), userRoles);
+        }
+
+        rolesDiscovered.addAll(userRoles);
+        return toRolesHeader(rolesDiscovered, timings);
+    }
+
+    /*
+     * Degraded mode, when the user or their roles could not be determined. If that is because a backend is
+     * unavailable, uses the last known roles, if they were determined recently enough. Otherwise fails.
+     */
+    private String toLastKnownRolesHeader(Set<String> rolesDiscovered, String principal, Throwable e,
+            RequestTimings timings) {
+        final Set<String> lastKnown = isUnavailable(e) ? lastKnownRoles.get(principal) : null;
+
+        if (lastKnown == null) {
+            throw new RuntimeException("Error looking up user or roles ", e);
+        }
+
+        LOG.warn("Could not look up roles for {}, using last known roles instead: {}", principal, e.getMessage());
+        rolesDiscovered.addAll(lastKnown);
+        return toRolesHeader(rolesDiscovered, timings);
+    }
+
+    private String toRolesHeader(Set<String> rolesDiscovered, RequestTimings timings) {
+        final long start = System.nanoTime();
+        String roles = rolesHeaders.get(rolesDiscovered);
+        if (roles == null) {
             roles = String.join(authzRoleSeparator, rolesDiscovered);
+            if (rolesHeaders.size() < ROLES_HEADER_CACHE_SIZE) {
+                final String existing = rolesHeaders.putIfAbsent(new HashSet<>(rolesDiscovered), roles);
+                roles = existing != null ? existing : roles;
+            }
+        }
+        timings.record(FORMAT_PHASE, start);
+
+        LOG.debug("Using auth roles '{}'", roles);
+        return roles;
+    }
 
-            LOG.debug("Using auth roles '{}'", roles);
+    @Override
+    public void destroy() {
+        // nothing
+    }
+
+    /**
+     * Presents the roles header to the rest of the filter chain.
+     * <p>
+     * Downstream code may ask for the headers many times per request, so the header values are prepared once, and
+     * the merged list of header names is computed at most once.
+     * </p>
+     */
+    static class AuthzRequestWrapper extends HttpServletRequestWrapper {
+
+        final String authzHeader;
+
+        final String roles;
+
+        private final List<String> rolesValues;
+
+        private List<String> headerNames;
+
+        public AuthzRequestWrapper(HttpServletRequest request, String authzHeader, String roles) {
+            super(request);
+            this.authzHeader = authzHeader;
+            this.roles = roles;
+            this.rolesValues = Collections.singletonList(roles);
         }
 
         @Override
@@ -201,24 +590,59 @@ public class PassRolesFilter implements Filter {
 
         @Override
         public Enumeration<String> getHeaderNames() {
-            final List<String> headers = Collections.list(super.getHeaderNames());
-            if (!allowExternalRoles) {
-                headers.add(authzHeader);
-            } else if (!headers.contains(authzHeader)) {
-                headers.add(authzHeader);
+            if (headerNames == null) {
+                final List<String> headers = new ArrayList<>();
+                final Enumeration<String> names = super.getHeaderNames();
+                while (names != null && names.hasMoreElements()) {
+                    headers.add(names.nextElement());
+                }
+
+                if (!headers.contains(authzHeader)) {
+                    headers.add(authzHeader);
+                }
+
+                headerNames = headers;
             }
 
-            return Collections.enumeration(headers);
+            return new ListEnumeration(headerNames);
         }
 
         @Override
         public Enumeration<String> getHeaders(String name) {
             if (authzHeader.equals(name)) {
-                return Collections.enumeration(Arrays.asList(roles));
+                return new ListEnumeration(rolesValues);
             } else {
                 return super.getHeaders(name);
             }
 
         }
     }
+
+    /*
+     * Enumeration over a list that is never modified; cheaper than Collections.enumeration(), which wraps an iterator.
+     * An enumeration has a cursor, so each call for one needs a new instance; only the list is shared.
+     */
+    private static class ListEnumeration implements Enumeration<String> {
+
+        private final List<String> values;
+
+        private int index;
+
+        ListEnumeration(List<String> values) {
+            this.values = values;
+        }
+
+        @Override
+        public boolean hasMoreElements() {
+            return index < values.size();
+        }
+
+        @Override
+        public String nextElement() {
+            if (index >= values.size()) {
+                throw new NoSuchElementException();
+            }
+            return values.get(index++);
+        }
+    }
 }
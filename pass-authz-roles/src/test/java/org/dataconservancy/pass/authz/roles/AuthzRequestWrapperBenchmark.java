@@ -0,0 +1,160 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.roles;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.function.Function;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+import org.dataconservancy.pass.authz.roles.PassRolesFilter.AuthzRequestWrapper;
+
+/**
+ * Compares header access through the {@link AuthzRequestWrapper} against the wrapper it replaced, which copied the
+ * header names and allocated a new list of roles on every call.
+ * <p>
+ * This is not a unit test; run its main method with the test classpath, e.g. from an IDE.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+public class AuthzRequestWrapperBenchmark {
+
+    static final String AUTHZ_HEADER = "pass-roles";
+
+    static final String ROLES = "http://oapass.org/ns/roles/johnshopkins.edu#submitter," +
+            "http://oapass.org/ns/roles/johnshopkins.edu#admin";
+
+    static final List<String> HEADER_NAMES = Arrays.asList("Host", "Accept", "Accept-Encoding", "User-Agent",
+            "Cookie", "Eppn", "Displayname", "Mail", "Affiliation", "unique-id", "Employeenumber");
+
+    static final int ITERATIONS = 2_000_000;
+
+    static final int CALLS_PER_REQUEST = 5;
+
+    static volatile Object sink;
+
+    public static void main(String[] args) {
+        final HttpServletRequest request = request();
+
+        for (int round = 0; round < 3; round++) {
+            System.out.println("Round " + round);
+            run("legacy", r -> new LegacyAuthzRequestWrapper(r, AUTHZ_HEADER, ROLES), request);
+            run("current", r -> new AuthzRequestWrapper(r, AUTHZ_HEADER, ROLES), request);
+        }
+    }
+
+    static void run(String name, Function<HttpServletRequest, HttpServletRequest> wrapper,
+            HttpServletRequest request) {
+        final long allocatedBefore = allocatedBytes();
+        final long start = System.nanoTime();
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            final HttpServletRequest wrapped = wrapper.apply(request);
+
+            // Downstream code looks at the headers several times per request
+            for (int j = 0; j < CALLS_PER_REQUEST; j++) {
+                final Enumeration<String> names = wrapped.getHeaderNames();
+                while (names.hasMoreElements()) {
+                    sink = names.nextElement();
+                }
+                final Enumeration<String> roles = wrapped.getHeaders(AUTHZ_HEADER);
+                while (roles.hasMoreElements()) {
+                    sink = roles.nextElement();
+                }
+                sink = wrapped.getHeader(AUTHZ_HEADER);
+            }
+        }
+
+        final long elapsed = System.nanoTime() - start;
+        final long allocated = allocatedBytes() - allocatedBefore;
+
+        System.out.println(String.format("  %-8s %8.1f ns/request %8d bytes/request", name,
+                (double) elapsed / ITERATIONS, allocated / ITERATIONS));
+    }
+
+    static long allocatedBytes() {
+        final java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread()
+                    .getId());
+        }
+        return 0;
+    }
+
+    static HttpServletRequest request() {
+        return (HttpServletRequest) Proxy.newProxyInstance(AuthzRequestWrapperBenchmark.class.getClassLoader(),
+                new Class<?>[] { HttpServletRequest.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "getHeaderNames":
+                        return Collections.enumeration(HEADER_NAMES);
+                    case "getHeader":
+                        return null;
+                    case "getHeaders":
+                        return Collections.emptyEnumeration();
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    /**
+     * The wrapper as it was before header values were prepared up front.
+     */
+    static class LegacyAuthzRequestWrapper extends HttpServletRequestWrapper {
+
+        final String authzHeader;
+
+        final String roles;
+
+        LegacyAuthzRequestWrapper(HttpServletRequest request, String authzHeader, String roles) {
+            super(request);
+            this.authzHeader = authzHeader;
+            this.roles = roles;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            if (authzHeader.equals(name)) {
+                return roles;
+            } else {
+                return super.getHeader(name);
+            }
+        }
+
+        @Override
+        public Enumeration<String> getHeaderNames() {
+            final List<String> headers = Collections.list(super.getHeaderNames());
+            headers.add(authzHeader);
+            return Collections.enumeration(headers);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            if (authzHeader.equals(name)) {
+                return Collections.enumeration(Arrays.asList(roles));
+            } else {
+                return super.getHeaders(name);
+            }
+        }
+    }
+}
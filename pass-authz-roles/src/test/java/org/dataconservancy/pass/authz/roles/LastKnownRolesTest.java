@@ -0,0 +1,85 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.roles;
+
+import static java.util.Collections.singleton;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * @author apb@jhu.edu
+ */
+public class LastKnownRolesTest {
+
+    static final Set<String> ROLES = singleton("submitter");
+
+    @Test
+    public void knownTest() {
+        final LastKnownRoles toTest = new LastKnownRoles(10, Duration.ofMinutes(5));
+
+        toTest.put("bessie@example.org", ROLES);
+
+        assertEquals(ROLES, toTest.get("bessie@example.org"));
+        assertNull(toTest.get("moo@example.org"));
+        assertNull(toTest.get(null));
+    }
+
+    @Test
+    public void expiredTest() throws Exception {
+        final LastKnownRoles toTest = new LastKnownRoles(10, Duration.ofMillis(20));
+
+        toTest.put("bessie@example.org", ROLES);
+        Thread.sleep(50);
+
+        assertNull(toTest.get("bessie@example.org"));
+    }
+
+    @Test
+    public void disabledTest() {
+        final LastKnownRoles toTest = new LastKnownRoles(10, Duration.ZERO);
+
+        toTest.put("bessie@example.org", ROLES);
+
+        assertNull(toTest.get("bessie@example.org"));
+    }
+
+    @Test
+    public void capacityTest() {
+        final LastKnownRoles toTest = new LastKnownRoles(10, Duration.ofMinutes(5));
+
+        for (int i = 0; i < 100; i++) {
+            toTest.put("user" + i + "@example.org", ROLES);
+        }
+
+        int remembered = 0;
+        for (int i = 0; i < 100; i++) {
+            if (toTest.get("user" + i + "@example.org") != null) {
+                remembered++;
+            }
+        }
+
+        // The most recently recorded is always remembered
+        assertEquals(ROLES, toTest.get("user99@example.org"));
+        assertTrue(remembered <= 10);
+    }
+}
@@ -19,25 +19,39 @@ package org.dataconservancy.pass.authz.roles;
 import static java.util.Collections.emptySet;
 import static org.dataconservancy.pass.authz.roles.AuthRolesProvider.getRoles;
 import static org.dataconservancy.pass.authz.roles.PassRolesFilter.PROP_ALLOW_EXTERNAL_ROLES;
+import static org.dataconservancy.pass.authz.roles.PassRolesFilter.PROP_ASSERTION_KEY;
+import static org.dataconservancy.pass.authz.roles.PassRolesFilter.PROP_ASSERTION_SECURE;
+import static org.dataconservancy.pass.authz.roles.PassRolesFilter.PROP_ASYNC;
+import static org.dataconservancy.pass.authz.roles.PassRolesFilter.PROP_ROLES_GRACE;
+import static org.dataconservancy.pass.authz.roles.PassRolesFilter.ROLES_ATTRIBUTE;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.contains;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 
+import java.io.IOException;
 import java.net.URI;
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
+import javax.servlet.AsyncContext;
+import javax.servlet.DispatcherType;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
@@ -45,6 +59,8 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.dataconservancy.pass.authz.AuthUser;
 import org.dataconservancy.pass.authz.AuthUserProvider;
+import org.dataconservancy.pass.authz.CircuitBreaker;
+import org.dataconservancy.pass.authz.RequestTimings;
 import org.dataconservancy.pass.client.PassClient;
 import org.dataconservancy.pass.client.PassClientFactory;
 import org.dataconservancy.pass.model.User;
@@ -54,6 +70,7 @@ import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
@@ -61,6 +78,7 @@ import org.powermock.modules.junit4.PowerMockRunner;
  * @author apb@jhu.edu
  */
 @RunWith(PowerMockRunner.class)
+@PowerMockIgnore({ "javax.crypto.*", "javax.management.*" })
 @PrepareForTest(value = { AuthRolesProvider.class, PassClientFactory.class })
 public class PassRolesFilterTest {
 
@@ -82,6 +100,9 @@ public class PassRolesFilterTest {
     @Mock
     FilterChain chain;
 
+    @Mock
+    AsyncContext asyncContext;
+
     @Captor
     ArgumentCaptor<HttpServletRequest> requestCaptor;
 
@@ -94,6 +115,11 @@ public class PassRolesFilterTest {
     @Before
     public void setUp() {
         System.setProperty(PROP_ALLOW_EXTERNAL_ROLES, "false");
+        System.setProperty(PROP_ASYNC, "false");
+        System.clearProperty(PROP_ASSERTION_KEY);
+        System.clearProperty(PROP_ROLES_GRACE);
+        System.clearProperty(PROP_ASSERTION_SECURE);
+        System.clearProperty(RequestTimings.PROP_SERVER_TIMING);
         roles = new HashSet<>();
         authUser = new AuthUser();
 
@@ -309,4 +335,231 @@ public class PassRolesFilterTest {
         verify(passClient, times(1)).readResource(eq(id), eq(User.class));
         assertNull(authUser.getUser());
     }
+
+    @Test
+    public void asyncRolesTest() throws Exception {
+        final String AUTHZ_VALUE = "foo";
+        System.setProperty(PROP_ASYNC, "true");
+        toTest.init(null);
+
+        roles.add(URI.create(AUTHZ_VALUE));
+
+        final CompletableFuture<AuthUser> lookup = new CompletableFuture<>();
+        when(request.isAsyncSupported()).thenReturn(true);
+        when(request.startAsync()).thenReturn(asyncContext);
+        when(userProvider.getUserAsync(any(), any(), eq(true))).thenReturn(lookup);
+
+        toTest.doFilter(request, response, chain);
+
+        // The request is parked, rather than passed down the chain
+        verify(request).startAsync();
+        verify(chain, never()).doFilter(any(), any());
+
+        lookup.complete(authUser);
+
+        verify(request).setAttribute(ROLES_ATTRIBUTE, AUTHZ_VALUE);
+        verify(asyncContext).dispatch();
+
+        // Now the container dispatches the request back to us
+        when(request.getDispatcherType()).thenReturn(DispatcherType.ASYNC);
+        when(request.getAttribute(ROLES_ATTRIBUTE)).thenReturn(AUTHZ_VALUE);
+
+        toTest.doFilter(request, response, chain);
+
+        verify(chain).doFilter(requestCaptor.capture(), eq(response));
+        assertEquals(AUTHZ_VALUE, requestCaptor.getValue().getHeader(toTest.authzHeader));
+        verify(userProvider, times(1)).getUserAsync(any(), any(), eq(true));
+        verify(response, times(0)).sendError(eq(500), any());
+    }
+
+    @Test
+    public void asyncCachedRolesTest() throws Exception {
+        final String AUTHZ_VALUE = "foo";
+        System.setProperty(PROP_ASYNC, "true");
+        toTest.init(null);
+
+        roles.add(URI.create(AUTHZ_VALUE));
+
+        when(request.isAsyncSupported()).thenReturn(true);
+        when(userProvider.getUserAsync(any(), any(), eq(true))).thenReturn(CompletableFuture.completedFuture(
+                authUser));
+
+        toTest.doFilter(request, response, chain);
+
+        // Already known roles don't need an async round trip
+        verify(request, never()).startAsync();
+        verify(chain).doFilter(requestCaptor.capture(), eq(response));
+        assertEquals(AUTHZ_VALUE, requestCaptor.getValue().getHeader(toTest.authzHeader));
+    }
+
+    @Test
+    public void asyncErrorTest() throws Exception {
+        System.setProperty(PROP_ASYNC, "true");
+        toTest.init(null);
+
+        final CompletableFuture<AuthUser> lookup = new CompletableFuture<>();
+        when(request.isAsyncSupported()).thenReturn(true);
+        when(request.startAsync()).thenReturn(asyncContext);
+        when(userProvider.getUserAsync(any(), any(), eq(true))).thenReturn(lookup);
+
+        toTest.doFilter(request, response, chain);
+
+        lookup.completeExceptionally(new RuntimeException("Fedora is down"));
+
+        verify(response).sendError(eq(500), any());
+        verify(asyncContext).complete();
+        verify(asyncContext, never()).dispatch();
+        verify(chain, never()).doFilter(any(), any());
+    }
+
+    @Test
+    public void lastKnownRolesTest() throws Exception {
+        final String AUTHZ_VALUE = "foo";
+        System.setProperty(PROP_ROLES_GRACE, "300");
+        toTest.init(null);
+
+        roles.add(URI.create(AUTHZ_VALUE));
+        authUser.setPrincipal("bessie@example.org");
+        authUser.setUser(new User());
+        when(userProvider.getPrincipal(any())).thenReturn("bessie@example.org");
+
+        toTest.doFilter(request, response, chain);
+
+        // Now the backend goes down
+        when(userProvider.getUser(any(), any(), eq(true))).thenThrow(unavailable());
+
+        toTest.doFilter(request, response, chain);
+
+        verify(chain, times(2)).doFilter(requestCaptor.capture(), eq(response));
+        assertEquals(AUTHZ_VALUE, requestCaptor.getValue().getHeader(toTest.authzHeader));
+        verify(response, never()).sendError(any(Integer.class), any());
+    }
+
+    @Test
+    public void asyncLastKnownRolesTest() throws Exception {
+        final String AUTHZ_VALUE = "foo";
+        System.setProperty(PROP_ASYNC, "true");
+        System.setProperty(PROP_ROLES_GRACE, "300");
+        toTest.init(null);
+
+        roles.add(URI.create(AUTHZ_VALUE));
+        authUser.setPrincipal("bessie@example.org");
+        authUser.setUser(new User());
+        when(userProvider.getPrincipal(any())).thenReturn("bessie@example.org");
+        when(request.isAsyncSupported()).thenReturn(true);
+        when(userProvider.getUserAsync(any(), any(), eq(true))).thenReturn(CompletableFuture.completedFuture(
+                authUser));
+
+        toTest.doFilter(request, response, chain);
+
+        // Now the backend goes down, failing before a lookup even starts
+        when(userProvider.getUserAsync(any(), any(), eq(true))).thenThrow(unavailable());
+
+        toTest.doFilter(request, response, chain);
+
+        verify(chain, times(2)).doFilter(requestCaptor.capture(), eq(response));
+        assertEquals(AUTHZ_VALUE, requestCaptor.getValue().getHeader(toTest.authzHeader));
+        verify(response, never()).sendError(any(Integer.class), any());
+    }
+
+    @Test
+    public void noLastKnownRolesTest() throws Exception {
+        toTest.init(null);
+
+        authUser.setPrincipal("bessie@example.org");
+        authUser.setUser(new User());
+        when(userProvider.getPrincipal(any())).thenReturn("bessie@example.org");
+
+        toTest.doFilter(request, response, chain);
+
+        when(userProvider.getUser(any(), any(), eq(true))).thenThrow(unavailable());
+
+        toTest.doFilter(request, response, chain);
+
+        // Last known roles are not served by default
+        verify(chain, times(1)).doFilter(any(), eq(response));
+        verify(response).sendError(eq(503), any());
+    }
+
+    @Test
+    public void lastKnownRolesOnlyWhenUnavailableTest() throws Exception {
+        System.setProperty(PROP_ROLES_GRACE, "300");
+        toTest.init(null);
+
+        authUser.setPrincipal("bessie@example.org");
+        authUser.setUser(new User());
+        when(userProvider.getPrincipal(any())).thenReturn("bessie@example.org");
+
+        toTest.doFilter(request, response, chain);
+
+        // An error that isn't an unavailable backend may mean the user's roles have changed, so fails
+        when(userProvider.getUser(any(), any(), eq(true))).thenThrow(new RuntimeException("Not a user"));
+
+        toTest.doFilter(request, response, chain);
+
+        verify(chain, times(1)).doFilter(any(), eq(response));
+        verify(response).sendError(eq(500), any());
+    }
+
+    @Test
+    public void breakerOpenTest() throws Exception {
+        toTest.init(null);
+
+        final CircuitBreaker breaker = new CircuitBreaker("test", 1, Duration.ofMinutes(1), Duration.ZERO);
+        try {
+            breaker.call(() -> {
+                throw new IOException("Fedora is down");
+            });
+        } catch (final RuntimeException e) {
+            // expected
+        }
+
+        when(userProvider.getUser(any(), any(), eq(true))).thenAnswer(i -> breaker.call(() -> authUser));
+
+        toTest.doFilter(request, response, chain);
+
+        // Unavailable backends are reported as such
+        verify(chain, never()).doFilter(any(), any());
+        verify(response).sendError(eq(503), any());
+    }
+
+    @Test
+    public void serverTimingTest() throws Exception {
+        System.setProperty(RequestTimings.PROP_SERVER_TIMING, "true");
+        toTest.init(null);
+
+        toTest.doFilter(request, response, chain);
+
+        verify(response).setHeader(eq(RequestTimings.SERVER_TIMING_HEADER), contains("roles;dur="));
+        verify(chain).doFilter(any(), eq(response));
+    }
+
+    @Test
+    public void noServerTimingTest() throws Exception {
+        toTest.init(null);
+
+        toTest.doFilter(request, response, chain);
+
+        verify(response, never()).setHeader(eq(RequestTimings.SERVER_TIMING_HEADER), any());
+    }
+
+    @Test
+    public void wrapperHeadersTest() throws Exception {
+        when(request.getHeaderNames()).thenReturn(Collections.enumeration(Arrays.asList("Host", toTest.authzHeader)));
+
+        final HttpServletRequest wrapper = new PassRolesFilter.AuthzRequestWrapper(request, toTest.authzHeader,
+                "foo,bar");
+
+        // Header names are computed once, and list the roles header exactly once
+        for (int i = 0; i < 2; i++) {
+            assertEquals(Arrays.asList("Host", toTest.authzHeader), Collections.list(wrapper.getHeaderNames()));
+            assertEquals(Arrays.asList("foo,bar"), Collections.list(wrapper.getHeaders(toTest.authzHeader)));
+            assertEquals("foo,bar", wrapper.getHeader(toTest.authzHeader));
+        }
+        verify(request, times(1)).getHeaderNames();
+    }
+
+    private static RuntimeException unavailable() {
+        return new RuntimeException("Elasticsearch is down", new TimeoutException());
+    }
 }
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.roles;
+
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toSet;
+import static org.dataconservancy.pass.authz.roles.AuthRolesProvider.getRoles;
+import static org.dataconservancy.pass.authz.roles.PassRolesFilter.DEFAULT_ASSERTION_COOKIE;
+import static org.dataconservancy.pass.authz.roles.PassRolesFilter.PROP_ALLOW_EXTERNAL_ROLES;
+import static org.dataconservancy.pass.authz.roles.PassRolesFilter.PROP_ASSERTION_KEY;
+import static org.dataconservancy.pass.authz.roles.PassRolesFilter.PROP_ASSERTION_SECURE;
+import static org.dataconservancy.pass.authz.roles.PassRolesFilter.PROP_ASYNC;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletContext;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.dataconservancy.pass.authz.AuthUser;
+import org.dataconservancy.pass.authz.AuthUserProvider;
+import org.dataconservancy.pass.authz.usertoken.Key;
+import org.dataconservancy.pass.authz.usertoken.RoleAssertion;
+import org.dataconservancy.pass.authz.usertoken.RoleAssertionFactory;
+import org.dataconservancy.pass.model.User;
+import org.dataconservancy.pass.model.User.Role;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ * Role assertion cookies issued and honored by {@link PassRolesFilter}, with real roles rather than static mocks.
+ *
+ * @author apb@jhu.edu
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class RoleAssertionCookieTest {
+
+    @Mock
+    HttpServletRequest request;
+
+    @Mock
+    ServletContext servletContext;
+
+    @Mock
+    HttpServletResponse response;
+
+    @Mock
+    AuthUserProvider userProvider;
+
+    @Mock
+    FilterChain chain;
+
+    @Captor
+    ArgumentCaptor<HttpServletRequest> requestCaptor;
+
+    @Captor
+    ArgumentCaptor<Cookie> cookieCaptor;
+
+    AuthUser authUser;
+
+    Set<String> roles;
+
+    Key key;
+
+    PassRolesFilter toTest;
+
+    @Before
+    public void setUp() throws Exception {
+        key = Key.generate();
+        System.setProperty(PROP_ALLOW_EXTERNAL_ROLES, "false");
+        System.setProperty(PROP_ASYNC, "false");
+        System.setProperty(PROP_ASSERTION_KEY, key.toString());
+        System.clearProperty(PROP_ASSERTION_SECURE);
+
+        final User user = new User();
+        user.setId(URI.create("test:bessie"));
+        user.setRoles(asList(Role.SUBMITTER));
+
+        authUser = new AuthUser();
+        authUser.setPrincipal("bessie@ruminant.edu");
+        authUser.getDomains().add("ruminant.edu");
+        authUser.setId(user.getId());
+        authUser.setUser(user);
+
+        roles = getRoles(authUser).stream().map(URI::toString).collect(toSet());
+
+        when(request.getServletContext()).thenReturn(servletContext);
+        when(servletContext.getContext(any())).thenReturn(servletContext);
+        when(servletContext.getAttribute(any())).thenReturn(userProvider);
+        when(request.getRequestURI()).thenReturn("/fcrepo/rest/whatever");
+
+        toTest = new PassRolesFilter();
+        toTest.init(null);
+    }
+
+    @Test
+    public void issueRoleAssertionTest() throws Exception {
+        when(userProvider.getUser(any(), any(), eq(true))).thenReturn(authUser);
+
+        toTest.doFilter(request, response, chain);
+
+        verify(response).addCookie(cookieCaptor.capture());
+        final Cookie cookie = cookieCaptor.getValue();
+        assertEquals(DEFAULT_ASSERTION_COOKIE, cookie.getName());
+        assertEquals("/", cookie.getPath());
+        assertTrue(cookie.isHttpOnly());
+        assertTrue(cookie.getSecure());
+
+        final RoleAssertion assertion = new RoleAssertionFactory(key).from(cookie.getValue());
+        assertTrue(assertion.isValidFor("bessie@ruminant.edu"));
+        assertEquals(roles, assertion.getRoles());
+
+        verify(chain).doFilter(requestCaptor.capture(), eq(response));
+        assertEquals(roles, rolesHeader());
+    }
+
+    @Test
+    public void forwardedSecureRoleAssertionTest() throws Exception {
+        System.setProperty(PROP_ASSERTION_SECURE, "false");
+        toTest.init(null);
+        when(userProvider.getUser(any(), any(), eq(true))).thenReturn(authUser);
+
+        // Not secure itself, but forwarded by a load balancer that terminated TLS
+        when(request.isSecure()).thenReturn(false);
+        when(request.getHeader("X-Forwarded-Proto")).thenReturn("https");
+
+        toTest.doFilter(request, response, chain);
+
+        verify(response).addCookie(cookieCaptor.capture());
+        assertTrue(cookieCaptor.getValue().getSecure());
+    }
+
+    @Test
+    public void honorRoleAssertionTest() throws Exception {
+        final String assertion = new RoleAssertionFactory(key)
+                .forPrincipal("bessie@ruminant.edu", asList("foo"), Duration.ofMinutes(5)).toString();
+        when(request.getCookies()).thenReturn(new Cookie[] { new Cookie(DEFAULT_ASSERTION_COOKIE, assertion) });
+        when(userProvider.getPrincipal(any())).thenReturn("bessie@ruminant.edu");
+
+        toTest.doFilter(request, response, chain);
+
+        // Roles come from the assertion, without looking up the user
+        verify(userProvider, never()).getUser(any(), any(), eq(true));
+        verify(response, never()).addCookie(any());
+        verify(chain).doFilter(requestCaptor.capture(), eq(response));
+        assertEquals("foo", requestCaptor.getValue().getHeader(toTest.authzHeader));
+    }
+
+    @Test
+    public void rejectRoleAssertionForOtherPrincipalTest() throws Exception {
+        final String assertion = new RoleAssertionFactory(key)
+                .forPrincipal("mallory@ruminant.edu", asList("foo"), Duration.ofMinutes(5)).toString();
+        when(request.getCookies()).thenReturn(new Cookie[] { new Cookie(DEFAULT_ASSERTION_COOKIE, assertion) });
+        when(userProvider.getPrincipal(any())).thenReturn("bessie@ruminant.edu");
+        when(userProvider.getUser(any(), any(), eq(true))).thenReturn(authUser);
+
+        toTest.doFilter(request, response, chain);
+
+        verify(userProvider).getUser(any(), any(), eq(true));
+        verify(chain).doFilter(requestCaptor.capture(), eq(response));
+        assertEquals(roles, rolesHeader());
+    }
+
+    @Test
+    public void rejectRoleAssertionWithOtherKeyTest() throws Exception {
+        final String assertion = new RoleAssertionFactory(Key.generate())
+                .forPrincipal("bessie@ruminant.edu", asList("foo"), Duration.ofMinutes(5)).toString();
+        when(request.getCookies()).thenReturn(new Cookie[] { new Cookie(DEFAULT_ASSERTION_COOKIE, assertion) });
+        when(userProvider.getPrincipal(any())).thenReturn("bessie@ruminant.edu");
+        when(userProvider.getUser(any(), any(), eq(true))).thenReturn(authUser);
+
+        toTest.doFilter(request, response, chain);
+
+        verify(userProvider).getUser(any(), any(), eq(true));
+        verify(chain).doFilter(requestCaptor.capture(), eq(response));
+        assertEquals(roles, rolesHeader());
+    }
+
+    private Set<String> rolesHeader() {
+        return new HashSet<>(Arrays.asList(requestCaptor.getValue().getHeader(toTest.authzHeader).split(
+                toTest.authzRoleSeparator)));
+    }
+}
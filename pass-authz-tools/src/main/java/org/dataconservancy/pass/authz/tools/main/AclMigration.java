@@ -0,0 +1,53 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.tools.main;
+
+import static org.dataconservancy.pass.authz.acl.ACLManager.PROPERTY_ACL_PAIRTREE_LEVELS;
+
+import org.dataconservancy.pass.authz.acl.ACLManager;
+import org.dataconservancy.pass.client.util.ConfigUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Moves existing ACLs into the pairtree containers given by {@code acl.pairtree.levels}, and links the resources
+ * they protect to them in their new locations.
+ *
+ * @author apb@jhu.edu
+ */
+public class AclMigration {
+
+    private AclMigration() {
+    }
+
+    static final Logger LOG = LoggerFactory.getLogger(AclMigration.class);
+
+    public static void main(String[] args) throws Exception {
+
+        final ACLManager manager = new ACLManager();
+
+        final int threads = Integer.parseInt(ConfigUtil.getSystemProperty("threads", "8"));
+        final String levels = ConfigUtil.getSystemProperty(PROPERTY_ACL_PAIRTREE_LEVELS, "0");
+
+        System.out.println("Moving ACLs to " + levels + " levels of pairtree containers, using " + threads +
+                " threads");
+
+        final int moved = manager.rehomeAcls(threads);
+
+        LOG.info("Moved {} ACLs", moved);
+    }
+}
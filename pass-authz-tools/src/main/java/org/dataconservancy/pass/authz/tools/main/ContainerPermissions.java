@@ -35,9 +35,9 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import org.apache.commons.io.IOUtils;
 import org.dataconservancy.pass.authz.acl.ACLManager;
+import org.dataconservancy.pass.authz.acl.FedoraClientFactory;
 import org.dataconservancy.pass.client.fedora.FedoraConfig;
 import org.fcrepo.client.FcrepoClient;
-import org.fcrepo.client.FcrepoClient.FcrepoClientBuilder;
 import org.fcrepo.client.FcrepoResponse;
 
 /**
@@ -145,7 +145,7 @@ public class ContainerPermissions {
     }
 
     private static FcrepoClient getFcrepoClient() {
-        return new FcrepoClientBuilder().credentials(FedoraConfig.getUserName(), FedoraConfig.getPassword()).build();
+        return FedoraClientFactory.getFcrepoClient();
     }
 
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.tools.main;
+
+import static java.util.Optional.ofNullable;
+import static org.dataconservancy.pass.authz.ConfigUtil.getValue;
+
+import java.util.Enumeration;
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Moves the messages the authz listener could not handle from its dead letter queue back to its queue, so that it
+ * tries them again.
+ * <p>
+ * Each message is moved in its own transaction, so a message is never lost or duplicated if the tool stops part way.
+ * The tool stops once the dead letter queue has been empty for a few seconds, or once {@code max} messages have been
+ * moved. It uses the same configuration as the listener ({@code PASS_AUTHZ_QUEUE}, {@code PASS_AUTHZ_DLQ},
+ * {@code JMS_BROKERURL}, etc).
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+public class DeadLetterReplay {
+
+    private DeadLetterReplay() {
+    }
+
+    static final Logger LOG = LoggerFactory.getLogger(DeadLetterReplay.class);
+
+    /* Set by the listener on dead letters */
+    static final String ERROR_PROPERTY = "passAuthzError";
+
+    public static void main(String[] args) throws Exception {
+
+        final String queue = getValue("pass.authz.queue");
+        if (queue == null) {
+            throw new IllegalArgumentException("No queue given; set PASS_AUTHZ_QUEUE");
+        }
+        final String dlq = ofNullable(getValue("pass.authz.dlq")).orElse(queue + ".DLQ");
+        final long max = Long.parseLong(ofNullable(getValue("max")).orElse(String.valueOf(Long.MAX_VALUE)));
+
+        final ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory();
+        factory.setBrokerURL(ofNullable(getValue("jms.brokerUrl")).orElse("tcp://localhost:61616"));
+        factory.setUserName(getValue("jms.username"));
+        factory.setPassword(getValue("jms.password"));
+
+        System.out.println("Moving messages from " + dlq + " to " + queue);
+
+        final Connection conn = factory.createConnection();
+        long moved = 0;
+        try {
+            conn.start();
+            final Session session = conn.createSession(true, Session.SESSION_TRANSACTED);
+            final MessageConsumer consumer = session.createConsumer(session.createQueue(dlq));
+            final MessageProducer producer = session.createProducer(session.createQueue(queue));
+
+            Message message;
+            while (moved < max && (message = consumer.receive(5000)) != null) {
+                LOG.debug("Replaying message that failed with {}", message.getStringProperty(ERROR_PROPERTY));
+                producer.send(copy(session, (TextMessage) message));
+                session.commit();
+                moved++;
+            }
+        } finally {
+            conn.close();
+        }
+
+        LOG.info("Moved {} messages", moved);
+    }
+
+    /* Copy a message, without the properties the listener or the provider added to it */
+    private static TextMessage copy(Session session, TextMessage message) throws JMSException {
+        final TextMessage copy = session.createTextMessage(message.getText());
+        for (final Enumeration<?> names = message.getPropertyNames(); names.hasMoreElements();) {
+            final String name = (String) names.nextElement();
+            if (!name.startsWith("JMSX") && !name.equals(ERROR_PROPERTY)) {
+                copy.setObjectProperty(name, message.getObjectProperty(name));
+            }
+        }
+        return copy;
+    }
+}
@@ -19,21 +19,38 @@ package org.dataconservancy.pass.authz.tools.main;
 import static org.dataconservancy.pass.authz.tools.main.Const.ROLE_BASE_URI;
 
 import java.net.URI;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
+import org.dataconservancy.pass.authz.VirtualThreads;
 import org.dataconservancy.pass.authz.acl.ACLManager;
 import org.dataconservancy.pass.authz.acl.PolicyEngine;
 import org.dataconservancy.pass.client.PassClient;
 import org.dataconservancy.pass.client.PassClientFactory;
 import org.dataconservancy.pass.client.util.ConfigUtil;
+import org.dataconservancy.pass.model.PassEntity;
 import org.dataconservancy.pass.model.Submission;
 import org.dataconservancy.pass.model.SubmissionEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Applies the permissions policy to every submission and submission event.
+ * <p>
+ * Resources are updated concurrently, at most {@code -Dconcurrency} (default 8) at a time. Updates run on a pool of
+ * that many platform threads, or with {@code -Dthread.type=virtual}, each on its own virtual thread (Java 21 or later).
+ * </p>
+ * <p>
+ * Exits with status 1 if the permissions of any resource could not be updated.
+ * </p>
+ *
  * @author apb@jhu.edu
  */
 public class PermissionsUpdater {
@@ -64,27 +81,98 @@ public class PermissionsUpdater {
         authzPolicy.setSubmitterRole(PASS_SUBMITTER_ROLE);
 
         final String type = ConfigUtil.getSystemProperty("type", null);
+        final int concurrency = Integer.parseInt(ConfigUtil.getSystemProperty("concurrency", "8"));
+        final boolean virtual = "virtual".equals(ConfigUtil.getSystemProperty("thread.type", "platform"));
 
         System.out.println("Specified type is: " + type);
-
-        if (type == null || type.equals(Submission.class.getSimpleName())) {
-            LOG.info("Visiting submissions...");
-            final Future<Integer> submissions = exe.submit(() -> client.processAllEntities(
-                    authzPolicy::updateSubmission,
-                    Submission.class));
-
-            LOG.info("Processed {} submissions", submissions.get());
+        System.out.println("Updating " + concurrency + " resources at once on " + (virtual ? "virtual" : "platform") +
+                " threads");
+
+        final ExecutorService pool = virtual ? null : Executors.newFixedThreadPool(concurrency);
+        final Executor updates = virtual ? threadPerTask(VirtualThreads.factory("permissions-")) : pool;
+        final AtomicInteger failed = new AtomicInteger();
+
+        try {
+            if (type == null || type.equals(Submission.class.getSimpleName())) {
+                LOG.info("Visiting submissions...");
+                final Future<Integer> submissions = exe.submit(() -> updateAll(client, authzPolicy::updateSubmission,
+                        Submission.class, updates, concurrency, failed));
+
+                LOG.info("Processed {} submissions", submissions.get());
+            }
+
+            if (type == null || type.equals(SubmissionEvent.class.getSimpleName())) {
+                LOG.info("Visiting submissionEvents...");
+                final Future<Integer> submissionEvents = exe.submit(() -> updateAll(client,
+                        authzPolicy::updateSubmissionEvent, SubmissionEvent.class, updates, concurrency, failed));
+
+                LOG.info("Processed {} submissionEvents", submissionEvents.get());
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+            exe.shutdown();
         }
 
-        if (type == null || type.equals(SubmissionEvent.class.getSimpleName())) {
-            LOG.info("Visiting submissionEvents...");
-            final Future<Integer> submissionEvents = exe.submit(() -> client.processAllEntities(
-                    authzPolicy::updateSubmissionEvent,
-                    SubmissionEvent.class));
+        if (failed.get() > 0) {
+            LOG.error("Could not update the permissions of {} resources", failed.get());
+            System.exit(1);
+        }
+    }
 
-            LOG.info("Processed {} submissionEvents", submissionEvents.get());
+    /**
+     * Update every entity of a type, a bounded number at once.
+     * <p>
+     * The repository is crawled on the calling thread, which waits for a permit before handing each entity to the
+     * executor, so the crawl never gets more than {@code concurrency} entities ahead of the updates.
+     * </p>
+     *
+     * @param client PASS client.
+     * @param update Updates the permissions of one entity.
+     * @param type Type of entity.
+     * @param executor Runs updates.
+     * @param concurrency Most updates in flight at once.
+     * @param failures Counts the entities whose permissions could not be updated.
+     * @return Number of entities visited.
+     */
+    static int updateAll(PassClient client, Consumer<URI> update, Class<? extends PassEntity> type,
+            Executor executor, int concurrency, AtomicInteger failures) {
+        final Semaphore inFlight = new Semaphore(concurrency);
+        final AtomicInteger failed = new AtomicInteger();
+
+        final int visited = client.processAllEntities(uri -> {
+            inFlight.acquireUninterruptibly();
+            try {
+                executor.execute(() -> {
+                    try {
+                        update.accept(uri);
+                    } catch (final Exception e) {
+                        LOG.warn("Could not update permissions of {}", uri, e);
+                        failed.incrementAndGet();
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            } catch (final RejectedExecutionException e) {
+                inFlight.release();
+                throw e;
+            }
+        }, type);
+
+        // Wait for the last updates
+        inFlight.acquireUninterruptibly(concurrency);
+        inFlight.release(concurrency);
+
+        if (failed.get() > 0) {
+            LOG.warn("Could not update permissions of {} of {} {} resources", failed.get(), visited, type
+                    .getSimpleName());
         }
+        failures.addAndGet(failed.get());
+        return visited;
+    }
 
-        exe.shutdown();
+    static Executor threadPerTask(ThreadFactory threads) {
+        return task -> threads.newThread(task).start();
     }
 }
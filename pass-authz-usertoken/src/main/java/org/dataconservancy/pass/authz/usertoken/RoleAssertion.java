@@ -0,0 +1,186 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.usertoken;
+
+import static java.net.URLDecoder.decode;
+import static java.net.URLEncoder.encode;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.UnsupportedEncodingException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Role assertion; binds a principal to a set of authorization roles until some expiration time.
+ * <p>
+ * Role assertions are encrypted with the same authenticated cipher as user tokens, so any party holding the key can
+ * trust the roles within an assertion without looking them up again.
+ * </p>
+ *
+ * @author apb@jhu.edu
+ */
+public class RoleAssertion {
+
+    static final int PRINCIPAL_INDEX = 0;
+
+    static final int EXPIRES_INDEX = 1;
+
+    static final int FIRST_ROLE_INDEX = 2;
+
+    final String principal;
+
+    final Set<String> roles;
+
+    final Instant expires;
+
+    final Codec codec;
+
+    // Internal constructor
+    RoleAssertion(Codec codec, String principal, Collection<String> roles, Instant expires) {
+
+        if (principal == null) {
+            throw new NullPointerException("Principal must not be null");
+        } else if (roles == null) {
+            throw new NullPointerException("Roles must not be null");
+        } else if (expires == null) {
+            throw new NullPointerException("Expiration must not be null");
+        }
+
+        this.principal = principal;
+        this.roles = Collections.unmodifiableSet(new LinkedHashSet<>(roles));
+        // Assertions are serialized with millisecond precision
+        this.expires = expires.truncatedTo(ChronoUnit.MILLIS);
+        this.codec = codec;
+    }
+
+    // Internal constructor
+    RoleAssertion(Codec codec, String encoded) {
+
+        this.codec = codec;
+
+        final String[] fields;
+        try {
+            fields = codec.decrypt(encoded).split(",");
+        } catch (final BadTokenException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new BadTokenException("Encountered a role assertion that is likely corrupt", e);
+        }
+
+        if (fields.length < FIRST_ROLE_INDEX) {
+            throw new BadTokenException("Malformed role assertion: must encode a principal and expiration");
+        }
+
+        try {
+            principal = decode(fields[PRINCIPAL_INDEX], UTF_8.name());
+            expires = Instant.ofEpochMilli(Long.parseLong(decode(fields[EXPIRES_INDEX], UTF_8.name())));
+
+            final Set<String> decodedRoles = new LinkedHashSet<>();
+            for (int i = FIRST_ROLE_INDEX; i < fields.length; i++) {
+                decodedRoles.add(decode(fields[i], UTF_8.name()));
+            }
+            roles = Collections.unmodifiableSet(decodedRoles);
+        } catch (final NumberFormatException e) {
+            throw new BadTokenException("Malformed role assertion: bad expiration", e);
+        } catch (final UnsupportedEncodingException e) {
+            // Should never happen
+            throw new RuntimeException("Gosh, your platform does not support UTF-8??");
+        }
+    }
+
+    /**
+     * Get the principal whose roles are asserted.
+     *
+     * @return the principal, will not be null.
+     */
+    public String getPrincipal() {
+        return principal;
+    }
+
+    /**
+     * Get the asserted roles.
+     *
+     * @return Unmodifiable set of roles, will not be null.
+     */
+    public Set<String> getRoles() {
+        return roles;
+    }
+
+    /**
+     * Get the time at which this assertion expires.
+     *
+     * @return expiration time, will not be null.
+     */
+    public Instant getExpires() {
+        return expires;
+    }
+
+    /**
+     * Determine if this assertion may be trusted for the given principal.
+     *
+     * @param requestPrincipal The principal of the current request.
+     * @return true, if the assertion is for the given principal and has not expired.
+     */
+    public boolean isValidFor(String requestPrincipal) {
+        return principal.equals(requestPrincipal) && Instant.now().isBefore(expires);
+    }
+
+    /**
+     * Return assertion as an encrypted, base32 encoded string.
+     */
+    @Override
+    public String toString() {
+        try {
+            final StringBuilder content = new StringBuilder(encode(principal, UTF_8.name()))
+                    .append(",")
+                    .append(expires.toEpochMilli());
+
+            for (final String role : roles) {
+                content.append(",").append(encode(role, UTF_8.name()));
+            }
+
+            return codec.encrypt(content.toString());
+        } catch (final UnsupportedEncodingException e) {
+            // Should never happen
+            throw new RuntimeException("Gosh, your platform does not support UTF-8??");
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final RoleAssertion that = (RoleAssertion) o;
+        return Objects.equals(principal, that.principal) &&
+                Objects.equals(roles, that.roles) &&
+                Objects.equals(expires, that.expires);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(principal, roles, expires);
+    }
+}
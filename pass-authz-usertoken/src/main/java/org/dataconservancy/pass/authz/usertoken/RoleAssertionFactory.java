@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.usertoken;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+
+/**
+ * Factory for creating role assertions, or decoding them from strings.
+ *
+ * @author apb@jhu.edu
+ */
+public class RoleAssertionFactory {
+
+    final Codec codec;
+
+    /**
+     * Instantiate a RoleAssertionFactory that will (de)serialize assertions using the given encryption key
+     *
+     * @param key Key to use for serialization and deserialization of assertions.
+     */
+    public RoleAssertionFactory(Key key) {
+        this.codec = new Codec(key);
+    }
+
+    /**
+     * Instantiate the RoleAssertionFactory with a base32-encoded key.
+     *
+     * @param key Base32 encoded encryption key.
+     */
+    public RoleAssertionFactory(String key) {
+        this.codec = new Codec(Key.fromString(key));
+    }
+
+    /**
+     * Create an assertion of a principal's roles, valid for a limited time.
+     *
+     * @param principal The principal. Must not be null.
+     * @param roles The principal's roles. Must not be null.
+     * @param lifetime How long the assertion is valid for.
+     * @return The assertion.
+     */
+    public RoleAssertion forPrincipal(String principal, Collection<String> roles, Duration lifetime) {
+        return new RoleAssertion(codec, principal, roles, Instant.now().plus(lifetime));
+    }
+
+    /**
+     * Decode an assertion from an encoded string.
+     *
+     * @param encoded String containing the encoded assertion, as produced by {@link RoleAssertion#toString()}.
+     * @return The assertion. It may have expired.
+     * @throws BadTokenException if the assertion cannot be decoded with this factory's key.
+     */
+    public RoleAssertion from(String encoded) {
+        return new RoleAssertion(codec, encoded);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.dataconservancy.pass.authz.usertoken;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author apb@jhu.edu
+ */
+public class RoleAssertionTest {
+
+    final String PRINCIPAL = "bessie@farm.com";
+
+    final List<String> ROLES = asList("http://example.org/users/bessie",
+            "http://oapass.org/ns/roles/farm.com#submitter",
+            "info:fedora/users/bessie,with,commas");
+
+    @Test(expected = NullPointerException.class)
+    public void nullPrincipalTest() {
+        new RoleAssertion(new Codec(Key.generate()), null, ROLES, Instant.now());
+    }
+
+    @Test
+    public void roundTripTest() {
+        final RoleAssertionFactory factory = new RoleAssertionFactory(Key.generate());
+
+        final RoleAssertion created = factory.forPrincipal(PRINCIPAL, ROLES, Duration.ofMinutes(1));
+
+        final RoleAssertion fromString = factory.from(created.toString());
+
+        assertEquals(created, fromString);
+        assertEquals(PRINCIPAL, fromString.getPrincipal());
+        assertEquals(new HashSet<>(ROLES), fromString.getRoles());
+        assertTrue(fromString.isValidFor(PRINCIPAL));
+    }
+
+    @Test
+    public void noRolesTest() {
+        final RoleAssertionFactory factory = new RoleAssertionFactory(Key.generate());
+
+        final RoleAssertion created = factory.forPrincipal(PRINCIPAL, Collections.emptySet(), Duration.ofMinutes(1));
+
+        assertTrue(factory.from(created.toString()).getRoles().isEmpty());
+    }
+
+    @Test
+    public void expiredTest() {
+        final RoleAssertionFactory factory = new RoleAssertionFactory(Key.generate());
+
+        final RoleAssertion created = factory.forPrincipal(PRINCIPAL, ROLES, Duration.ofMinutes(-1));
+
+        assertFalse(factory.from(created.toString()).isValidFor(PRINCIPAL));
+    }
+
+    @Test
+    public void wrongPrincipalTest() {
+        final RoleAssertionFactory factory = new RoleAssertionFactory(Key.generate());
+
+        final RoleAssertion created = factory.forPrincipal(PRINCIPAL, ROLES, Duration.ofMinutes(1));
+
+        assertFalse(factory.from(created.toString()).isValidFor("moo@farm.com"));
+        assertFalse(factory.from(created.toString()).isValidFor(null));
+    }
+
+    @Test(expected = BadTokenException.class)
+    public void wrongKeyTest() {
+        final RoleAssertion created = new RoleAssertionFactory(Key.generate())
+                .forPrincipal(PRINCIPAL, ROLES, Duration.ofMinutes(1));
+
+        new RoleAssertionFactory(Key.generate()).from(created.toString());
+    }
+
+    @Test(expected = BadTokenException.class)
+    public void garbageTest() {
+        new RoleAssertionFactory(Key.generate()).from("blah");
+    }
+}
@@ -16,6 +16,9 @@
 
 package org.dataconservancy.pass.authz.service.user;
 
+import static java.util.Optional.ofNullable;
+import static org.dataconservancy.pass.authz.ConfigUtil.getValue;
+
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Writer;
@@ -24,6 +27,12 @@ import java.net.URISyntaxException;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -33,7 +42,9 @@ import javax.servlet.http.HttpServletResponse;
 import org.dataconservancy.pass.authz.AuthUser;
 import org.dataconservancy.pass.authz.AuthUserProvider;
 import org.dataconservancy.pass.authz.ExpiringLRUCache;
+import org.dataconservancy.pass.authz.LatencyHistogram;
 import org.dataconservancy.pass.authz.LogUtil;
+import org.dataconservancy.pass.authz.RequestTimings;
 import org.dataconservancy.pass.authz.ShibAuthUserProvider;
 import org.dataconservancy.pass.authz.usertoken.BadTokenException;
 import org.dataconservancy.pass.authz.usertoken.Token;
@@ -57,6 +68,21 @@ public class UserServlet extends HttpServlet {
 
     static final Logger LOG = LoggerFactory.getLogger(UserServlet.class);
 
+    /** Property for enabling asynchronous processing of requests */
+    public static final String PROP_ASYNC = "authz.async";
+
+    /** Property for the asynchronous processing timeout, in milliseconds */
+    public static final String PROP_ASYNC_TIMEOUT = "authz.async.timeout.ms";
+
+    /** Total time spent servicing a request */
+    static final LatencyHistogram SERVICE_PHASE = LatencyHistogram.named("user-service");
+
+    /** Time spent creating or updating a User */
+    static final LatencyHistogram UPDATE_PHASE = LatencyHistogram.named("user-update");
+
+    /** Time spent applying a user token */
+    static final LatencyHistogram TOKEN_PHASE = LatencyHistogram.named("user-token");
+
     PassJsonAdapter json = new PassJsonAdapterBasic();
 
     PassClient fedoraClient = PassClientFactory.getPassClient();
@@ -67,6 +93,12 @@ public class UserServlet extends HttpServlet {
 
     ExpiringLRUCache<Token, Boolean> tokenIsEncountered = new ExpiringLRUCache<>(100, Duration.ofHours(1));
 
+    boolean async = Boolean.valueOf(ofNullable(getValue(PROP_ASYNC)).orElse("false"));
+
+    long asyncTimeout = Long.valueOf(ofNullable(getValue(PROP_ASYNC_TIMEOUT)).orElse("30000"));
+
+    boolean serverTiming = Boolean.valueOf(ofNullable(getValue(RequestTimings.PROP_SERVER_TIMING)).orElse("false"));
+
     static {
         LogUtil.adjustLogLevels();
     }
@@ -82,6 +114,10 @@ public class UserServlet extends HttpServlet {
     /**
      * A method which calls {@link ShibAuthUserProvider#getUser(HttpServletRequest)} to get an {@link AuthUser} in
      * order to populate a {@link User} object and create/update and store it
+     * <p>
+     * If {@value #PROP_ASYNC} is true, and the container supports it, the request is processed asynchronously so
+     * that a container thread is not occupied while the user is looked up, created, or updated.
+     * </p>
      *
      * @param request - the {@code HttpServletRequest}
      * @param response - the {@code HttpServletResponse}
@@ -95,59 +131,168 @@ public class UserServlet extends HttpServlet {
 
         LOG.debug("Servicing new request");
 
+        final long start = System.nanoTime();
+        final RequestTimings timings = RequestTimings.start(request, serverTiming);
+
         final Token usertoken = tokenService.fromQueryString(request.getQueryString());
 
-        final AuthUser shibUser;
-        shibUser = provider.getUser(request, authUser -> {
+        if (async && request.isAsyncSupported()) {
+            // Don't hold on to the container thread while looking up, creating, or updating the user.
+            final AsyncContext context = request.startAsync();
+            context.setTimeout(asyncTimeout);
 
-            LOG.debug("Entering critical section");
+            final AtomicBoolean finished = new AtomicBoolean(false);
 
-            // This is the critical section of the user service.
-            // If we need to create a user, do it. Otherwise update.
-            final AuthUser u;
-            if (authUser.getId() == null) {
-                LOG.debug("Creating new user");
-                u = createUser(authUser);
-            } else {
-                LOG.debug("Updating user");
-                u = updateUser(authUser);
+            context.addListener(new AsyncListener() {
+
+                @Override
+                public void onTimeout(AsyncEvent event) throws IOException {
+                    if (finished.compareAndSet(false, true)) {
+                        LOG.warn("Timed out looking up user");
+                        response.sendError(503, "Timed out looking up user.  Please try again later.");
+                        context.complete();
+                    }
+                }
+
+                @Override
+                public void onError(AsyncEvent event) {
+                    finished.set(true);
+                }
+
+                @Override
+                public void onComplete(AsyncEvent event) {
+                    // nothing
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) {
+                    // nothing
+                }
+            });
+
+            // The user token is applied by the token cache's own thread, rather than the thread completing the
+            // user lookup, so neither is parked while the token's permissions are written.
+            provider.getUserAsync(request, a -> createOrUpdateUser(a, timings), true).thenCompose(
+                    shibUser -> applyUserTokenAsync(shibUser, usertoken, timings).thenApply(
+                            tokenError -> new Outcome(shibUser, tokenError))).whenComplete((outcome, e) -> {
+                if (!finished.compareAndSet(false, true)) {
+                    LOG.debug("Request has already finished, discarding user");
+                    return;
+                }
+
+                try {
+                    if (e != null) {
+                        LOG.warn("Error looking up user", e);
+                        response.sendError(500, "Error looking up user.  This request has been logged.");
+                    } else {
+                        respond(request, response, outcome.user, outcome.tokenError, timings, start);
+                    }
+                } catch (final Exception x) {
+                    LOG.warn("Error sending response", x);
+                } finally {
+                    context.complete();
+                }
+            });
+        } else {
+            respond(request, response, provider.getUser(request, a -> createOrUpdateUser(a, timings), true), usertoken,
+                    timings, start);
+        }
+    }
+
+    private AuthUser createOrUpdateUser(AuthUser authUser, RequestTimings timings) {
+
+        LOG.debug("Entering critical section");
+        final long start = System.nanoTime();
+
+        // This is the critical section of the user service.
+        // If we need to create a user, do it. Otherwise update.
+        final AuthUser u;
+        if (authUser.getId() == null) {
+            LOG.debug("Creating new user");
+            u = createUser(authUser);
+        } else {
+            LOG.debug("Updating user");
+            u = updateUser(authUser);
+        }
+
+        timings.record(UPDATE_PHASE, start);
+        LOG.debug("Exiting critical section");
+        return u;
+    }
+
+    private void respond(HttpServletRequest request, HttpServletResponse response, AuthUser shibUser,
+            Token usertoken, RequestTimings timings, long start) throws IOException {
+
+        // If there is a user token, apply it to the submission.
+        BadTokenException tokenError = null;
+        if (shibUser.getId() != null && usertoken != null) {
+            try {
+                final long tokenStart = System.nanoTime();
+                tokenIsEncountered.getOrDo(usertoken, () -> applyUserToken(usertoken, shibUser.getUser()));
+                timings.record(TOKEN_PHASE, tokenStart);
+            } catch (final BadTokenException e) {
+                tokenError = e;
             }
+        }
+
+        respond(request, response, shibUser, tokenError, timings, start);
+    }
 
-            LOG.debug("Exiting critical section");
-            return u;
+    /**
+     * Apply a user token, if there is one, without blocking the caller.
+     *
+     * @return Future containing the reason the token is bad, or null if it was applied or there is none.
+     */
+    private CompletableFuture<BadTokenException> applyUserTokenAsync(AuthUser shibUser, Token usertoken,
+            RequestTimings timings) {
+        if (shibUser.getId() == null || usertoken == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        final long tokenStart = System.nanoTime();
+        return tokenIsEncountered.getOrDoAsync(usertoken, () -> applyUserToken(usertoken, shibUser.getUser()))
+                .handle((applied, e) -> {
+                    if (e == null) {
+                        timings.record(TOKEN_PHASE, tokenStart);
+                        return null;
+                    }
+
+                    final Throwable cause = e instanceof CompletionException && e.getCause() != null ? e
+                            .getCause() : e;
+                    if (cause instanceof BadTokenException) {
+                        return (BadTokenException) cause;
+                    }
+                    throw new CompletionException(cause);
+                });
+    }
 
-        }, true);
+    private void respond(HttpServletRequest request, HttpServletResponse response, AuthUser shibUser,
+            BadTokenException tokenError, RequestTimings timings, long start) throws IOException {
 
         // At this point, any eligible person will have an up to date User object in Fedora
         // if the person is not eligible, the shib user ID will be null
 
         if (shibUser.getId() == null) {
             LOG.info("{} not authorized", shibUser.getPrincipal());
+            timings.record(SERVICE_PHASE, start);
+            timings.addServerTiming(response);
             try (Writer out = response.getWriter()) {
                 response.setStatus(401);
                 out.append("Unauthorized");
             }
-        } else {
-
-            // If there is a user token, apply it to the submission.
-            if (usertoken != null) {
-                try {
-                    tokenIsEncountered.getOrDo(usertoken,
-                            () -> applyUserToken(usertoken, shibUser.getUser()));
-                } catch (final BadTokenException e) {
-                    try (Writer out = response.getWriter()) {
-                        LOG.warn("Sending 400 response due to token exception", e);
-                        response.setStatus(400);
-                        out.append(e.getMessage());
-                    }
-                    return;
-                }
+        } else if (tokenError != null) {
+            try (Writer out = response.getWriter()) {
+                LOG.warn("Sending 400 response due to token exception", tokenError);
+                response.setStatus(400);
+                out.append(tokenError.getMessage());
             }
-
+        } else {
             final User user = new User(shibUser.getUser());
             rewriteUri(user, request);
 
             LOG.debug("Successfully returning User data for {}", user.getId());
+            timings.record(SERVICE_PHASE, start);
+            timings.addServerTiming(response);
             try (OutputStream out = response.getOutputStream()) {
                 out.write(json.toJson(user, true));
                 response.setStatus(200);
@@ -264,6 +409,19 @@ public class UserServlet extends HttpServlet {
 
     }
 
+    /* A user, and the reason their user token is bad, if it is */
+    private static class Outcome {
+
+        final AuthUser user;
+
+        final BadTokenException tokenError;
+
+        Outcome(AuthUser user, BadTokenException tokenError) {
+            this.user = user;
+            this.tokenError = tokenError;
+        }
+    }
+
     private static class Host {
 
         final String host;
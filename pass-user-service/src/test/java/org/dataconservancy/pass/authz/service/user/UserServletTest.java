@@ -23,9 +23,13 @@ import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -35,7 +39,9 @@ import java.io.PrintWriter;
 import java.net.URI;
 import java.util.Arrays;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServletRequest;
@@ -150,7 +156,7 @@ public class UserServletTest {
             }
         });
 
-        when(userProvider.getUser(any(), any(), anyBoolean())).thenAnswer(i -> {
+        lenient().when(userProvider.getUser(any(), any(), anyBoolean())).thenAnswer(i -> {
             final Function<AuthUser, AuthUser> criticalSection = i.getArgument(1);
             return criticalSection.apply(USER);
         });
@@ -304,6 +310,79 @@ public class UserServletTest {
         verify(client, times(0)).updateResource(any());
     }
 
+    @Test
+    public void asyncTest() throws Exception {
+        final AsyncContext asyncContext = mock(AsyncContext.class);
+        final CompletableFuture<AuthUser> lookup = new CompletableFuture<>();
+
+        when(request.isAsyncSupported()).thenReturn(true);
+        when(request.startAsync()).thenReturn(asyncContext);
+        when(userProvider.getUserAsync(any(), any(), anyBoolean())).thenAnswer(i -> {
+            final Function<AuthUser, AuthUser> criticalSection = i.getArgument(1);
+            return lookup.thenApply(criticalSection);
+        });
+
+        servlet.async = true;
+        servlet.doGet(request, response);
+
+        // Nothing is written until the lookup finishes
+        verify(request).startAsync();
+        verify(response, never()).setStatus(anyInt());
+        verify(userProvider, never()).getUser(any(), any(), anyBoolean());
+
+        lookup.complete(USER);
+
+        final User fromServlet = mapper.reader().treeToValue(mapper.readTree(new String(output.toByteArray())),
+                User.class);
+
+        assertEquals(USER.getId(), fromServlet.getId());
+        verify(response, times(1)).setStatus(eq(200));
+        verify(asyncContext).complete();
+    }
+
+    @Test
+    public void asyncTokenApplicationTest() throws Exception {
+        final AsyncContext asyncContext = mock(AsyncContext.class);
+        final String queryString = "userToken=BLAH";
+
+        when(request.getQueryString()).thenReturn(queryString);
+        when(request.isAsyncSupported()).thenReturn(true);
+        when(request.startAsync()).thenReturn(asyncContext);
+        when(userProvider.getUserAsync(any(), any(), anyBoolean())).thenAnswer(i -> CompletableFuture.completedFuture(
+                USER));
+        when(tokenService.fromQueryString(eq(queryString))).thenReturn(token);
+        when(tokenService.enactUserToken(eq(USER.getUser()), eq(token))).thenReturn(true);
+
+        servlet.async = true;
+        servlet.doGet(request, response);
+
+        verify(asyncContext, timeout(5000)).complete();
+        verify(tokenService, times(1)).enactUserToken(eq(USER.getUser()), eq(token));
+        verify(tokenService, times(1)).addWritePermissions(eq(USER.getUser()), eq(token));
+        verify(response, times(1)).setStatus(eq(200));
+        assertOutputEquals(USER.getUser());
+    }
+
+    @Test
+    public void asyncBadTokenTest() throws Exception {
+        final AsyncContext asyncContext = mock(AsyncContext.class);
+        final String queryString = "userToken=BLAH";
+
+        when(request.getQueryString()).thenReturn(queryString);
+        when(request.isAsyncSupported()).thenReturn(true);
+        when(request.startAsync()).thenReturn(asyncContext);
+        when(userProvider.getUserAsync(any(), any(), anyBoolean())).thenAnswer(i -> CompletableFuture.completedFuture(
+                USER));
+        when(tokenService.fromQueryString(eq(queryString))).thenReturn(token);
+        when(tokenService.enactUserToken(any(), any())).thenThrow(BadTokenException.class);
+
+        servlet.async = true;
+        servlet.doGet(request, response);
+
+        verify(asyncContext, timeout(5000)).complete();
+        verify(response, times(1)).setStatus(eq(400));
+    }
+
     @Test
     public void hostSubstitutionTest() throws Exception {
 